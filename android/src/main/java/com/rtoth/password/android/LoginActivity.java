@@ -22,6 +22,7 @@
 package com.rtoth.password.android;
 
 import com.rtoth.password.core.PasswordManager;
+import com.rtoth.password.core.PasswordManagerOptions;
 
 import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 
@@ -54,6 +55,9 @@ public class LoginActivity extends AppCompatActivity
     public static final String PASSWORD_FILE = LoginActivity.class.getName() + ".PASSWORD_FILE";
     public static final String MASTER_PASSWORD = LoginActivity.class.getName() + ".MASTER_PASSWORD";
 
+    /** Keep unlock from saturating every core on the device. */
+    private static final int UNLOCK_PARALLELISM = 2;
+
     /**
      * Keep track of the login task to ensure we can cancel it if requested.
      */
@@ -263,7 +267,8 @@ public class LoginActivity extends AppCompatActivity
             try
             {
                 // Validate the password by creating a new password manager
-                passwordManager = new PasswordManager(passwordFile, password);
+                passwordManager = new PasswordManager(passwordFile, password,
+                    PasswordManagerOptions.builder().parallelism(UNLOCK_PARALLELISM).build());
                 return true;
             }
             catch (IOException | EncryptionOperationNotPossibleException e)
@@ -21,6 +21,7 @@
  */
 package com.rtoth.password.android;
 
+import com.google.common.collect.Lists;
 import com.rtoth.password.core.PasswordManager;
 
 import java.util.List;
@@ -31,7 +32,9 @@ import android.content.DialogInterface;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.Editable;
 import android.text.InputType;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -50,10 +53,15 @@ import android.widget.TextView;
  */
 public class MainActivity extends AppCompatActivity
 {
+    /** Maximum number of applications to list while searching. */
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private PasswordManager passwordManager;
 
     private ApplicationListAdapter applicationListAdapter;
 
+    private EditText searchField;
+
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
@@ -63,10 +71,41 @@ public class MainActivity extends AppCompatActivity
         setSupportActionBar(toolbar);
 
         passwordManager = UserEnvironment.getInstance().getPasswordManager();
-        applicationListAdapter = new ApplicationListAdapter(this, passwordManager.getAvailableApplications());
+        applicationListAdapter = new ApplicationListAdapter(
+            this, Lists.newArrayList(passwordManager.getAvailableApplications()));
 
         ListView applicationListView = (ListView) findViewById(R.id.application_list);
         applicationListView.setAdapter(applicationListAdapter);
+
+        searchField = (EditText) findViewById(R.id.application_search);
+        searchField.addTextChangedListener(new TextWatcher()
+        {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after)
+            {
+                // Nothing to do
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count)
+            {
+                // Nothing to do
+            }
+
+            @Override
+            public void afterTextChanged(Editable s)
+            {
+                refreshApplications();
+            }
+        });
+    }
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        // Save right away in case the app is killed while in the background.
+        passwordManager.flush();
     }
 
     @Override
@@ -133,7 +172,7 @@ public class MainActivity extends AppCompatActivity
                 else
                 {
                     passwordManager.generatePassword(application);
-                    applicationListAdapter.add(application);
+                    refreshApplications();
                     showApplicationPassword(application);
                 }
             }
@@ -148,6 +187,20 @@ public class MainActivity extends AppCompatActivity
         builder.show();
     }
 
+    /**
+     * List the applications matching the current contents of the search field, or every application if it is
+     * empty.
+     */
+    private void refreshApplications()
+    {
+        String query = searchField.getText().toString().trim();
+        applicationListAdapter.setNotifyOnChange(false);
+        applicationListAdapter.clear();
+        applicationListAdapter.addAll(query.isEmpty() ? passwordManager.getAvailableApplications() :
+            passwordManager.searchApplications(query, MAX_SEARCH_RESULTS));
+        applicationListAdapter.notifyDataSetChanged();
+    }
+
     private void showApplicationPassword(String applicationName)
     {
         TextView passwordText = new TextView(this);
@@ -223,7 +276,7 @@ public class MainActivity extends AppCompatActivity
                 {
                     // FIXME: Add confirmation dialog
                     passwordManager.deletePassword(applicationName);
-                    applicationListAdapter.remove(applicationName);
+                    refreshApplications();
                 }
             });
 
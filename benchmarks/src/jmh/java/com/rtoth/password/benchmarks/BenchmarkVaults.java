@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.benchmarks;
+
+import com.google.common.io.Files;
+import com.rtoth.password.core.FileBasedEncryptedPasswordDatastore;
+import com.rtoth.password.core.PasswordManager;
+import com.rtoth.password.core.ShardedEncryptedPasswordDatastore;
+import com.rtoth.password.core.VaultChanges;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helpers for building vaults to benchmark against.
+ */
+final class BenchmarkVaults
+{
+    /** Master password used for every benchmark vault. */
+    static final String MASTER_PASSWORD = "benchmark-master-password";
+
+    private BenchmarkVaults()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Get the name of the application at the provided index in a benchmark vault.
+     *
+     * @param index Index of the application.
+     * @return The application name.
+     */
+    static String applicationName(int index)
+    {
+        return "application-" + index;
+    }
+
+    /**
+     * Create a temporary vault file holding the provided number of generated passwords. The file is deleted when
+     * the JVM exits.
+     *
+     * @param entries Number of passwords to generate.
+     * @return The vault file.
+     *
+     * @throws IOException if there is a problem creating the vault.
+     */
+    static File createVault(int entries) throws IOException
+    {
+        File passwordFile = File.createTempFile("password-hero-benchmark", ".vault");
+        passwordFile.deleteOnExit();
+        PasswordManager passwordManager = new PasswordManager(passwordFile, MASTER_PASSWORD);
+        for (int i = 0; i < entries; i++)
+        {
+            passwordManager.generatePassword(applicationName(i));
+        }
+        try
+        {
+            passwordManager.flush().get();
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new IOException("Unable to save benchmark vault.", e);
+        }
+        return passwordFile;
+    }
+
+    /**
+     * Copy a vault file into a new temporary directory of shards. The shards are deleted when the JVM exits.
+     *
+     * @param passwordFile Vault file to copy.
+     * @return A datastore of the shards.
+     *
+     * @throws IOException if there is a problem reading the vault or writing the shards.
+     */
+    static ShardedEncryptedPasswordDatastore createShardedVault(File passwordFile) throws IOException
+    {
+        File directory = Files.createTempDir();
+        directory.deleteOnExit();
+        ShardedEncryptedPasswordDatastore datastore = new ShardedEncryptedPasswordDatastore(directory);
+        datastore.store(new FileBasedEncryptedPasswordDatastore(passwordFile).load(), VaultChanges.fullRewrite());
+        for (File file : directory.listFiles())
+        {
+            file.deleteOnExit();
+        }
+        return datastore;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.benchmarks;
+
+import com.rtoth.password.core.AsciiPasswordGenerator;
+import com.rtoth.password.core.ConcurrentAsciiPasswordGenerator;
+import com.rtoth.password.core.DicewarePasswordGenerator;
+import com.rtoth.password.core.PasswordPolicy;
+import com.rtoth.password.core.PolicyPasswordGenerator;
+import com.rtoth.password.core.RandomPasswordGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures password generation throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeneratorBenchmark
+{
+    /** Number of passwords generated per bulk call. */
+    private static final int BULK_COUNT = 100;
+
+    /** Generator with the same settings the password manager uses. */
+    private final RandomPasswordGenerator asciiGenerator = new AsciiPasswordGenerator(20, 30);
+
+    /** Per-thread generator with the same settings. */
+    private final RandomPasswordGenerator concurrentGenerator = new ConcurrentAsciiPasswordGenerator(20, 30);
+
+    /** Generator with a typical policy requiring one of each character class, with some symbols excluded. */
+    private final RandomPasswordGenerator policyGenerator = new PolicyPasswordGenerator(
+        PasswordPolicy.builder()
+            .characters(PasswordPolicy.LOWERCASE, 1)
+            .characters(PasswordPolicy.UPPERCASE, 1)
+            .characters(PasswordPolicy.DIGITS, 1)
+            .characters(PasswordPolicy.SYMBOLS, 1)
+            .exclude("\"'`")
+            .build());
+
+    /** Passphrase generator with the default six words. */
+    private final RandomPasswordGenerator dicewareGenerator = new DicewarePasswordGenerator();
+
+    /**
+     * Generate a password.
+     *
+     * @return The password, so the work isn't optimized away.
+     */
+    @Benchmark
+    public String asciiGeneratePassword()
+    {
+        return asciiGenerator.generatePassword();
+    }
+
+    /**
+     * Generate a password following a policy with required character classes.
+     *
+     * @return The password, so the work isn't optimized away.
+     */
+    @Benchmark
+    public String policyGeneratePassword()
+    {
+        return policyGenerator.generatePassword();
+    }
+
+    /**
+     * Generate a diceware passphrase.
+     *
+     * @return The passphrase, so the work isn't optimized away.
+     */
+    @Benchmark
+    public String dicewareGeneratePassword()
+    {
+        return dicewareGenerator.generatePassword();
+    }
+
+    /**
+     * Generate passwords in bulk. Scores are per password, so they compare directly with
+     * {@link #asciiGeneratePassword()}.
+     *
+     * @return The passwords, so the work isn't optimized away.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BULK_COUNT)
+    public List<String> asciiGeneratePasswords()
+    {
+        return asciiGenerator.generatePasswords(BULK_COUNT);
+    }
+
+    /**
+     * Generate a password from every available thread, sharing one generator.
+     *
+     * @return The password, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String asciiGeneratePasswordContended()
+    {
+        return asciiGenerator.generatePassword();
+    }
+
+    /**
+     * Generate a password from every available thread, sharing one per-thread generator.
+     *
+     * @return The password, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String concurrentGeneratePasswordContended()
+    {
+        return concurrentGenerator.generatePassword();
+    }
+}
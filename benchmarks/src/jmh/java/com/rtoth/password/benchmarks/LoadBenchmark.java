@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.benchmarks;
+
+import com.rtoth.password.core.Durability;
+import com.rtoth.password.core.EncryptedVault;
+import com.rtoth.password.core.FileBasedEncryptedPasswordDatastore;
+import com.rtoth.password.core.ReadMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a vault file in each {@link ReadMode}, without any decryption.
+ * <p>
+ * Run with {@code -prof gc} to compare heap use: both modes copy every entry into its own arrays, so
+ * {@code gc.alloc.rate.norm} is about the same for both, while {@link ReadMode#MAPPED} saves the copying through
+ * the read buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoadBenchmark
+{
+    /** Number of entries in the vault. */
+    @Param({"1000", "100000"})
+    public int entries;
+
+    /** How to read the vault file. */
+    @Param({"STREAM", "MAPPED"})
+    public ReadMode readMode;
+
+    /** Datastore to load from. */
+    private FileBasedEncryptedPasswordDatastore passwordDatastore;
+
+    /**
+     * Create the vault to load.
+     *
+     * @throws IOException if there is a problem creating the vault.
+     */
+    @Setup
+    public void createVault() throws IOException
+    {
+        passwordDatastore = new FileBasedEncryptedPasswordDatastore(
+            BenchmarkVaults.createVault(entries), Durability.NONE, readMode);
+    }
+
+    /**
+     * Load the vault.
+     *
+     * @return The loaded vault, so the work isn't optimized away.
+     *
+     * @throws IOException if there is a problem reading the vault.
+     */
+    @Benchmark
+    public EncryptedVault load() throws IOException
+    {
+        return passwordDatastore.load();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.benchmarks;
+
+import com.rtoth.password.core.PasswordManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures password lookups with increasing numbers of concurrent reader threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark
+{
+    /** Number of entries in the vault. */
+    @Param({"10000"})
+    public int entries;
+
+    /** Manager to look passwords up in. */
+    private PasswordManager passwordManager;
+
+    /**
+     * Create and unlock the vault to look passwords up in.
+     *
+     * @throws IOException if there is a problem creating the vault.
+     */
+    @Setup
+    public void createVault() throws IOException
+    {
+        passwordManager = new PasswordManager(BenchmarkVaults.createVault(entries), BenchmarkVaults.MASTER_PASSWORD);
+    }
+
+    /**
+     * Pick a random application in the vault.
+     *
+     * @return The application name.
+     */
+    private String randomApplication()
+    {
+        return BenchmarkVaults.applicationName(ThreadLocalRandom.current().nextInt(entries));
+    }
+
+    /**
+     * Check whether a random application has a password, from 1 reader thread.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean hasPassword1Thread()
+    {
+        return passwordManager.hasPassword(randomApplication());
+    }
+
+    /**
+     * Check whether a random application has a password, from 4 reader threads.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(4)
+    public boolean hasPassword4Threads()
+    {
+        return passwordManager.hasPassword(randomApplication());
+    }
+
+    /**
+     * Check whether a random application has a password, from 16 reader threads.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(16)
+    public boolean hasPassword16Threads()
+    {
+        return passwordManager.hasPassword(randomApplication());
+    }
+
+    /**
+     * Check whether a random application has a password, from 64 reader threads.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(64)
+    public boolean hasPassword64Threads()
+    {
+        return passwordManager.hasPassword(randomApplication());
+    }
+
+    /**
+     * Get the plaintext password of a random application, from 1 reader thread.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(1)
+    public String getPlaintextPassword1Thread()
+    {
+        return passwordManager.getPlaintextPassword(randomApplication());
+    }
+
+    /**
+     * Get the plaintext password of a random application, from 4 reader threads.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(4)
+    public String getPlaintextPassword4Threads()
+    {
+        return passwordManager.getPlaintextPassword(randomApplication());
+    }
+
+    /**
+     * Get the plaintext password of a random application, from 16 reader threads.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(16)
+    public String getPlaintextPassword16Threads()
+    {
+        return passwordManager.getPlaintextPassword(randomApplication());
+    }
+
+    /**
+     * Get the plaintext password of a random application, from 64 reader threads.
+     *
+     * @return The result, so the work isn't optimized away.
+     */
+    @Benchmark
+    @Threads(64)
+    public String getPlaintextPassword64Threads()
+    {
+        return passwordManager.getPlaintextPassword(randomApplication());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.benchmarks;
+
+import com.rtoth.password.core.EncryptedPasswordDatastore;
+import com.rtoth.password.core.FileBasedEncryptedPasswordDatastore;
+import com.rtoth.password.core.JournalingEncryptedPasswordDatastore;
+import com.rtoth.password.core.PasswordManager;
+import com.rtoth.password.core.PasswordManagerOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of saving a single changed password, from the change until it is on disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SaveBenchmark
+{
+    /** Number of entries in the vault. */
+    @Param({"1000", "100000"})
+    public int entries;
+
+    /** Which datastore to save to. */
+    @Param({"file", "journal", "sharded"})
+    public String datastore;
+
+    /** Manager whose saves are measured. */
+    private PasswordManager passwordManager;
+
+    /** Index of the next application to change. */
+    private int next = 0;
+
+    /**
+     * Create and unlock the vault to save to.
+     *
+     * @throws IOException if there is a problem creating the vault.
+     */
+    @Setup
+    public void createVault() throws IOException
+    {
+        File passwordFile = BenchmarkVaults.createVault(entries);
+        EncryptedPasswordDatastore passwordDatastore;
+        if ("journal".equals(datastore))
+        {
+            passwordDatastore = new JournalingEncryptedPasswordDatastore(passwordFile);
+        }
+        else if ("sharded".equals(datastore))
+        {
+            passwordDatastore = BenchmarkVaults.createShardedVault(passwordFile);
+        }
+        else
+        {
+            passwordDatastore = new FileBasedEncryptedPasswordDatastore(passwordFile);
+        }
+        passwordManager = new PasswordManager(
+            passwordDatastore, BenchmarkVaults.MASTER_PASSWORD, PasswordManagerOptions.defaults());
+    }
+
+    /**
+     * Change one password and wait for it to be saved.
+     *
+     * @throws ExecutionException if the save fails.
+     * @throws InterruptedException if interrupted waiting for the save.
+     */
+    @Benchmark
+    public void saveOneChange() throws ExecutionException, InterruptedException
+    {
+        passwordManager.changePassword(BenchmarkVaults.applicationName(next));
+        next = (next + 1) % entries;
+        passwordManager.flush().get();
+    }
+}
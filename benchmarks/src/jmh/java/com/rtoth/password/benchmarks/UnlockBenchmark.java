@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.benchmarks;
+
+import com.rtoth.password.core.PasswordManager;
+import com.rtoth.password.core.PasswordManagerOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to open (unlock) an existing vault, including key derivation and decryption.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class UnlockBenchmark
+{
+    /** Number of entries in the vault. */
+    @Param({"10", "1000", "100000", "1000000"})
+    public int entries;
+
+    /** Whether passwords are decrypted lazily. */
+    @Param({"false", "true"})
+    public boolean lazyDecryption;
+
+    /** Vault file to unlock. */
+    private File passwordFile;
+
+    /** Options to unlock with. */
+    private PasswordManagerOptions options;
+
+    /**
+     * Create the vault to unlock.
+     *
+     * @throws IOException if there is a problem creating the vault.
+     */
+    @Setup
+    public void createVault() throws IOException
+    {
+        passwordFile = BenchmarkVaults.createVault(entries);
+        options = PasswordManagerOptions.builder().lazyDecryption(lazyDecryption).build();
+    }
+
+    /**
+     * Unlock the vault.
+     *
+     * @return The unlocked manager, so the work isn't optimized away.
+     *
+     * @throws IOException if there is a problem reading the vault.
+     */
+    @Benchmark
+    public PasswordManager unlock() throws IOException
+    {
+        return new PasswordManager(passwordFile, BenchmarkVaults.MASTER_PASSWORD, options);
+    }
+}
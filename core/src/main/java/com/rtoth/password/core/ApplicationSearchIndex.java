@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Case-insensitive index of application names, answering prefix, substring and typo-tolerant queries.
+ * <p>
+ * Names are kept in a sorted set for prefix queries, and in posting sets by each pair of adjacent characters
+ * (bigram) they contain. Substring queries only check the names containing the query's rarest bigram, and
+ * typo-tolerant queries only check the names sharing enough of its bigrams to be within reach. The index is updated
+ * incrementally and is safe for concurrent use without locking; queries running during an update may or may not
+ * see it.
+ */
+final class ApplicationSearchIndex
+{
+    /** Queries shorter than this are not matched with typos. */
+    static final int MIN_FUZZY_QUERY_LENGTH = 4;
+
+    /** Queries at least this long are matched with up to two typos rather than one. */
+    static final int TWO_TYPO_QUERY_LENGTH = 8;
+
+    /** Orders names case-insensitively, then case-sensitively so distinct names never compare equal. */
+    private static final Comparator<String> NAME_ORDER = new Comparator<String>()
+    {
+        @Override
+        public int compare(String first, String second)
+        {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(first, second);
+            return result != 0 ? result : first.compareTo(second);
+        }
+    };
+
+    /** Every indexed name, in {@link #NAME_ORDER}. */
+    private final NavigableSet<String> names = new ConcurrentSkipListSet<>(NAME_ORDER);
+
+    /**
+     * Names by each bigram they contain, keyed by {@link #bigram(char, char)}. Emptied sets are kept, since the
+     * number of distinct bigrams is small.
+     */
+    private final ConcurrentMap<Integer, Set<String>> namesByBigram = Maps.newConcurrentMap();
+
+    /**
+     * Add a name to the index.
+     *
+     * @param name Name to add. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code name} is {@code null}.
+     */
+    void add(String name)
+    {
+        Preconditions.checkNotNull(name, "name cannot be null.");
+
+        if (names.add(name))
+        {
+            for (int i = 1; i < name.length(); i++)
+            {
+                Integer bigram = bigram(name.charAt(i - 1), name.charAt(i));
+                Set<String> bigramNames = namesByBigram.get(bigram);
+                if (bigramNames == null)
+                {
+                    Set<String> newNames = Sets.newConcurrentHashSet();
+                    bigramNames = namesByBigram.putIfAbsent(bigram, newNames);
+                    if (bigramNames == null)
+                    {
+                        bigramNames = newNames;
+                    }
+                }
+                bigramNames.add(name);
+            }
+        }
+    }
+
+    /**
+     * Remove a name from the index.
+     *
+     * @param name Name to remove. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code name} is {@code null}.
+     */
+    void remove(String name)
+    {
+        Preconditions.checkNotNull(name, "name cannot be null.");
+
+        if (names.remove(name))
+        {
+            for (int i = 1; i < name.length(); i++)
+            {
+                Set<String> bigramNames = namesByBigram.get(bigram(name.charAt(i - 1), name.charAt(i)));
+                if (bigramNames != null)
+                {
+                    bigramNames.remove(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the names matching the provided query, ignoring case.
+     * <p>
+     * Names starting with the query come first, then names containing it, then names containing it with up to one
+     * typo (two for queries of at least {@link #TWO_TYPO_QUERY_LENGTH} characters), where a typo is an inserted,
+     * missing, wrong or swapped character. Typos are only allowed in queries of at least
+     * {@link #MIN_FUZZY_QUERY_LENGTH} characters. Prefix and substring matches are in alphabetical order; typo
+     * matches are by number of typos, then alphabetical.
+     *
+     * @param query Query to match. Cannot be {@code null}. An empty query matches every name.
+     * @param maxResults Maximum number of names to return. Must be positive.
+     * @return The matching names, best match first. Never {@code null}, but may be empty.
+     *
+     * @throws IllegalArgumentException if {@code maxResults} is not positive.
+     * @throws NullPointerException if {@code query} is {@code null}.
+     */
+    List<String> search(String query, int maxResults)
+    {
+        Preconditions.checkNotNull(query, "query cannot be null.");
+        Preconditions.checkArgument(maxResults > 0, "maxResults must be positive.");
+
+        // Names equal to the query but for case may sort either side of it.
+        List<String> exactMatches = Lists.newArrayList();
+        for (String name : names.headSet(query, false).descendingSet())
+        {
+            if (String.CASE_INSENSITIVE_ORDER.compare(name, query) != 0)
+            {
+                break;
+            }
+            exactMatches.add(name);
+        }
+        Set<String> results = Sets.newLinkedHashSet(Lists.reverse(exactMatches));
+        for (String name : names.tailSet(query))
+        {
+            if (results.size() == maxResults || !name.regionMatches(true, 0, query, 0, query.length()))
+            {
+                break;
+            }
+            results.add(name);
+        }
+
+        if (results.size() < maxResults && !query.isEmpty())
+        {
+            addSubstringMatches(query, results, maxResults);
+        }
+        if (results.size() < maxResults && query.length() >= MIN_FUZZY_QUERY_LENGTH)
+        {
+            addFuzzyMatches(query, results, maxResults);
+        }
+        return ImmutableList.copyOf(results);
+    }
+
+    /**
+     * Add the names containing the query, in alphabetical order, until there are {@code maxResults} results.
+     *
+     * @param query Query to match. Not empty.
+     * @param results Results so far; names already here are skipped.
+     * @param maxResults Maximum number of results.
+     */
+    private void addSubstringMatches(String query, Set<String> results, int maxResults)
+    {
+        // Every name containing the query contains each of its bigrams, so the smallest posting set is enough.
+        Set<String> fewestNames = null;
+        for (int i = 1; i < query.length(); i++)
+        {
+            Set<String> bigramNames = namesByBigram.get(bigram(query.charAt(i - 1), query.charAt(i)));
+            if (bigramNames == null)
+            {
+                return;
+            }
+            if (fewestNames == null || bigramNames.size() < fewestNames.size())
+            {
+                fewestNames = bigramNames;
+            }
+        }
+        Iterable<String> candidates = fewestNames == null ? names : fewestNames;
+
+        List<String> matches = Lists.newArrayList();
+        for (String name : candidates)
+        {
+            if (!results.contains(name) && indexOfIgnoreCase(name, query) >= 0)
+            {
+                matches.add(name);
+                // Candidates from the sorted set are already in order, so the first matches are the ones to keep.
+                if (candidates == names && results.size() + matches.size() == maxResults)
+                {
+                    break;
+                }
+            }
+        }
+        if (candidates != names)
+        {
+            Collections.sort(matches, NAME_ORDER);
+        }
+        results.addAll(matches.subList(0, Math.min(matches.size(), maxResults - results.size())));
+    }
+
+    /**
+     * Add the names containing the query with typos, by number of typos then alphabetically, until there are
+     * {@code maxResults} results.
+     *
+     * @param query Query to match. At least {@link #MIN_FUZZY_QUERY_LENGTH} characters.
+     * @param results Results so far; names already here are skipped.
+     * @param maxResults Maximum number of results.
+     */
+    private void addFuzzyMatches(String query, Set<String> results, int maxResults)
+    {
+        int maxTypos = query.length() >= TWO_TYPO_QUERY_LENGTH ? 2 : 1;
+
+        // Count the distinct query bigrams each name shares. A typo changes at most three of them.
+        Set<Integer> queryBigrams = Sets.newHashSet();
+        for (int i = 1; i < query.length(); i++)
+        {
+            queryBigrams.add(bigram(query.charAt(i - 1), query.charAt(i)));
+        }
+        Map<String, Integer> sharedBigrams = Maps.newHashMap();
+        for (Integer bigram : queryBigrams)
+        {
+            Set<String> bigramNames = namesByBigram.get(bigram);
+            if (bigramNames != null)
+            {
+                for (String name : bigramNames)
+                {
+                    Integer shared = sharedBigrams.get(name);
+                    sharedBigrams.put(name, shared == null ? 1 : shared + 1);
+                }
+            }
+        }
+        int minSharedBigrams = Math.max(1, queryBigrams.size() - 3 * maxTypos);
+
+        char[] foldedQuery = fold(query);
+        final Map<String, Integer> typosByName = Maps.newHashMap();
+        for (Map.Entry<String, Integer> entry : sharedBigrams.entrySet())
+        {
+            String name = entry.getKey();
+            if (entry.getValue() >= minSharedBigrams && !results.contains(name))
+            {
+                int typos = substringTypos(foldedQuery, fold(name), maxTypos);
+                if (typos <= maxTypos)
+                {
+                    typosByName.put(name, typos);
+                }
+            }
+        }
+
+        List<String> matches = Lists.newArrayList(typosByName.keySet());
+        Collections.sort(matches, new Comparator<String>()
+        {
+            @Override
+            public int compare(String first, String second)
+            {
+                int result = typosByName.get(first).compareTo(typosByName.get(second));
+                return result != 0 ? result : NAME_ORDER.compare(first, second);
+            }
+        });
+        results.addAll(matches.subList(0, Math.min(matches.size(), maxResults - results.size())));
+    }
+
+    /**
+     * Get the fewest typos needed for {@code name} to contain {@code query}, ignoring case. A typo is an inserted,
+     * missing, wrong or swapped character.
+     *
+     * @param query Query to match, {@link #fold(String) folded}.
+     * @param name Name to match against, {@link #fold(String) folded}.
+     * @param maxTypos Most typos of interest; larger counts may be returned as any value above this.
+     * @return Number of typos.
+     */
+    private static int substringTypos(char[] query, char[] name, int maxTypos)
+    {
+        // Edit distance with adjacent transpositions, where the match may start and end anywhere in the name.
+        int[] beforePrevious = new int[name.length + 1];
+        int[] previous = new int[name.length + 1];
+        int[] current = new int[name.length + 1];
+        for (int i = 1; i <= query.length; i++)
+        {
+            char queryChar = query[i - 1];
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= name.length; j++)
+            {
+                char nameChar = name[j - 1];
+                int cost = queryChar == nameChar ? 0 : 1;
+                int typos = Math.min(previous[j - 1] + cost, Math.min(previous[j] + 1, current[j - 1] + 1));
+                if (i > 1 && j > 1 && queryChar == name[j - 2] && query[i - 2] == nameChar)
+                {
+                    typos = Math.min(typos, beforePrevious[j - 2] + 1);
+                }
+                current[j] = typos;
+                rowMin = Math.min(rowMin, typos);
+            }
+            if (rowMin > maxTypos)
+            {
+                return rowMin;
+            }
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+
+        int typos = Integer.MAX_VALUE;
+        for (int value : previous)
+        {
+            typos = Math.min(typos, value);
+        }
+        return typos;
+    }
+
+    /**
+     * Get the index of {@code query} in {@code name}, ignoring case.
+     *
+     * @param name Name to search.
+     * @param query Query to find.
+     * @return The index, or {@code -1} if {@code name} does not contain {@code query}.
+     */
+    private static int indexOfIgnoreCase(String name, String query)
+    {
+        for (int i = 0; i + query.length() <= name.length(); i++)
+        {
+            if (name.regionMatches(true, i, query, 0, query.length()))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the key of a bigram, ignoring case.
+     *
+     * @param first First character.
+     * @param second Second character.
+     * @return The key.
+     */
+    private static Integer bigram(char first, char second)
+    {
+        return (fold(first) << Character.SIZE) | fold(second);
+    }
+
+    /**
+     * Fold the case of every character of a string.
+     *
+     * @param value String to fold.
+     * @return The folded characters.
+     */
+    private static char[] fold(String value)
+    {
+        char[] folded = new char[value.length()];
+        for (int i = 0; i < folded.length; i++)
+        {
+            folded[i] = fold(value.charAt(i));
+        }
+        return folded;
+    }
+
+    /**
+     * Fold the case of a character the same way as {@link String#regionMatches(boolean, int, String, int, int)}.
+     *
+     * @param c Character to fold.
+     * @return The folded character.
+     */
+    private static char fold(char c)
+    {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -22,11 +22,16 @@
 package com.rtoth.password.core;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import java.security.SecureRandom;
+import java.util.List;
 
 /**
  * {@link RandomPasswordGenerator} which generates ASCII passwords only.
+ * <p>
+ * Random bytes are drawn from the {@link SecureRandom} in bulk by a {@link BufferedRandom}, so every length and
+ * character is exactly equally likely. Instances are thread-safe.
  */
 public class AsciiPasswordGenerator implements RandomPasswordGenerator
 {
@@ -42,8 +47,8 @@ public class AsciiPasswordGenerator implements RandomPasswordGenerator
     /** Maximum printable ASCII character -- "~" */
     private static final int ASCII_MAX = 126;
 
-    /** Used to generate random numbers. */
-    private final SecureRandom random = new SecureRandom();
+    /** Used to generate random numbers. Guarded by {@code this}. */
+    private final BufferedRandom random;
 
     /** Minimum password length to use. */
     private final int minCharacters;
@@ -60,6 +65,23 @@ public class AsciiPasswordGenerator implements RandomPasswordGenerator
      *                      {@link #ABSOLUTE_MAX_CHARS}.
      */
     public AsciiPasswordGenerator(int minCharacters, int maxCharacters)
+    {
+        this(minCharacters, maxCharacters, new SecureRandom());
+    }
+
+    /**
+     * Create a new {@link AsciiPasswordGenerator} which draws from the provided random number generator.
+     *
+     * @param minCharacters Minimum password length. Must be &lt; {@code maxCharacters} and &ge;
+     *                      {@link #ABSOLUTE_MIN_CHARS}.
+     * @param maxCharacters Maximum password length. Must be &gt; {@code minCharacters} and &le;
+     *                      {@link #ABSOLUTE_MAX_CHARS}.
+     * @param random Random number generator to draw from. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code minCharacters} or {@code maxCharacters} is out of range.
+     * @throws NullPointerException if {@code random} is {@code null}.
+     */
+    AsciiPasswordGenerator(int minCharacters, int maxCharacters, SecureRandom random)
     {
         Preconditions.checkArgument(minCharacters < maxCharacters,
             "minCharacters must be < maxCharacters");
@@ -70,23 +92,46 @@ public class AsciiPasswordGenerator implements RandomPasswordGenerator
 
         this.minCharacters = minCharacters;
         this.maxCharacters = maxCharacters;
+        this.random = new BufferedRandom(random);
     }
 
     @Override
-    public String generatePassword()
+    public synchronized String generatePassword()
+    {
+        return nextPassword();
+    }
+
+    @Override
+    public synchronized List<String> generatePasswords(int count)
+    {
+        Preconditions.checkArgument(count >= 0, "count must be non-negative.");
+
+        ImmutableList.Builder<String> passwords = ImmutableList.builder();
+        for (int i = 0; i < count; i++)
+        {
+            passwords.add(nextPassword());
+        }
+        return passwords.build();
+    }
+
+    /**
+     * Generate a single password. Callers must hold the lock on {@code this}.
+     *
+     * @return The password.
+     */
+    private String nextPassword()
     {
-        int length = randomInRange(minCharacters, maxCharacters);
-        StringBuilder passwordBuilder = new StringBuilder();
-        for (int i = 0; i < length; i++)
+        char[] password = new char[randomInRange(minCharacters, maxCharacters)];
+        for (int i = 0; i < password.length; i++)
         {
-            passwordBuilder.append(randomAsciiCharacter());
+            password[i] = randomAsciiCharacter();
         }
 
-        return passwordBuilder.toString();
+        return new String(password);
     }
 
     /**
-     * Get a random printable ASCII character.
+     * Get a random printable ASCII character. Callers must hold the lock on {@code this}.
      *
      * @return A random printable ASCII character.
      */
@@ -96,7 +141,7 @@ public class AsciiPasswordGenerator implements RandomPasswordGenerator
     }
 
     /**
-     * Get a random integer in the provided range, inclusive.
+     * Get a random integer in the provided range, inclusive. Callers must hold the lock on {@code this}.
      *
      * @param minInclusive Range lower bound.
      * @param maxInclusive Range upper bound.
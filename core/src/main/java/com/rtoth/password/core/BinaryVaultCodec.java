@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Streams {@link EncryptedVault}s to and from a compact, length-prefixed binary format.
+ * <p>
+ * The format is:
+ * <pre>
+ *   int     magic ("PHVB")
+ *   byte    format version
+ *   int     vault version
+ *   varint  KDF name length, then the UTF-8 KDF name
+ *   int     KDF iterations
+ *   varint  salt length, then the salt
+ *   varint  key check length, then the key check value
+ *   int     entry count
+ *   entries: varint encrypted application length, then the encrypted application,
+ *            varint encrypted password length, then the encrypted password
+ * </pre>
+ * Integers are big-endian; varints are unsigned LEB128. Entries are read and written through a fixed-size buffer,
+ * so the encoded vault is never held in memory in full.
+ */
+final class BinaryVaultCodec
+{
+    /** Magic number at the start of every binary vault -- "PHVB". */
+    static final int MAGIC = 0x50485642;
+
+    /** Current binary format version. */
+    private static final byte FORMAT_VERSION = 1;
+
+    /** Size of the buffer used for streaming, in bytes. */
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    /** Maximum length of a single field. Anything larger must be corruption. */
+    private static final int MAX_FIELD_BYTES = 1024 * 1024;
+
+    private BinaryVaultCodec()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Write the provided vault to the provided channel.
+     *
+     * @param vault Vault to write. Cannot be {@code null}, and cannot be a legacy vault.
+     * @param channel Channel to write to. Cannot be {@code null}. Not closed by this method.
+     *
+     * @throws IllegalArgumentException if {@code vault} is a legacy vault.
+     * @throws IOException if there is a problem writing to {@code channel}.
+     */
+    static void write(EncryptedVault vault, WritableByteChannel channel) throws IOException
+    {
+        VaultHeader header = vault.getHeader();
+        if (header.isLegacy())
+        {
+            throw new IllegalArgumentException("Cannot write legacy vaults.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.putInt(MAGIC);
+        buffer.put(FORMAT_VERSION);
+        buffer.putInt(header.getVersion());
+        buffer = putField(buffer, header.getKdf().getBytes(Charsets.UTF_8), channel);
+        buffer = ensureSpace(buffer, 4, channel);
+        buffer.putInt(header.getIterations());
+        buffer = putField(buffer, header.getSalt(), channel);
+        buffer = putField(buffer, header.getKeyCheck(), channel);
+        buffer = ensureSpace(buffer, 4, channel);
+        buffer.putInt(vault.getEntries().size());
+        for (EncryptedEntry entry : vault.getEntries())
+        {
+            buffer = putField(buffer, entry.getEncryptedApplication(), channel);
+            buffer = putField(buffer, entry.getEncryptedPassword(), channel);
+        }
+        drain(buffer, channel);
+    }
+
+    /**
+     * Read a vault from the provided channel. The channel must be positioned just after the magic number.
+     *
+     * @param channel Channel to read from. Cannot be {@code null}. Not closed by this method.
+     * @return The vault. Never {@code null}.
+     *
+     * @throws IOException if there is a problem reading from {@code channel}, or it does not contain a well-formed
+     *         vault.
+     */
+    static EncryptedVault read(ReadableByteChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.flip();
+        return read(buffer, channel);
+    }
+
+    /**
+     * Read a vault from the provided buffer. The buffer must be positioned just after the magic number, and must
+     * contain the whole vault.
+     *
+     * @param buffer Buffer to read from. Cannot be {@code null}.
+     * @return The vault. Never {@code null}.
+     *
+     * @throws IOException if {@code buffer} does not contain a well-formed vault.
+     */
+    static EncryptedVault read(ByteBuffer buffer) throws IOException
+    {
+        return read(buffer, null);
+    }
+
+    /**
+     * Read a vault, starting with the provided buffer and refilling it from the provided channel as necessary.
+     *
+     * @param buffer Buffer, in read mode, holding the start of the vault.
+     * @param channel Channel holding the rest of the vault, or {@code null} if the buffer holds all of it.
+     * @return The vault.
+     *
+     * @throws IOException if there is a problem reading from {@code channel}, or the vault is malformed.
+     */
+    private static EncryptedVault read(ByteBuffer buffer, ReadableByteChannel channel) throws IOException
+    {
+        try
+        {
+            buffer = ensureAvailable(buffer, 5, channel);
+            byte formatVersion = buffer.get();
+            if (formatVersion != FORMAT_VERSION)
+            {
+                throw new IOException("Unsupported binary vault format version: " + formatVersion);
+            }
+            int vaultVersion = buffer.getInt();
+            byte[] kdf = new byte[readLength(buffer, channel)];
+            buffer = getField(buffer, kdf, channel);
+            buffer = ensureAvailable(buffer, 4, channel);
+            int iterations = buffer.getInt();
+            byte[] salt = new byte[readLength(buffer, channel)];
+            buffer = getField(buffer, salt, channel);
+            byte[] keyCheck = new byte[readLength(buffer, channel)];
+            buffer = getField(buffer, keyCheck, channel);
+            VaultHeader header = new VaultHeader(
+                vaultVersion, new String(kdf, Charsets.UTF_8), iterations, salt, keyCheck);
+
+            buffer = ensureAvailable(buffer, 4, channel);
+            int entryCount = buffer.getInt();
+            if (entryCount < 0)
+            {
+                throw new IOException("Invalid entry count: " + entryCount);
+            }
+
+            // Don't trust the count for pre-sizing beyond what a sane vault could hold.
+            List<EncryptedEntry> entries = Lists.newArrayListWithCapacity(Math.min(entryCount, 1 << 20));
+            for (int i = 0; i < entryCount; i++)
+            {
+                byte[] application = new byte[readLength(buffer, channel)];
+                buffer = getField(buffer, application, channel);
+                byte[] password = new byte[readLength(buffer, channel)];
+                buffer = getField(buffer, password, channel);
+                entries.add(new EncryptedEntry(application, password));
+            }
+            return new EncryptedVault(header, entries);
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new EOFException("Truncated vault.");
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Malformed vault.", e);
+        }
+    }
+
+    /**
+     * Read a varint field length. Varints are at most 5 bytes, but may be split across refills.
+     *
+     * @param buffer Buffer to read from.
+     * @param channel Channel to refill from, or {@code null}.
+     * @return The length.
+     *
+     * @throws IOException if the length is invalid or cannot be read.
+     */
+    private static int readLength(ByteBuffer buffer, ReadableByteChannel channel) throws IOException
+    {
+        int length = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            if (!buffer.hasRemaining())
+            {
+                refill(buffer, channel);
+            }
+            byte b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                if (length < 0 || length > MAX_FIELD_BYTES)
+                {
+                    throw new IOException("Invalid field length: " + length);
+                }
+                return length;
+            }
+        }
+        throw new IOException("Malformed field length.");
+    }
+
+    /**
+     * Read a field into the provided array.
+     *
+     * @param buffer Buffer to read from.
+     * @param field Array to fill.
+     * @param channel Channel to refill from, or {@code null}.
+     * @return The buffer to keep reading from.
+     *
+     * @throws IOException if the field cannot be read.
+     */
+    private static ByteBuffer getField(ByteBuffer buffer, byte[] field, ReadableByteChannel channel)
+        throws IOException
+    {
+        buffer = ensureAvailable(buffer, field.length, channel);
+        buffer.get(field);
+        return buffer;
+    }
+
+    /**
+     * Make sure the buffer holds at least {@code count} unread bytes, refilling (and growing) it from the channel
+     * if necessary.
+     *
+     * @param buffer Buffer, in read mode.
+     * @param count Number of bytes needed.
+     * @param channel Channel to refill from, or {@code null}.
+     * @return The buffer to keep reading from.
+     *
+     * @throws IOException if the bytes cannot be read.
+     */
+    private static ByteBuffer ensureAvailable(ByteBuffer buffer, int count, ReadableByteChannel channel)
+        throws IOException
+    {
+        if (buffer.remaining() >= count)
+        {
+            return buffer;
+        }
+        if (count > buffer.capacity())
+        {
+            ByteBuffer larger = ByteBuffer.allocate(count);
+            larger.put(buffer);
+            larger.flip();
+            buffer = larger;
+        }
+        while (buffer.remaining() < count)
+        {
+            refill(buffer, channel);
+        }
+        return buffer;
+    }
+
+    /**
+     * Read more bytes from the channel into the buffer, keeping any unread bytes.
+     *
+     * @param buffer Buffer, in read mode.
+     * @param channel Channel to refill from, or {@code null}.
+     *
+     * @throws IOException if no more bytes are available.
+     */
+    private static void refill(ByteBuffer buffer, ReadableByteChannel channel) throws IOException
+    {
+        if (channel == null)
+        {
+            throw new EOFException("Truncated vault.");
+        }
+        buffer.compact();
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0)
+        {
+            throw new EOFException("Truncated vault.");
+        }
+    }
+
+    /**
+     * Write a length-prefixed field.
+     *
+     * @param buffer Buffer, in write mode.
+     * @param field Field to write.
+     * @param channel Channel to drain the buffer to when it is full.
+     * @return The buffer to keep writing to.
+     *
+     * @throws IOException if there is a problem writing to {@code channel}.
+     */
+    private static ByteBuffer putField(ByteBuffer buffer, byte[] field, WritableByteChannel channel)
+        throws IOException
+    {
+        buffer = ensureSpace(buffer, 5 + field.length, channel);
+        int length = field.length;
+        while ((length & ~0x7F) != 0)
+        {
+            buffer.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+        buffer.put(field);
+        return buffer;
+    }
+
+    /**
+     * Make sure the buffer has room for at least {@code count} more bytes, draining (and growing) it if necessary.
+     *
+     * @param buffer Buffer, in write mode.
+     * @param count Number of bytes needed.
+     * @param channel Channel to drain to.
+     * @return The buffer to keep writing to.
+     *
+     * @throws IOException if there is a problem writing to {@code channel}.
+     */
+    private static ByteBuffer ensureSpace(ByteBuffer buffer, int count, WritableByteChannel channel)
+        throws IOException
+    {
+        if (buffer.remaining() >= count)
+        {
+            return buffer;
+        }
+        drain(buffer, channel);
+        return count > buffer.capacity() ? ByteBuffer.allocate(count) : buffer;
+    }
+
+    /**
+     * Write everything in the buffer to the channel, leaving the buffer empty and in write mode.
+     *
+     * @param buffer Buffer, in write mode.
+     * @param channel Channel to drain to.
+     *
+     * @throws IOException if there is a problem writing to {@code channel}.
+     */
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
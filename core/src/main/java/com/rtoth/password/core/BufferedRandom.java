@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+import java.security.SecureRandom;
+
+/**
+ * Draws random bytes from a {@link SecureRandom} in bulk into a reusable buffer, and turns them into unbiased
+ * random integers by rejection sampling.
+ * <p>
+ * Each byte is cleared from the buffer once used. Instances are not thread-safe.
+ */
+final class BufferedRandom
+{
+    /** Largest bound supported by {@link #nextInt(int)}. */
+    static final int MAX_BOUND = 1 << 16;
+
+    /** Number of random bytes drawn from {@link #random} at a time; enough for about a dozen passwords. */
+    private static final int BUFFER_SIZE = 512;
+
+    /** Random number generator to draw from. */
+    private final SecureRandom random;
+
+    /** Random bytes not used yet, from {@link #index} on. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Index of the next unused byte in {@link #buffer}. */
+    private int index = BUFFER_SIZE;
+
+    /**
+     * Create a new {@link BufferedRandom}.
+     *
+     * @param random Random number generator to draw from. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code random} is {@code null}.
+     */
+    BufferedRandom(SecureRandom random)
+    {
+        this.random = Preconditions.checkNotNull(random, "random cannot be null.");
+    }
+
+    /**
+     * Mix the provided seed into the random number generator. Bytes already buffered are not affected.
+     *
+     * @param seed Seed bytes.
+     */
+    void setSeed(byte[] seed)
+    {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Get a random integer from {@code 0} inclusive to {@code bound} exclusive, with every value equally likely.
+     *
+     * @param bound Upper bound, exclusive. Must be positive and at most {@link #MAX_BOUND}.
+     * @return The random integer.
+     */
+    int nextInt(int bound)
+    {
+        // Values from the largest multiple of the bound up would make the low values more likely, so skip them.
+        int range = bound <= 256 ? 256 : MAX_BOUND;
+        int limit = range - range % bound;
+        int value;
+        do
+        {
+            value = bound <= 256 ? nextByte() : (nextByte() << 8) | nextByte();
+        }
+        while (value >= limit);
+        return value % bound;
+    }
+
+    /**
+     * Get the next random byte, refilling the {@link #buffer} if it has all been used.
+     *
+     * @return The byte, from 0 to 255.
+     */
+    private int nextByte()
+    {
+        if (index == buffer.length)
+        {
+            random.nextBytes(buffer);
+            index = 0;
+        }
+        int value = buffer[index] & 0xFF;
+        buffer[index++] = 0;
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+/**
+ * {@link RandomPasswordGenerator} which generates ASCII passwords only, without contention between threads.
+ * <p>
+ * Generates the same passwords as {@link AsciiPasswordGenerator}, using a {@link PolicyPasswordGenerator} with the
+ * {@link PasswordPolicy#defaults() default} characters, so each thread draws from its own random number generator.
+ */
+public class ConcurrentAsciiPasswordGenerator implements RandomPasswordGenerator
+{
+    /** Generates the passwords. */
+    private final PolicyPasswordGenerator generator;
+
+    /**
+     * Create a new {@link ConcurrentAsciiPasswordGenerator}.
+     *
+     * @param minCharacters Minimum password length. Must be &lt; {@code maxCharacters} and &ge;
+     *                      {@link AsciiPasswordGenerator#ABSOLUTE_MIN_CHARS}.
+     * @param maxCharacters Maximum password length. Must be &gt; {@code minCharacters} and &le;
+     *                      {@link AsciiPasswordGenerator#ABSOLUTE_MAX_CHARS}.
+     *
+     * @throws IllegalArgumentException if {@code minCharacters} or {@code maxCharacters} is out of range.
+     */
+    public ConcurrentAsciiPasswordGenerator(int minCharacters, int maxCharacters)
+    {
+        Preconditions.checkArgument(minCharacters < maxCharacters,
+            "minCharacters must be < maxCharacters");
+        Preconditions.checkArgument(minCharacters >= AsciiPasswordGenerator.ABSOLUTE_MIN_CHARS,
+            "minCharacters must be >= " + AsciiPasswordGenerator.ABSOLUTE_MIN_CHARS);
+        Preconditions.checkArgument(maxCharacters <= AsciiPasswordGenerator.ABSOLUTE_MAX_CHARS,
+            "maxCharacters must be <= " + AsciiPasswordGenerator.ABSOLUTE_MAX_CHARS);
+
+        this.generator = new PolicyPasswordGenerator(
+            PasswordPolicy.builder().length(minCharacters, maxCharacters).build());
+    }
+
+    @Override
+    public String generatePassword()
+    {
+        return generator.generatePassword();
+    }
+
+    @Override
+    public List<String> generatePasswords(int count)
+    {
+        return generator.generatePasswords(count);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads {@link PasswordRecord}s from comma-separated values, one row at a time.
+ * <p>
+ * Fields may be quoted with {@code '"'}, in which case they can contain commas, line breaks and doubled quotes.
+ */
+final class CsvPasswordRecordReader implements PasswordRecordReader
+{
+    /** Header names the application name may be taken from, most preferred first. */
+    private static final List<String> APPLICATION_COLUMNS = ImmutableList.of("application", "name", "title", "url");
+
+    /** Header name the password is taken from. */
+    private static final String PASSWORD_COLUMN = "password";
+
+    /** Reader to read from. */
+    private final BufferedReader reader;
+
+    /** Fields of the row being read; reused between rows. */
+    private final List<String> fields = Lists.newArrayList();
+
+    /** Characters of the field being read; reused between fields. */
+    private final StringBuilder field = new StringBuilder();
+
+    /** Index of the application column, or {@code -1} if the header has not been read yet. */
+    private int applicationColumn = -1;
+
+    /** Index of the password column. */
+    private int passwordColumn = -1;
+
+    /** Number of the row being read, for error messages. */
+    private int row = 0;
+
+    /**
+     * Create a new {@link CsvPasswordRecordReader}.
+     *
+     * @param reader Reader to read from. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code reader} is {@code null}.
+     */
+    CsvPasswordRecordReader(Reader reader)
+    {
+        Preconditions.checkNotNull(reader, "reader cannot be null.");
+
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public PasswordRecord next() throws IOException
+    {
+        if (applicationColumn < 0)
+        {
+            readHeader();
+        }
+
+        while (readRow())
+        {
+            if (fields.size() > applicationColumn && fields.size() > passwordColumn)
+            {
+                String application = fields.get(applicationColumn);
+                String password = fields.get(passwordColumn);
+                if (!application.isEmpty() && !password.isEmpty())
+                {
+                    return new PasswordRecord(application, password);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the header row and find the application and password columns.
+     *
+     * @throws IOException if there is a problem reading, or the header has no application or password column.
+     */
+    private void readHeader() throws IOException
+    {
+        if (!readRow())
+        {
+            throw new IOException("CSV input is empty.");
+        }
+
+        List<String> header = Lists.newArrayListWithCapacity(fields.size());
+        for (String name : fields)
+        {
+            header.add(name.trim().toLowerCase(Locale.ROOT));
+        }
+        for (String name : APPLICATION_COLUMNS)
+        {
+            applicationColumn = header.indexOf(name);
+            if (applicationColumn >= 0)
+            {
+                break;
+            }
+        }
+        passwordColumn = header.indexOf(PASSWORD_COLUMN);
+        if (applicationColumn < 0 || passwordColumn < 0)
+        {
+            throw new IOException("CSV header must have an application column (one of " + APPLICATION_COLUMNS +
+                ") and a " + PASSWORD_COLUMN + " column: " + header);
+        }
+    }
+
+    /**
+     * Read the next non-blank row into {@link #fields}.
+     *
+     * @return {@code true} if a row was read, {@code false} at the end of the input.
+     *
+     * @throws IOException if there is a problem reading, or a quoted field is not closed.
+     */
+    private boolean readRow() throws IOException
+    {
+        fields.clear();
+        field.setLength(0);
+        row++;
+
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        int c;
+        while ((c = reader.read()) != -1)
+        {
+            if (quoted)
+            {
+                if (c != '"')
+                {
+                    field.append((char) c);
+                }
+                else
+                {
+                    reader.mark(1);
+                    if (reader.read() == '"')
+                    {
+                        field.append('"');
+                    }
+                    else
+                    {
+                        reader.reset();
+                        quoted = false;
+                    }
+                }
+            }
+            else if (c == '"' && field.length() == 0)
+            {
+                quoted = true;
+                fieldStarted = true;
+            }
+            else if (c == ',')
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStarted = true;
+            }
+            else if (c == '\r' || c == '\n')
+            {
+                if (c == '\r')
+                {
+                    reader.mark(1);
+                    if (reader.read() != '\n')
+                    {
+                        reader.reset();
+                    }
+                }
+                if (fieldStarted || field.length() > 0)
+                {
+                    fields.add(field.toString());
+                    return true;
+                }
+                // Skip blank lines.
+                row++;
+            }
+            else
+            {
+                field.append((char) c);
+                fieldStarted = true;
+            }
+        }
+
+        if (quoted)
+        {
+            throw new IOException("Unterminated quoted field in CSV row " + row + ".");
+        }
+        if (fieldStarted || field.length() > 0)
+        {
+            fields.add(field.toString());
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes {@link PasswordRecord}s as comma-separated values, with a header row.
+ * <p>
+ * Fields are quoted only when they need to be.
+ */
+final class CsvPasswordRecordWriter implements PasswordRecordWriter
+{
+    /** Characters which require a field to be quoted. */
+    private static final CharMatcher QUOTE_REQUIRED = CharMatcher.anyOf(",\"\r\n");
+
+    /** Line separator; CRLF, as in RFC 4180. */
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    /** Writer to write to. */
+    private final BufferedWriter writer;
+
+    /** Whether the header row has been written. */
+    private boolean headerWritten = false;
+
+    /**
+     * Create a new {@link CsvPasswordRecordWriter}.
+     *
+     * @param writer Writer to write to. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code writer} is {@code null}.
+     */
+    CsvPasswordRecordWriter(Writer writer)
+    {
+        Preconditions.checkNotNull(writer, "writer cannot be null.");
+
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+    }
+
+    @Override
+    public void accept(PasswordRecord record) throws IOException
+    {
+        writeHeader();
+        writeField(record.getApplicationName());
+        writer.write(',');
+        writeField(record.getPassword());
+        writer.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void finish() throws IOException
+    {
+        writeHeader();
+        writer.flush();
+    }
+
+    /**
+     * Write the header row, if it hasn't been written yet.
+     *
+     * @throws IOException if there is a problem writing.
+     */
+    private void writeHeader() throws IOException
+    {
+        if (!headerWritten)
+        {
+            writer.write("application,password");
+            writer.write(LINE_SEPARATOR);
+            headerWritten = true;
+        }
+    }
+
+    /**
+     * Write a single field, quoting it if necessary.
+     *
+     * @param value Field value.
+     *
+     * @throws IOException if there is a problem writing.
+     */
+    private void writeField(String value) throws IOException
+    {
+        if (QUOTE_REQUIRED.matchesAnyOf(value) || CharMatcher.whitespace().trimFrom(value).length() != value.length())
+        {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+        else
+        {
+            writer.write(value);
+        }
+    }
+}
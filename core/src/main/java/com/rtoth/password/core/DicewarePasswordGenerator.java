@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * {@link RandomPasswordGenerator} which generates diceware passphrases: words drawn uniformly at random from a
+ * fixed list of 7776 words, joined by a separator.
+ * <p>
+ * Passphrases are easier to remember and type than random characters, at the cost of length. Their strength
+ * depends only on the number of words, see {@link #getEntropyBits()}. The word list is loaded the first time a
+ * passphrase is generated, and each thread draws from its own random number generator.
+ */
+public class DicewarePasswordGenerator implements RandomPasswordGenerator
+{
+    /** Default number of words in each passphrase, for about 77 bits of entropy. */
+    public static final int DEFAULT_WORD_COUNT = 6;
+
+    /** Default separator between words. */
+    public static final String DEFAULT_SEPARATOR = "-";
+
+    /** Number of words in each passphrase. */
+    private final int wordCount;
+
+    /** Separator between words. */
+    private final String separator;
+
+    /** Random number generators of each thread. */
+    private final PerThreadRandom randoms = new PerThreadRandom();
+
+    /**
+     * Create a new {@link DicewarePasswordGenerator} with {@value #DEFAULT_WORD_COUNT} words separated by
+     * "{@value #DEFAULT_SEPARATOR}".
+     */
+    public DicewarePasswordGenerator()
+    {
+        this(DEFAULT_WORD_COUNT);
+    }
+
+    /**
+     * Create a new {@link DicewarePasswordGenerator} with words separated by "{@value #DEFAULT_SEPARATOR}".
+     *
+     * @param wordCount Number of words in each passphrase. Must be positive.
+     *
+     * @throws IllegalArgumentException if {@code wordCount} is not positive.
+     */
+    public DicewarePasswordGenerator(int wordCount)
+    {
+        this(wordCount, DEFAULT_SEPARATOR);
+    }
+
+    /**
+     * Create a new {@link DicewarePasswordGenerator}.
+     *
+     * @param wordCount Number of words in each passphrase. Must be positive.
+     * @param separator Separator between words. Cannot be {@code null}, but may be empty.
+     *
+     * @throws IllegalArgumentException if {@code wordCount} is not positive.
+     * @throws NullPointerException if {@code separator} is {@code null}.
+     */
+    public DicewarePasswordGenerator(int wordCount, String separator)
+    {
+        Preconditions.checkArgument(wordCount > 0, "wordCount must be positive.");
+        this.wordCount = wordCount;
+        this.separator = Preconditions.checkNotNull(separator, "separator cannot be null.");
+    }
+
+    /**
+     * Get the number of words in each passphrase.
+     *
+     * @return The number of words. Always positive.
+     */
+    public int getWordCount()
+    {
+        return wordCount;
+    }
+
+    /**
+     * Get the entropy of each passphrase, assuming an attacker knows the word list, word count and separator.
+     * Each word adds log2(7776), about 12.9 bits.
+     *
+     * @return The entropy, in bits.
+     */
+    public double getEntropyBits()
+    {
+        return wordCount * Math.log(DicewareWordList.SIZE) / Math.log(2);
+    }
+
+    @Override
+    public String generatePassword()
+    {
+        return nextPassphrase(DicewareWordList.get(), randoms.get(1));
+    }
+
+    @Override
+    public List<String> generatePasswords(int count)
+    {
+        Preconditions.checkArgument(count >= 0, "count must be non-negative.");
+
+        DicewareWordList words = DicewareWordList.get();
+        BufferedRandom random = randoms.get(count);
+        ImmutableList.Builder<String> passwords = ImmutableList.builder();
+        for (int i = 0; i < count; i++)
+        {
+            passwords.add(nextPassphrase(words, random));
+        }
+        return passwords.build();
+    }
+
+    /**
+     * Generate a single passphrase.
+     *
+     * @param words The word list.
+     * @param random The calling thread's random number generator.
+     * @return The passphrase.
+     */
+    private String nextPassphrase(DicewareWordList words, BufferedRandom random)
+    {
+        StringBuilder passphrase = new StringBuilder(wordCount * (8 + separator.length()));
+        for (int i = 0; i < wordCount; i++)
+        {
+            if (i > 0)
+            {
+                passphrase.append(separator);
+            }
+            words.appendWord(random.nextInt(words.size()), passphrase);
+        }
+        return passphrase.toString();
+    }
+}
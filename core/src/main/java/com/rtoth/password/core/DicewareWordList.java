@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The word list {@link DicewarePasswordGenerator} draws from, packed into a single byte array.
+ * <p>
+ * The list is loaded from {@value #RESOURCE} the first time it is used. Words are stored back to back as ASCII
+ * bytes, with an array of offsets marking where each starts, so the whole list is two objects rather than one per
+ * word.
+ */
+final class DicewareWordList
+{
+    /** Resource holding the word list, relative to this class. */
+    static final String RESOURCE = "diceware-words.txt";
+
+    /** Number of words in the list, one for each roll of five dice. */
+    static final int SIZE = 7776;
+
+    /** Every word's ASCII bytes, back to back. */
+    private final byte[] words;
+
+    /** Index in {@link #words} where each word starts, followed by the length of {@link #words}. */
+    private final int[] offsets;
+
+    /**
+     * Create a new {@link DicewareWordList}.
+     *
+     * @param words Every word's ASCII bytes, back to back.
+     * @param offsets Index in {@code words} where each word starts, followed by the length of {@code words}.
+     */
+    private DicewareWordList(byte[] words, int[] offsets)
+    {
+        this.words = words;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Get the bundled word list, loading it if this is the first use.
+     *
+     * @return The word list. Never {@code null}.
+     *
+     * @throws IllegalStateException if the word list resource is missing or malformed.
+     */
+    static DicewareWordList get()
+    {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Get the number of words.
+     *
+     * @return The number of words, always {@value #SIZE}.
+     */
+    int size()
+    {
+        return SIZE;
+    }
+
+    /**
+     * Append a word to the provided builder, without creating a {@link String} for it.
+     *
+     * @param index Index of the word. Must be non-negative and less than {@link #size()}.
+     * @param builder Builder to append to.
+     */
+    void appendWord(int index, StringBuilder builder)
+    {
+        for (int i = offsets[index]; i < offsets[index + 1]; i++)
+        {
+            builder.append((char) words[i]);
+        }
+    }
+
+    /**
+     * Load the word list from the {@link #RESOURCE}, dropping comment lines and line breaks.
+     *
+     * @return The word list.
+     *
+     * @throws IllegalStateException if the resource is missing or malformed.
+     */
+    private static DicewareWordList load()
+    {
+        InputStream in = DicewareWordList.class.getResourceAsStream(RESOURCE);
+        if (in == null)
+        {
+            throw new IllegalStateException("Missing word list resource: " + RESOURCE);
+        }
+        byte[] resource;
+        try
+        {
+            resource = ByteStreams.toByteArray(in);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to read word list resource: " + RESOURCE, e);
+        }
+        finally
+        {
+            Closeables.closeQuietly(in);
+        }
+
+        // Pack the words in place, since they can only get shorter.
+        int count = 0;
+        int length = 0;
+        int[] starts = new int[resource.length / 2 + 2];
+        int lineStart = 0;
+        while (lineStart < resource.length)
+        {
+            int lineEnd = lineStart;
+            while (lineEnd < resource.length && resource[lineEnd] != '\n')
+            {
+                lineEnd++;
+            }
+            int wordEnd = lineEnd > lineStart && resource[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            if (wordEnd > lineStart && resource[lineStart] != '#')
+            {
+                starts[count++] = length;
+                for (int i = lineStart; i < wordEnd; i++)
+                {
+                    if (resource[i] < 'a' || resource[i] > 'z')
+                    {
+                        throw new IllegalStateException("Word list may only contain lowercase ASCII letters.");
+                    }
+                    resource[length++] = resource[i];
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (count != SIZE)
+        {
+            throw new IllegalStateException("Word list must contain " + SIZE + " words, but contains " + count + ".");
+        }
+
+        int[] offsets = new int[count + 1];
+        System.arraycopy(starts, 0, offsets, 0, count);
+        offsets[count] = length;
+        byte[] words = new byte[length];
+        System.arraycopy(resource, 0, words, 0, length);
+        return new DicewareWordList(words, offsets);
+    }
+
+    /**
+     * Holds the word list, so it is only loaded on first use.
+     */
+    private static final class Holder
+    {
+        /** The word list. */
+        private static final DicewareWordList INSTANCE = load();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+/**
+ * How hard a file-based {@link EncryptedPasswordDatastore} works to make each store survive a crash.
+ * <p>
+ * Every mode writes a temporary file and renames it over the old one, so a crash never leaves a truncated vault;
+ * the modes only differ in whether, and how often, the file and its directory are forced to the storage device.
+ * Without forcing, a crash may undo recent stores, leaving an older vault.
+ */
+public enum Durability
+{
+    /**
+     * Never force data to the device. Fastest, but a store may be lost (leaving the previous vault) if the machine
+     * crashes shortly after it.
+     */
+    NONE,
+
+    /**
+     * Force data to the device before each store returns, but let stores that arrive while another is being
+     * written share a single write and force.
+     * <p>
+     * This only helps when several threads store to the same datastore at once. A {@link PasswordManager} runs
+     * one save at a time, so for it this behaves exactly like {@link #ALWAYS}.
+     */
+    GROUP,
+
+    /**
+     * Write and force every store individually before it returns.
+     */
+    ALWAYS
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A single encrypted application/password pair as stored in a vault.
+ * <p>
+ * Application names are encrypted deterministically, so within a vault the encrypted application name identifies
+ * the entry. To avoid copying large numbers of arrays, the arrays passed in and returned are not copied and must
+ * not be modified.
+ */
+public final class EncryptedEntry
+{
+    /** Encrypted application name. */
+    private final byte[] encryptedApplication;
+
+    /** Encrypted password. */
+    private final byte[] encryptedPassword;
+
+    /**
+     * Create a new {@link EncryptedEntry}.
+     *
+     * @param encryptedApplication Encrypted application name. Cannot be {@code null}.
+     * @param encryptedPassword Encrypted password. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code encryptedApplication} or {@code encryptedPassword} is {@code null}.
+     */
+    public EncryptedEntry(byte[] encryptedApplication, byte[] encryptedPassword)
+    {
+        this.encryptedApplication =
+            Preconditions.checkNotNull(encryptedApplication, "encryptedApplication cannot be null.");
+        this.encryptedPassword = Preconditions.checkNotNull(encryptedPassword, "encryptedPassword cannot be null.");
+    }
+
+    /**
+     * Get the encrypted application name.
+     *
+     * @return The encrypted application name. Never {@code null}.
+     */
+    public byte[] getEncryptedApplication()
+    {
+        return encryptedApplication;
+    }
+
+    /**
+     * Get the encrypted password.
+     *
+     * @return The encrypted password. Never {@code null}.
+     */
+    public byte[] getEncryptedPassword()
+    {
+        return encryptedPassword;
+    }
+}
@@ -22,33 +22,29 @@
 package com.rtoth.password.core;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 /**
- * Encapsulates a datastore for passwords in {@link java.util.Properties} format.
+ * Encapsulates a datastore for encrypted vaults.
  */
 public interface EncryptedPasswordDatastore
 {
     /**
-     * Get an input stream from which applications and their corresponding encrypted passwords can be read in
-     * {@link java.util.Properties} format.
+     * Load the vault most recently stored.
      *
-     * @return An input stream from which applications and their corresponding encrypted passwords can be read in
-     *         {@link java.util.Properties} format. Never {@code null}.
+     * @return The vault most recently stored, or {@code null} if nothing has been stored yet.
      *
-     * @throws IOException If there is a problem obtaining the input stream.
+     * @throws IOException If there is a problem reading the vault.
      */
-    InputStream getInputStream() throws IOException;
+    EncryptedVault load() throws IOException;
 
     /**
-     * Get an output stream to which applications and their corresponding encrypted passwords can be stored in
-     * {@link java.util.Properties} format.
+     * Store the provided vault.
      *
-     * @return An output stream to which applications and their corresponding encrypted passwords can be stored in
-     *         {@link java.util.Properties} format. Never {@code null}.
+     * @param vault Complete current contents of the vault. Cannot be {@code null}.
+     * @param changes Entries changed since the previous call to this method, or since the vault was loaded. Cannot
+     *                be {@code null}.
      *
-     * @throws IOException If there is a problem obtaining the output stream.
+     * @throws IOException If there is a problem writing the vault.
      */
-    OutputStream getOutputStream() throws IOException;
+    void store(EncryptedVault vault, VaultChanges changes) throws IOException;
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * The encrypted contents of a vault: a single {@link VaultHeader} and the entries encrypted under it.
+ */
+public final class EncryptedVault
+{
+    /** Header describing how the vault key is derived. */
+    private final VaultHeader header;
+
+    /** Encrypted entries. */
+    private final List<EncryptedEntry> entries;
+
+    /**
+     * Create a new {@link EncryptedVault}.
+     *
+     * @param header Header describing how the vault key is derived. Cannot be {@code null}.
+     * @param entries Encrypted entries. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code header} or {@code entries} is {@code null}.
+     */
+    public EncryptedVault(VaultHeader header, List<EncryptedEntry> entries)
+    {
+        this.header = Preconditions.checkNotNull(header, "header cannot be null.");
+        this.entries = ImmutableList.copyOf(Preconditions.checkNotNull(entries, "entries cannot be null."));
+    }
+
+    /**
+     * Get the header describing how the vault key is derived.
+     *
+     * @return The header describing how the vault key is derived. Never {@code null}.
+     */
+    public VaultHeader getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * Get the encrypted entries.
+     *
+     * @return An immutable list of the encrypted entries. Never {@code null}, but may be empty.
+     */
+    public List<EncryptedEntry> getEntries()
+    {
+        return entries;
+    }
+}
@@ -27,19 +27,65 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
 
 /**
- * {@link EncryptedPasswordDatastore} that uses a flat file.
+ * {@link EncryptedPasswordDatastore} that uses a flat file in a compact binary format, rewriting the whole file on
+ * every store.
+ * <p>
+ * Files written in the older {@link Properties} format are still read, and are converted to the binary format by
+ * the next store.
+ * <p>
+ * Each store writes a temporary file next to the password file and renames it into place, forcing the file and
+ * the directory to the device according to the configured {@link Durability}. Where the platform cannot rename
+ * over an existing file, the old file is moved to a backup first, and restored from it when the datastore is next
+ * created if a crash struck before the new file was in place.
  */
 public class FileBasedEncryptedPasswordDatastore implements EncryptedPasswordDatastore
 {
+    /** Durability used unless another one is requested. */
+    public static final Durability DEFAULT_DURABILITY = Durability.ALWAYS;
+
+    /** Read mode used unless another one is requested. */
+    public static final ReadMode DEFAULT_READ_MODE = ReadMode.STREAM;
+
+    /** Suffix appended to the password file name to get the temporary file name. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
     /** File used to store data. */
     private final File passwordFile;
 
+    /** Temporary file written before being renamed to {@link #passwordFile}. */
+    private final File tempFile;
+
+    /** Where {@link #passwordFile} is moved while being replaced, on platforms which cannot rename over it. */
+    private final File backupFile;
+
+    /** How hard to work to make each store survive a crash. */
+    private final Durability durability;
+
+    /** How to read the password file. */
+    private final ReadMode readMode;
+
+    /** Receives the time taken to serialize and write each store. */
+    private final PasswordMetricsListener metricsListener;
+
+    /** Guards {@link #openCommit} and {@link #committing}. */
+    private final Object commitLock = new Object();
+
+    /** Commit which the next {@link Durability#GROUP} store will join, or {@code null} if there is none yet. */
+    private GroupCommit openCommit;
+
+    /** Whether a {@link Durability#GROUP} commit is currently being written. */
+    private boolean committing = false;
+
     /**
-     * Create a new {@link FileBasedEncryptedPasswordDatastore} using the provided {@link File}.
+     * Create a new {@link FileBasedEncryptedPasswordDatastore} using the provided {@link File} and the
+     * {@link #DEFAULT_DURABILITY}.
      *
      * @param passwordFile {@link File} in which encrypted passwords will be stored. Cannot be {@code null}, and must
      *                     be an existing regular file with read and write permissions.
@@ -49,23 +95,297 @@ public class FileBasedEncryptedPasswordDatastore implements EncryptedPasswordDat
      * @throws NullPointerException if {@code passwordFile} is {@code null}.
      */
     public FileBasedEncryptedPasswordDatastore(File passwordFile)
+    {
+        this(passwordFile, DEFAULT_DURABILITY);
+    }
+
+    /**
+     * Create a new {@link FileBasedEncryptedPasswordDatastore} using the provided {@link File} and
+     * {@link Durability}.
+     *
+     * @param passwordFile {@link File} in which encrypted passwords will be stored. Cannot be {@code null}, and must
+     *                     be an existing regular file with read and write permissions.
+     * @param durability How hard to work to make each store survive a crash. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions.
+     * @throws NullPointerException if {@code passwordFile} or {@code durability} is {@code null}.
+     */
+    public FileBasedEncryptedPasswordDatastore(File passwordFile, Durability durability)
+    {
+        this(passwordFile, durability, DEFAULT_READ_MODE);
+    }
+
+    /**
+     * Create a new {@link FileBasedEncryptedPasswordDatastore} using the provided {@link File}, {@link Durability}
+     * and {@link ReadMode}.
+     *
+     * @param passwordFile {@link File} in which encrypted passwords will be stored. Cannot be {@code null}, and must
+     *                     be an existing regular file with read and write permissions.
+     * @param durability How hard to work to make each store survive a crash. Cannot be {@code null}.
+     * @param readMode How to read {@code passwordFile}. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions.
+     * @throws NullPointerException if {@code passwordFile}, {@code durability} or {@code readMode} is {@code null}.
+     */
+    public FileBasedEncryptedPasswordDatastore(File passwordFile, Durability durability, ReadMode readMode)
+    {
+        this(passwordFile, durability, readMode, PasswordMetricsListener.NONE);
+    }
+
+    /**
+     * Create a new {@link FileBasedEncryptedPasswordDatastore} using the provided {@link File}, {@link Durability},
+     * {@link ReadMode}, and {@link PasswordMetricsListener}.
+     *
+     * @param passwordFile {@link File} in which encrypted passwords will be stored. Cannot be {@code null}, and must
+     *                     be an existing regular file with read and write permissions.
+     * @param durability How hard to work to make each store survive a crash. Cannot be {@code null}.
+     * @param readMode How to read {@code passwordFile}. Cannot be {@code null}.
+     * @param metricsListener Receives the time taken to serialize and write each store. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions.
+     * @throws NullPointerException if {@code passwordFile}, {@code durability}, {@code readMode} or
+     *         {@code metricsListener} is {@code null}.
+     */
+    public FileBasedEncryptedPasswordDatastore(File passwordFile, Durability durability, ReadMode readMode,
+                                               PasswordMetricsListener metricsListener)
     {
         this.passwordFile = Preconditions.checkNotNull(passwordFile, "passwordFile cannot be null.");
+        this.backupFile = new File(passwordFile.getPath() + FileReplacement.BACKUP_SUFFIX);
+        FileReplacement.recover(passwordFile, backupFile);
         Preconditions.checkArgument(
             passwordFile.exists() && !passwordFile.isDirectory() &&
                 passwordFile.canRead() && passwordFile.canWrite(),
             "passwordFile must be a regular file with rw permissions.");
+        this.tempFile = new File(passwordFile.getPath() + TEMP_SUFFIX);
+        this.durability = Preconditions.checkNotNull(durability, "durability cannot be null.");
+        this.readMode = Preconditions.checkNotNull(readMode, "readMode cannot be null.");
+        this.metricsListener = Preconditions.checkNotNull(metricsListener, "metricsListener cannot be null.");
+    }
+
+    /**
+     * Get the file used to store data.
+     *
+     * @return The file used to store data. Never {@code null}.
+     */
+    public File getPasswordFile()
+    {
+        return passwordFile;
+    }
+
+    /**
+     * Get how hard this datastore works to make each store survive a crash.
+     *
+     * @return How hard this datastore works to make each store survive a crash. Never {@code null}.
+     */
+    public Durability getDurability()
+    {
+        return durability;
+    }
+
+    /**
+     * Get how this datastore reads its file.
+     *
+     * @return How this datastore reads its file. Never {@code null}.
+     */
+    public ReadMode getReadMode()
+    {
+        return readMode;
     }
 
     @Override
-    public InputStream getInputStream() throws IOException
+    public EncryptedVault load() throws IOException
     {
-        return new FileInputStream(passwordFile);
+        FileInputStream in = new FileInputStream(passwordFile);
+        try
+        {
+            FileChannel channel = in.getChannel();
+            if (readMode == ReadMode.MAPPED && channel.size() >= 4 && channel.size() <= Integer.MAX_VALUE)
+            {
+                // The mapping stays valid after the channel is closed, and is released once the buffer is collected.
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.getInt() == BinaryVaultCodec.MAGIC)
+                {
+                    return BinaryVaultCodec.read(mapped);
+                }
+            }
+
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0)
+            {
+                // Keep reading until we have the magic number or hit the end of the file
+            }
+            magic.flip();
+            if (magic.remaining() == 4 && magic.getInt() == BinaryVaultCodec.MAGIC)
+            {
+                return BinaryVaultCodec.read(channel);
+            }
+
+            channel.position(0);
+            Properties encryptedFileContents = new Properties();
+            encryptedFileContents.load(Channels.newInputStream(channel));
+            return PropertiesVaultFormat.read(encryptedFileContents);
+        }
+        finally
+        {
+            in.close();
+        }
     }
 
     @Override
-    public OutputStream getOutputStream() throws IOException
+    public void store(EncryptedVault vault, VaultChanges changes) throws IOException
     {
-        return new FileOutputStream(passwordFile);
+        Preconditions.checkNotNull(vault, "vault cannot be null.");
+
+        switch (durability)
+        {
+            case NONE:
+            {
+                synchronized (commitLock)
+                {
+                    replaceFile(vault, false);
+                }
+                break;
+            }
+            case ALWAYS:
+            {
+                synchronized (commitLock)
+                {
+                    replaceFile(vault, true);
+                }
+                break;
+            }
+            case GROUP:
+            {
+                groupCommit(vault);
+                break;
+            }
+            default:
+            {
+                throw new IllegalStateException("Unknown durability: " + durability);
+            }
+        }
+    }
+
+    /**
+     * Store the provided vault as part of a group commit. Stores arriving while a commit is being written join the
+     * next commit, which writes only the newest of their vaults and forces it once for all of them.
+     *
+     * @param vault Vault to store.
+     *
+     * @throws IOException if there is a problem writing the commit this store joined.
+     */
+    private void groupCommit(EncryptedVault vault) throws IOException
+    {
+        GroupCommit commit;
+        synchronized (commitLock)
+        {
+            if (openCommit == null)
+            {
+                openCommit = new GroupCommit();
+            }
+            commit = openCommit;
+            commit.vault = vault;
+
+            while (committing && !commit.done)
+            {
+                try
+                {
+                    commitLock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for group commit.", e);
+                }
+            }
+            if (commit.done)
+            {
+                if (commit.failure != null)
+                {
+                    throw new IOException("Group commit failed.", commit.failure);
+                }
+                return;
+            }
+
+            // Lead this commit; anyone arriving from now on joins the next one.
+            committing = true;
+            openCommit = null;
+        }
+
+        IOException failure = null;
+        try
+        {
+            replaceFile(commit.vault, true);
+        }
+        catch (IOException e)
+        {
+            failure = e;
+        }
+        finally
+        {
+            synchronized (commitLock)
+            {
+                commit.done = true;
+                commit.failure = failure;
+                committing = false;
+                commitLock.notifyAll();
+            }
+        }
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Write the provided vault to the temporary file and rename it over the password file.
+     *
+     * @param vault Vault to write.
+     * @param force Whether to force the temporary file to the device before renaming it.
+     *
+     * @throws IOException if there is a problem writing or renaming the file.
+     */
+    private void replaceFile(EncryptedVault vault, boolean force) throws IOException
+    {
+        long startNanos = System.nanoTime();
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try
+        {
+            // The codec writes as it encodes, so serializing includes handing the bytes to the operating system.
+            BinaryVaultCodec.write(vault, out.getChannel());
+            long serializedNanos = System.nanoTime();
+            metricsListener.recordTime(PasswordMetricsListener.Timer.SERIALIZE, serializedNanos - startNanos);
+            startNanos = serializedNanos;
+            if (force)
+            {
+                out.getChannel().force(true);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        FileReplacement.replace(tempFile, passwordFile, backupFile, force);
+        metricsListener.recordTime(PasswordMetricsListener.Timer.FILE_WRITE, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * A single {@link Durability#GROUP} commit, shared by every store that joined it.
+     */
+    private static final class GroupCommit
+    {
+        /** Newest vault stored by any member of the commit. */
+        private EncryptedVault vault;
+
+        /** Whether the commit has been written. */
+        private boolean done = false;
+
+        /** Why the commit failed, or {@code null} if it succeeded or hasn't been written yet. */
+        private IOException failure;
     }
 }
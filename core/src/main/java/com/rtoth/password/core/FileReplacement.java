@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces a file with a newly written temporary file, so that a crash at any point leaves either the old contents
+ * or the new ones.
+ * <p>
+ * Where the platform refuses to rename over an existing file, the old file is first moved to a backup file, which
+ * {@link #recover(File, File)} moves back if a crash struck before the new file was in place.
+ */
+final class FileReplacement
+{
+    /** Logger for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileReplacement.class);
+
+    /** Suffix appended to a file name to get its backup file name. */
+    static final String BACKUP_SUFFIX = ".bak";
+
+    /** Whether directories can be forced to the device; needs {@code java.nio.file}, which Android lacks below 26. */
+    private static final boolean DIRECTORY_SYNC_SUPPORTED = isDirectorySyncSupported();
+
+    private FileReplacement()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Replace {@code target} with {@code temp}.
+     *
+     * @param temp Newly written file, in the same directory as {@code target}.
+     * @param target File to replace, which may not exist yet.
+     * @param backup File to move {@code target} to if it cannot be renamed over.
+     * @param force Whether to force the directory to the device afterwards, so the rename survives a crash.
+     *
+     * @throws IOException if {@code target} could not be replaced; it then still holds the old contents, or if
+     *         even restoring failed, {@code backup} does.
+     */
+    static void replace(File temp, File target, File backup, boolean force) throws IOException
+    {
+        if (!temp.renameTo(target))
+        {
+            // Some platforms refuse to rename over an existing file; move it aside first rather than deleting it.
+            if (backup.exists() && !backup.delete())
+            {
+                throw new IOException("Unable to delete old backup " + backup);
+            }
+            if (!target.renameTo(backup))
+            {
+                throw new IOException("Unable to replace " + target + " with " + temp);
+            }
+            if (!temp.renameTo(target))
+            {
+                if (!backup.renameTo(target))
+                {
+                    throw new IOException(
+                        "Unable to replace " + target + " with " + temp + "; previous contents are in " + backup);
+                }
+                throw new IOException("Unable to replace " + target + " with " + temp);
+            }
+            if (force)
+            {
+                forceDirectory(target.getAbsoluteFile().getParentFile());
+            }
+            if (!backup.delete())
+            {
+                LOGGER.warn("Unable to delete backup " + backup);
+            }
+            return;
+        }
+
+        if (force)
+        {
+            forceDirectory(target.getAbsoluteFile().getParentFile());
+        }
+    }
+
+    /**
+     * Put back the backup of {@code target} left by a replacement which crashed after moving {@code target} aside.
+     *
+     * @param target File which may have been replaced.
+     * @param backup Backup file of {@code target}.
+     */
+    static void recover(File target, File backup)
+    {
+        if (!target.exists() && backup.exists())
+        {
+            if (backup.renameTo(target))
+            {
+                LOGGER.warn("Restored " + target + " from " + backup + " after an interrupted save.");
+            }
+            else
+            {
+                LOGGER.error("Unable to restore " + target + " from " + backup);
+            }
+        }
+    }
+
+    /**
+     * Force a directory's entries to the device, where the platform supports it.
+     *
+     * @param directory Directory to force.
+     *
+     * @throws IOException if the directory could not be forced.
+     */
+    static void forceDirectory(File directory) throws IOException
+    {
+        if (DIRECTORY_SYNC_SUPPORTED && directory != null)
+        {
+            DirectorySync.force(directory);
+        }
+    }
+
+    /**
+     * Check whether directories can be forced to the device on this platform.
+     *
+     * @return {@code true} if {@code java.nio.file} is available.
+     */
+    private static boolean isDirectorySyncSupported()
+    {
+        try
+        {
+            Class.forName("java.nio.file.StandardOpenOption");
+            return true;
+        }
+        catch (ClassNotFoundException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Forces directories using {@code java.nio.file}, kept in its own class so it is only loaded where available.
+     */
+    private static final class DirectorySync
+    {
+        /**
+         * Force a directory's entries to the device.
+         *
+         * @param directory Directory to force.
+         *
+         * @throws IOException if the directory could not be forced.
+         */
+        private static void force(File directory) throws IOException
+        {
+            FileChannel channel;
+            try
+            {
+                channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+            }
+            catch (IOException e)
+            {
+                // Some platforms, such as Windows, cannot open directories, so this is as far as we can go there.
+                return;
+            }
+            try
+            {
+                channel.force(true);
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,575 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * {@link EncryptedPasswordDatastore} that appends each change to a journal file instead of rewriting the whole
+ * vault.
+ * <p>
+ * The complete vault is kept in a snapshot file, managed by a {@link FileBasedEncryptedPasswordDatastore}. Each
+ * store appends one record per changed entry to the journal, and loading replays the journal over the snapshot.
+ * Once the journal grows past the compaction threshold, the next store (which runs on the caller's background
+ * save thread) writes a fresh snapshot and empties the journal. Full rewrites, such as after a master password
+ * change, always compact.
+ * <p>
+ * Each compaction tags the new snapshot with a random fingerprint, appended after the vault where readers of the
+ * snapshot ignore it, and starts the journal with the same fingerprint. Loading reads the fingerprint back from the
+ * end of the snapshot rather than hashing it, and a journal left behind by an interrupted compaction, whose
+ * fingerprint doesn't match, is never replayed over the wrong snapshot. A snapshot without a fingerprint, such as
+ * one written by another datastore, is compacted by the first store. Each record carries a checksum, and a record
+ * torn by a crash is discarded along with anything after it. Unless the {@link Durability} is
+ * {@link Durability#NONE}, each append is forced to the device before the store returns.
+ */
+public class JournalingEncryptedPasswordDatastore implements EncryptedPasswordDatastore
+{
+    /** Logger for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalingEncryptedPasswordDatastore.class);
+
+    /** Default journal size past which the journal is compacted into the snapshot, in bytes. */
+    public static final long DEFAULT_COMPACTION_THRESHOLD_BYTES = 256 * 1024;
+
+    /** Suffix appended to the snapshot file name to get the default journal file name. */
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    /** Magic number at the start of every journal -- "PHJ1". */
+    private static final int MAGIC = 0x50484A31;
+
+    /** Size of the snapshot fingerprint, in bytes. */
+    private static final int FINGERPRINT_BYTES = 16;
+
+    /** Magic number following the fingerprint at the end of a snapshot -- "PHJF". */
+    private static final int FINGERPRINT_MAGIC = 0x50484A46;
+
+    /** Size of the fingerprint trailer at the end of a snapshot, in bytes. */
+    private static final int TRAILER_BYTES = FINGERPRINT_BYTES + 4;
+
+    /** Source of snapshot fingerprints. */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** Size of the journal header, in bytes. */
+    private static final int HEADER_BYTES = 4 + FINGERPRINT_BYTES;
+
+    /** Maximum size of a single record payload, in bytes. Anything larger must be corruption. */
+    private static final int MAX_PAYLOAD_BYTES = 1024 * 1024;
+
+    /** Record type of an added or changed entry. */
+    private static final byte PUT_RECORD = 1;
+
+    /** Record type of a removed entry. */
+    private static final byte REMOVE_RECORD = 2;
+
+    /** Datastore holding the snapshot. */
+    private final FileBasedEncryptedPasswordDatastore snapshotDatastore;
+
+    /** File holding the journal. */
+    private final File journalFile;
+
+    /** Journal size past which the journal is compacted, in bytes. */
+    private final long compactionThresholdBytes;
+
+    /** How hard to work to make each store survive a crash. */
+    private final Durability durability;
+
+    /** Receives the time taken to serialize and write each store. */
+    private final PasswordMetricsListener metricsListener;
+
+    /** Length of the valid part of the journal, or {@code -1} if the journal must be rewritten before appending. */
+    private long journalLength = -1;
+
+    /**
+     * Create a new {@link JournalingEncryptedPasswordDatastore}, keeping the journal next to the snapshot with the
+     * {@link #JOURNAL_SUFFIX} suffix and compacting at {@link #DEFAULT_COMPACTION_THRESHOLD_BYTES}.
+     *
+     * @param passwordFile {@link File} holding the snapshot. Cannot be {@code null}, and must be an existing regular
+     *                     file with read and write permissions.
+     *
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions.
+     * @throws NullPointerException if {@code passwordFile} is {@code null}.
+     */
+    public JournalingEncryptedPasswordDatastore(File passwordFile)
+    {
+        this(passwordFile,
+            new File(Preconditions.checkNotNull(passwordFile, "passwordFile cannot be null.").getPath() +
+                JOURNAL_SUFFIX),
+            DEFAULT_COMPACTION_THRESHOLD_BYTES);
+    }
+
+    /**
+     * Create a new {@link JournalingEncryptedPasswordDatastore}.
+     *
+     * @param passwordFile {@link File} holding the snapshot. Cannot be {@code null}, and must be an existing regular
+     *                     file with read and write permissions.
+     * @param journalFile {@link File} holding the journal. Cannot be {@code null}, and is created if it does not
+     *                    exist.
+     * @param compactionThresholdBytes Journal size past which the journal is compacted, in bytes. Must be positive.
+     *
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions, or {@code compactionThresholdBytes} is not positive.
+     * @throws NullPointerException if {@code passwordFile} or {@code journalFile} is {@code null}.
+     */
+    public JournalingEncryptedPasswordDatastore(File passwordFile, File journalFile, long compactionThresholdBytes)
+    {
+        this(passwordFile, journalFile, compactionThresholdBytes,
+            FileBasedEncryptedPasswordDatastore.DEFAULT_DURABILITY);
+    }
+
+    /**
+     * Create a new {@link JournalingEncryptedPasswordDatastore}.
+     *
+     * @param passwordFile {@link File} holding the snapshot. Cannot be {@code null}, and must be an existing regular
+     *                     file with read and write permissions.
+     * @param journalFile {@link File} holding the journal. Cannot be {@code null}, and is created if it does not
+     *                    exist.
+     * @param compactionThresholdBytes Journal size past which the journal is compacted, in bytes. Must be positive.
+     * @param durability How hard to work to make each store survive a crash. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions, or {@code compactionThresholdBytes} is not positive.
+     * @throws NullPointerException if {@code passwordFile}, {@code journalFile}, or {@code durability} is
+     *         {@code null}.
+     */
+    public JournalingEncryptedPasswordDatastore(File passwordFile, File journalFile, long compactionThresholdBytes,
+                                                Durability durability)
+    {
+        this(passwordFile, journalFile, compactionThresholdBytes, durability, PasswordMetricsListener.NONE);
+    }
+
+    /**
+     * Create a new {@link JournalingEncryptedPasswordDatastore}.
+     *
+     * @param passwordFile {@link File} holding the snapshot. Cannot be {@code null}, and must be an existing regular
+     *                     file with read and write permissions.
+     * @param journalFile {@link File} holding the journal. Cannot be {@code null}, and is created if it does not
+     *                    exist.
+     * @param compactionThresholdBytes Journal size past which the journal is compacted, in bytes. Must be positive.
+     * @param durability How hard to work to make each store survive a crash. Cannot be {@code null}.
+     * @param metricsListener Receives the time taken to serialize and write each store. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions, or {@code compactionThresholdBytes} is not positive.
+     * @throws NullPointerException if {@code passwordFile}, {@code journalFile}, {@code durability}, or
+     *         {@code metricsListener} is {@code null}.
+     */
+    public JournalingEncryptedPasswordDatastore(File passwordFile, File journalFile, long compactionThresholdBytes,
+                                                Durability durability, PasswordMetricsListener metricsListener)
+    {
+        this.snapshotDatastore = new FileBasedEncryptedPasswordDatastore(passwordFile, durability,
+            FileBasedEncryptedPasswordDatastore.DEFAULT_READ_MODE, metricsListener);
+        this.metricsListener = metricsListener;
+        this.journalFile = Preconditions.checkNotNull(journalFile, "journalFile cannot be null.");
+        Preconditions.checkArgument(compactionThresholdBytes > 0, "compactionThresholdBytes must be positive.");
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        this.durability = durability;
+    }
+
+    @Override
+    public synchronized EncryptedVault load() throws IOException
+    {
+        EncryptedVault snapshot = snapshotDatastore.load();
+        journalLength = -1;
+        if (snapshot == null)
+        {
+            return null;
+        }
+
+        byte[] fingerprint = readFingerprint();
+        if (!journalFile.exists())
+        {
+            if (fingerprint != null)
+            {
+                startJournal(fingerprint);
+            }
+            return snapshot;
+        }
+
+        Map<ByteBuffer, EncryptedEntry> entries = Maps.newLinkedHashMap();
+        for (EncryptedEntry entry : snapshot.getEntries())
+        {
+            entries.put(ByteBuffer.wrap(entry.getEncryptedApplication()), entry);
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        try
+        {
+            if (fingerprint == null || !readHeader(in, fingerprint))
+            {
+                LOGGER.warn("Ignoring journal " + journalFile + " written for a different snapshot.");
+                return snapshot;
+            }
+
+            long validLength = HEADER_BYTES;
+            int records = 0;
+            try
+            {
+                int payloadLength;
+                while ((payloadLength = readPayloadLength(in)) >= 0)
+                {
+                    byte[] payload = new byte[payloadLength];
+                    in.readFully(payload);
+                    if (in.readInt() != checksum(payload))
+                    {
+                        LOGGER.warn("Discarding corrupt journal tail at offset " + validLength);
+                        break;
+                    }
+                    applyRecord(payload, entries);
+                    validLength += 4 + payloadLength + 4;
+                    records++;
+                }
+            }
+            catch (EOFException e)
+            {
+                LOGGER.warn("Discarding truncated journal tail at offset " + validLength);
+            }
+
+            journalLength = validLength;
+            LOGGER.info("Replayed " + records + " journal records.");
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return new EncryptedVault(snapshot.getHeader(), Arrays.asList(
+            entries.values().toArray(new EncryptedEntry[entries.size()])));
+    }
+
+    @Override
+    public synchronized void store(EncryptedVault vault, VaultChanges changes) throws IOException
+    {
+        Preconditions.checkNotNull(vault, "vault cannot be null.");
+        Preconditions.checkNotNull(changes, "changes cannot be null.");
+
+        if (changes.isFullRewrite() || journalLength < 0 || journalLength >= compactionThresholdBytes)
+        {
+            compact(vault);
+        }
+        else
+        {
+            append(changes);
+        }
+    }
+
+    /**
+     * Write the provided vault as the new snapshot, and start a new, empty journal for it.
+     *
+     * @param vault Complete vault to write.
+     *
+     * @throws IOException if there is a problem writing the snapshot or journal.
+     */
+    private void compact(EncryptedVault vault) throws IOException
+    {
+        // Invalidate first, so a failure part way through can't leave the old journal applied to the new snapshot.
+        journalLength = -1;
+        snapshotDatastore.store(vault, VaultChanges.fullRewrite());
+        byte[] fingerprint = new byte[FINGERPRINT_BYTES];
+        RANDOM.nextBytes(fingerprint);
+        writeFingerprint(fingerprint);
+        startJournal(fingerprint);
+    }
+
+    /**
+     * Append the fingerprint trailer to the snapshot just written. A crash part way through leaves a snapshot
+     * without a valid fingerprint, which no journal matches.
+     *
+     * @param fingerprint Fingerprint of the snapshot.
+     *
+     * @throws IOException if there is a problem writing the snapshot.
+     */
+    private void writeFingerprint(byte[] fingerprint) throws IOException
+    {
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+        trailer.put(fingerprint);
+        trailer.putInt(FINGERPRINT_MAGIC);
+        RandomAccessFile snapshot = new RandomAccessFile(snapshotDatastore.getPasswordFile(), "rw");
+        try
+        {
+            snapshot.seek(snapshot.length());
+            snapshot.write(trailer.array());
+            if (durability != Durability.NONE)
+            {
+                snapshot.getChannel().force(true);
+            }
+        }
+        finally
+        {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Read the fingerprint trailer from the end of the snapshot.
+     *
+     * @return The fingerprint of the snapshot, or {@code null} if it has none.
+     *
+     * @throws IOException if there is a problem reading the snapshot.
+     */
+    private byte[] readFingerprint() throws IOException
+    {
+        RandomAccessFile snapshot = new RandomAccessFile(snapshotDatastore.getPasswordFile(), "r");
+        try
+        {
+            if (snapshot.length() < TRAILER_BYTES)
+            {
+                return null;
+            }
+            snapshot.seek(snapshot.length() - TRAILER_BYTES);
+            byte[] fingerprint = new byte[FINGERPRINT_BYTES];
+            snapshot.readFully(fingerprint);
+            return snapshot.readInt() == FINGERPRINT_MAGIC ? fingerprint : null;
+        }
+        finally
+        {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Start a new, empty journal for the current snapshot.
+     *
+     * @param fingerprint Fingerprint of the current snapshot.
+     *
+     * @throws IOException if there is a problem writing the journal.
+     */
+    private void startJournal(byte[] fingerprint) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.write(fingerprint);
+        FileOutputStream out = new FileOutputStream(journalFile);
+        try
+        {
+            bytes.writeTo(out);
+            if (durability != Durability.NONE)
+            {
+                out.getChannel().force(true);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        journalLength = HEADER_BYTES;
+    }
+
+    /**
+     * Append the provided changes to the journal.
+     *
+     * @param changes Changes to append.
+     *
+     * @throws IOException if there is a problem writing the journal.
+     */
+    private void append(VaultChanges changes) throws IOException
+    {
+        long startNanos = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(bytes);
+        for (byte[] application : changes.getRemovedApplications())
+        {
+            writeRecord(records, REMOVE_RECORD, application, null);
+        }
+        for (EncryptedEntry entry : changes.getUpdatedEntries())
+        {
+            writeRecord(records, PUT_RECORD, entry.getEncryptedApplication(), entry.getEncryptedPassword());
+        }
+        if (bytes.size() == 0)
+        {
+            return;
+        }
+
+        long serializedNanos = System.nanoTime();
+        metricsListener.recordTime(PasswordMetricsListener.Timer.SERIALIZE, serializedNanos - startNanos);
+
+        // Drop any torn tail left by a crash before appending after it.
+        RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+        try
+        {
+            journal.setLength(journalLength);
+            journal.seek(journalLength);
+            journal.write(bytes.toByteArray());
+            if (durability != Durability.NONE)
+            {
+                journal.getChannel().force(true);
+            }
+        }
+        finally
+        {
+            journal.close();
+        }
+        journalLength += bytes.size();
+        metricsListener.recordTime(PasswordMetricsListener.Timer.FILE_WRITE, System.nanoTime() - serializedNanos);
+    }
+
+    /**
+     * Read and check the journal header.
+     *
+     * @param in Journal input.
+     * @param fingerprint Fingerprint of the current snapshot.
+     * @return {@code true} if the journal applies to the current snapshot, {@code false} otherwise.
+     *
+     * @throws IOException if there is a problem reading the journal.
+     */
+    private static boolean readHeader(DataInputStream in, byte[] fingerprint) throws IOException
+    {
+        try
+        {
+            if (in.readInt() != MAGIC)
+            {
+                return false;
+            }
+            byte[] journalFingerprint = new byte[FINGERPRINT_BYTES];
+            in.readFully(journalFingerprint);
+            return Arrays.equals(journalFingerprint, fingerprint);
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Read the payload length of the next record.
+     *
+     * @param in Journal input.
+     * @return The payload length, or {@code -1} at the end of the journal.
+     *
+     * @throws IOException if there is a problem reading the journal, or the length is invalid.
+     */
+    private static int readPayloadLength(DataInputStream in) throws IOException
+    {
+        int first = in.read();
+        if (first < 0)
+        {
+            return -1;
+        }
+        int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) |
+            in.readUnsignedByte();
+        if (length <= 0 || length > MAX_PAYLOAD_BYTES)
+        {
+            throw new EOFException("Invalid record length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Write a single record.
+     *
+     * @param out Output to write to.
+     * @param type Record type.
+     * @param application Encrypted application name.
+     * @param password Encrypted password, or {@code null} for a {@link #REMOVE_RECORD}.
+     *
+     * @throws IOException if there is a problem writing the record.
+     */
+    private static void writeRecord(DataOutputStream out, byte type, byte[] application, byte[] password)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeByte(type);
+        payload.writeInt(application.length);
+        payload.write(application);
+        if (password != null)
+        {
+            payload.writeInt(password.length);
+            payload.write(password);
+        }
+
+        byte[] payloadBytes = bytes.toByteArray();
+        out.writeInt(payloadBytes.length);
+        out.write(payloadBytes);
+        out.writeInt(checksum(payloadBytes));
+    }
+
+    /**
+     * Apply a single record to the provided entries.
+     *
+     * @param payload Record payload.
+     * @param entries Entries by encrypted application name.
+     *
+     * @throws IOException if the record is malformed.
+     */
+    private static void applyRecord(byte[] payload, Map<ByteBuffer, EncryptedEntry> entries) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        try
+        {
+            byte type = buffer.get();
+            byte[] application = new byte[buffer.getInt()];
+            buffer.get(application);
+            if (type == PUT_RECORD)
+            {
+                byte[] password = new byte[buffer.getInt()];
+                buffer.get(password);
+                entries.put(ByteBuffer.wrap(application), new EncryptedEntry(application, password));
+            }
+            else if (type == REMOVE_RECORD)
+            {
+                entries.remove(ByteBuffer.wrap(application));
+            }
+            else
+            {
+                throw new IOException("Unknown journal record type: " + type);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            throw new IOException("Malformed journal record.", e);
+        }
+    }
+
+    /**
+     * Compute the checksum of a record payload.
+     *
+     * @param payload Record payload.
+     * @return The checksum.
+     */
+    private static int checksum(byte[] payload)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
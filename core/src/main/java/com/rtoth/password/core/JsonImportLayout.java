@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Where to find entries, application names and passwords in a JSON file being imported with
+ * {@link PasswordManager#importPasswords(java.io.Reader, JsonImportLayout)}.
+ * <p>
+ * Paths are member names separated by {@code '.'}. For example, an export shaped like
+ * {@code {"items": [{"name": "...", "login": {"password": "..."}}]}} is imported with the root path
+ * {@code items}, the application path {@code name}, and the password path {@code login.password}.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class JsonImportLayout
+{
+    /** Splits paths into member names. */
+    private static final Splitter PATH_SPLITTER = Splitter.on('.');
+
+    /** Layout of files written by {@link PasswordManager#exportPasswords(java.io.Writer, PasswordFormat)}. */
+    private static final JsonImportLayout DEFAULTS = builder().build();
+
+    /** Member names leading from the top-level object to the array of entries; empty if it is the array. */
+    private final List<String> rootPath;
+
+    /** Paths within an entry to take the application name from, most preferred first. */
+    private final List<String> applicationPaths;
+
+    /** Path within an entry to take the password from. */
+    private final String passwordPath;
+
+    /**
+     * Create a new {@link JsonImportLayout} from the provided builder.
+     *
+     * @param builder Builder holding the layout.
+     */
+    private JsonImportLayout(Builder builder)
+    {
+        this.rootPath = builder.rootPath;
+        this.applicationPaths = builder.applicationPaths;
+        this.passwordPath = builder.passwordPath;
+    }
+
+    /**
+     * Get the default layout: a top-level array of objects, taking the application name from the first member
+     * named {@code application}, {@code name} or {@code title}, and the password from the member named
+     * {@code password}. This is the layout {@link PasswordFormat#JSON} uses.
+     *
+     * @return The default layout. Never {@code null}.
+     */
+    public static JsonImportLayout defaults()
+    {
+        return DEFAULTS;
+    }
+
+    /**
+     * Create a new builder, initialized with the default layout.
+     *
+     * @return A new builder. Never {@code null}.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Get the member names leading from the top-level object to the array of entries.
+     *
+     * @return An immutable list of member names, empty if the top-level value is the array. Never {@code null}.
+     */
+    public List<String> getRootPath()
+    {
+        return rootPath;
+    }
+
+    /**
+     * Get the paths within an entry to take the application name from, most preferred first.
+     *
+     * @return An immutable, non-empty list of paths. Never {@code null}.
+     */
+    public List<String> getApplicationPaths()
+    {
+        return applicationPaths;
+    }
+
+    /**
+     * Get the path within an entry to take the password from.
+     *
+     * @return The path. Never {@code null}.
+     */
+    public String getPasswordPath()
+    {
+        return passwordPath;
+    }
+
+    /**
+     * Check that a path is made of non-empty member names.
+     *
+     * @param path Path to check.
+     * @param name Name of the argument, for the exception message.
+     * @return {@code path}.
+     *
+     * @throws IllegalArgumentException if {@code path} is empty or has an empty member name.
+     * @throws NullPointerException if {@code path} is {@code null}.
+     */
+    private static String checkPath(String path, String name)
+    {
+        Preconditions.checkNotNull(path, name + " cannot be null.");
+        for (String member : PATH_SPLITTER.split(path))
+        {
+            Preconditions.checkArgument(!member.isEmpty(), name + " cannot have empty member names.");
+        }
+        return path;
+    }
+
+    /**
+     * Builder for {@link JsonImportLayout}.
+     */
+    public static final class Builder
+    {
+        /** Member names leading from the top-level object to the array of entries. */
+        private List<String> rootPath = ImmutableList.of();
+
+        /** Paths within an entry to take the application name from, most preferred first. */
+        private List<String> applicationPaths = ImmutableList.of("application", "name", "title");
+
+        /** Path within an entry to take the password from. */
+        private String passwordPath = "password";
+
+        private Builder()
+        {
+            // Use JsonImportLayout.builder()
+        }
+
+        /**
+         * Set the path from the top-level object to the array of entries. Defaults to the empty path, meaning the
+         * top-level value is the array.
+         *
+         * @param rootPath Path to the array of entries, or {@code ""} if it is the top-level value. Cannot be
+         *                 {@code null}.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code rootPath} has an empty member name.
+         * @throws NullPointerException if {@code rootPath} is {@code null}.
+         */
+        public Builder rootPath(String rootPath)
+        {
+            Preconditions.checkNotNull(rootPath, "rootPath cannot be null.");
+            this.rootPath = rootPath.isEmpty() ?
+                ImmutableList.<String>of() : ImmutableList.copyOf(PATH_SPLITTER.split(checkPath(rootPath, "rootPath")));
+            return this;
+        }
+
+        /**
+         * Set the paths within an entry to take the application name from; the first one present with a
+         * non-empty string value is used. Defaults to {@code application}, {@code name}, {@code title}.
+         *
+         * @param applicationPaths Paths, most preferred first. Cannot be {@code null} or empty, or contain
+         *                         {@code null}.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if no paths are provided, or a path has an empty member name.
+         * @throws NullPointerException if {@code applicationPaths} or any path is {@code null}.
+         */
+        public Builder applicationPaths(String... applicationPaths)
+        {
+            Preconditions.checkNotNull(applicationPaths, "applicationPaths cannot be null.");
+            Preconditions.checkArgument(applicationPaths.length > 0, "applicationPaths cannot be empty.");
+            for (String path : applicationPaths)
+            {
+                checkPath(path, "applicationPaths");
+            }
+            this.applicationPaths = ImmutableList.copyOf(applicationPaths);
+            return this;
+        }
+
+        /**
+         * Set the path within an entry to take the password from. Defaults to {@code password}.
+         *
+         * @param passwordPath Path. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code passwordPath} is empty or has an empty member name.
+         * @throws NullPointerException if {@code passwordPath} is {@code null}.
+         */
+        public Builder passwordPath(String passwordPath)
+        {
+            this.passwordPath = checkPath(passwordPath, "passwordPath");
+            return this;
+        }
+
+        /**
+         * Build the layout.
+         *
+         * @return The layout. Never {@code null}.
+         */
+        public JsonImportLayout build()
+        {
+            return new JsonImportLayout(this);
+        }
+    }
+}
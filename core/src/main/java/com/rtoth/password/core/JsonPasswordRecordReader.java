@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads {@link PasswordRecord}s from a JSON array of objects, one object at a time, taking the application names
+ * and passwords from the string members at the paths of a {@link JsonImportLayout}.
+ * <p>
+ * Only string members at those paths are used; all other members, including nested objects and arrays not on a
+ * path, are skipped without being held in memory.
+ */
+final class JsonPasswordRecordReader implements PasswordRecordReader
+{
+    /** Where the entries, application names and passwords are. */
+    private final JsonImportLayout layout;
+
+    /** Paths of the members to keep: the application paths, most preferred first, then the password path. */
+    private final List<String> memberPaths;
+
+    /** Reader to read from. */
+    private final BufferedReader reader;
+
+    /** Characters of the string being read; reused between strings. */
+    private final StringBuilder string = new StringBuilder();
+
+    /** Whether the opening {@code '['} has been read. */
+    private boolean started = false;
+
+    /** Whether the closing {@code ']'} has been read. */
+    private boolean finished = false;
+
+    /**
+     * Create a new {@link JsonPasswordRecordReader}.
+     *
+     * @param reader Reader to read from. Cannot be {@code null}.
+     * @param layout Where the entries, application names and passwords are. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code reader} or {@code layout} is {@code null}.
+     */
+    JsonPasswordRecordReader(Reader reader, JsonImportLayout layout)
+    {
+        Preconditions.checkNotNull(reader, "reader cannot be null.");
+        Preconditions.checkNotNull(layout, "layout cannot be null.");
+
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.layout = layout;
+        this.memberPaths = ImmutableList.<String>builder()
+            .addAll(layout.getApplicationPaths())
+            .add(layout.getPasswordPath())
+            .build();
+    }
+
+    @Override
+    public PasswordRecord next() throws IOException
+    {
+        if (!started)
+        {
+            findEntries();
+            started = true;
+            if (peek() == ']')
+            {
+                read();
+                finished = true;
+            }
+        }
+
+        while (!finished)
+        {
+            PasswordRecord record = readEntry();
+            int c = read();
+            if (c == ']')
+            {
+                finished = true;
+            }
+            else if (c != ',')
+            {
+                throw malformed("',' or ']'", c);
+            }
+
+            if (record != null)
+            {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Follow the root path of the layout to the array of entries, and read its opening {@code '['}.
+     *
+     * @throws IOException if there is a problem reading, the input is malformed, or the root path does not lead to
+     *                     an array.
+     */
+    private void findEntries() throws IOException
+    {
+        List<String> rootPath = layout.getRootPath();
+        if (rootPath.isEmpty() && peek() == '{')
+        {
+            throw new IOException("Unsupported JSON layout: expected a top-level array of entries but found an "
+                + "object. Import with a JsonImportLayout whose root path names the member holding the entries.");
+        }
+
+        for (String member : rootPath)
+        {
+            expect('{');
+            boolean found = false;
+            if (peek() == '}')
+            {
+                read();
+            }
+            else
+            {
+                while (true)
+                {
+                    expect('"');
+                    String name = readString();
+                    expect(':');
+                    if (name.equals(member))
+                    {
+                        found = true;
+                        break;
+                    }
+                    skipValue();
+                    int c = read();
+                    if (c == '}')
+                    {
+                        break;
+                    }
+                    if (c != ',')
+                    {
+                        throw malformed("',' or '}'", c);
+                    }
+                }
+            }
+
+            if (!found)
+            {
+                throw new IOException("Unsupported JSON layout: no member '" + member + "' on the root path '"
+                    + Joiner.on('.').join(rootPath) + "'.");
+            }
+        }
+
+        int c = read();
+        if (c != '[')
+        {
+            throw rootPath.isEmpty() ? malformed("'['", c) : new IOException("Unsupported JSON layout: the root "
+                + "path '" + Joiner.on('.').join(rootPath) + "' does not lead to an array of entries.");
+        }
+    }
+
+    /**
+     * Read a single entry of the array.
+     *
+     * @return The entry's record, or {@code null} if it has no application name or no password.
+     *
+     * @throws IOException if there is a problem reading, or the input is malformed.
+     */
+    private PasswordRecord readEntry() throws IOException
+    {
+        String[] values = new String[memberPaths.size()];
+        readObject("", values);
+
+        String password = values[values.length - 1];
+        if (password == null || password.isEmpty())
+        {
+            return null;
+        }
+        for (int i = 0; i < values.length - 1; i++)
+        {
+            if (values[i] != null && !values[i].isEmpty())
+            {
+                return new PasswordRecord(values[i], password);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read an object, keeping the string members whose paths are wanted and descending only into the nested
+     * objects that lead to one.
+     *
+     * @param prefix Path of the object within the entry, or {@code ""} for the entry itself.
+     * @param values Values of the wanted members, indexed as {@link #memberPaths}; filled in as they are read.
+     *
+     * @throws IOException if there is a problem reading, or the input is malformed.
+     */
+    private void readObject(String prefix, String[] values) throws IOException
+    {
+        expect('{');
+        if (peek() == '}')
+        {
+            read();
+            return;
+        }
+
+        int c;
+        do
+        {
+            expect('"');
+            String path = prefix + readString();
+            expect(':');
+            c = peek();
+            if (c == '"')
+            {
+                read();
+                String value = readString();
+                int index = memberPaths.indexOf(path);
+                if (index >= 0)
+                {
+                    values[index] = value;
+                }
+            }
+            else if (c == '{' && leadsToMember(path + '.'))
+            {
+                readObject(path + '.', values);
+            }
+            else
+            {
+                skipValue();
+            }
+        }
+        while ((c = read()) == ',');
+
+        if (c != '}')
+        {
+            throw malformed("',' or '}'", c);
+        }
+    }
+
+    /**
+     * Get whether any wanted member is nested under the provided path.
+     *
+     * @param prefix Path of a nested object, ending in {@code '.'}.
+     * @return {@code true} if a wanted member is under it, {@code false} otherwise.
+     */
+    private boolean leadsToMember(String prefix)
+    {
+        for (String path : memberPaths)
+        {
+            if (path.startsWith(prefix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the rest of a string whose opening quote has been read.
+     *
+     * @return The string.
+     *
+     * @throws IOException if there is a problem reading, or the string is malformed.
+     */
+    private String readString() throws IOException
+    {
+        string.setLength(0);
+        int c;
+        while ((c = reader.read()) != '"')
+        {
+            if (c == -1)
+            {
+                throw new IOException("Unterminated JSON string.");
+            }
+            if (c == '\\')
+            {
+                c = reader.read();
+                switch (c)
+                {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        string.append((char) c);
+                        break;
+                    case 'b':
+                        string.append('\b');
+                        break;
+                    case 'f':
+                        string.append('\f');
+                        break;
+                    case 'n':
+                        string.append('\n');
+                        break;
+                    case 'r':
+                        string.append('\r');
+                        break;
+                    case 't':
+                        string.append('\t');
+                        break;
+                    case 'u':
+                        string.append(readUnicodeEscape());
+                        break;
+                    default:
+                        throw new IOException("Invalid JSON escape: \\" + (c == -1 ? "<end of input>" : (char) c));
+                }
+            }
+            else
+            {
+                string.append((char) c);
+            }
+        }
+        return string.toString();
+    }
+
+    /**
+     * Read the four hex digits of a {@code \}{@code u} escape.
+     *
+     * @return The escaped character.
+     *
+     * @throws IOException if there is a problem reading, or the digits are not hex.
+     */
+    private char readUnicodeEscape() throws IOException
+    {
+        int value = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            int digit = Character.digit(reader.read(), 16);
+            if (digit < 0)
+            {
+                throw new IOException("Invalid JSON unicode escape.");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Skip a single value of any type other than string, without keeping it.
+     *
+     * @throws IOException if there is a problem reading, or the value is malformed.
+     */
+    private void skipValue() throws IOException
+    {
+        int depth = 0;
+        do
+        {
+            int c = read();
+            switch (c)
+            {
+                case -1:
+                    throw new IOException("Unexpected end of JSON input.");
+                case '"':
+                    readString();
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    break;
+                default:
+                    // Part of a number or literal, or a separator inside a nested value.
+                    if (depth == 0)
+                    {
+                        if (!isLiteralPart(c))
+                        {
+                            throw malformed("a value", c);
+                        }
+                        while (isLiteralPart(peek()))
+                        {
+                            reader.read();
+                        }
+                    }
+                    break;
+            }
+            if (depth < 0)
+            {
+                throw new IOException("Unbalanced JSON value.");
+            }
+        }
+        while (depth > 0);
+    }
+
+    /**
+     * Get whether the provided character can be part of a number or a {@code true}, {@code false} or {@code null}
+     * literal.
+     *
+     * @param c Character to check.
+     * @return {@code true} if it can, {@code false} otherwise.
+     */
+    private static boolean isLiteralPart(int c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'E';
+    }
+
+    /**
+     * Read the next character that isn't whitespace and check that it is the expected one.
+     *
+     * @param expected Expected character.
+     *
+     * @throws IOException if there is a problem reading, or the character is not {@code expected}.
+     */
+    private void expect(char expected) throws IOException
+    {
+        int c = read();
+        if (c != expected)
+        {
+            throw malformed("'" + expected + "'", c);
+        }
+    }
+
+    /**
+     * Read the next character that isn't whitespace.
+     *
+     * @return The character, or {@code -1} at the end of the input.
+     *
+     * @throws IOException if there is a problem reading.
+     */
+    private int read() throws IOException
+    {
+        int c;
+        do
+        {
+            c = reader.read();
+        }
+        while (c == ' ' || c == '\t' || c == '\r' || c == '\n');
+        return c;
+    }
+
+    /**
+     * Get the next character that isn't whitespace, without consuming it.
+     *
+     * @return The character, or {@code -1} at the end of the input.
+     *
+     * @throws IOException if there is a problem reading.
+     */
+    private int peek() throws IOException
+    {
+        int c;
+        while (true)
+        {
+            reader.mark(1);
+            c = reader.read();
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+            {
+                break;
+            }
+        }
+        reader.reset();
+        return c;
+    }
+
+    /**
+     * Create the exception for an unexpected character.
+     *
+     * @param expected Description of what was expected.
+     * @param actual Character found instead, or {@code -1} at the end of the input.
+     * @return The exception.
+     */
+    private static IOException malformed(String expected, int actual)
+    {
+        return new IOException("Malformed JSON: expected " + expected + " but found " +
+            (actual == -1 ? "end of input" : "'" + (char) actual + "'") + ".");
+    }
+}
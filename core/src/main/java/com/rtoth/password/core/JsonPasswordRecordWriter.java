@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes {@link PasswordRecord}s as a JSON array of objects, one object per line.
+ */
+final class JsonPasswordRecordWriter implements PasswordRecordWriter
+{
+    /** Hex digits for {@code \}{@code u} escapes. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Writer to write to. */
+    private final BufferedWriter writer;
+
+    /** Whether any record has been written. */
+    private boolean started = false;
+
+    /**
+     * Create a new {@link JsonPasswordRecordWriter}.
+     *
+     * @param writer Writer to write to. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code writer} is {@code null}.
+     */
+    JsonPasswordRecordWriter(Writer writer)
+    {
+        Preconditions.checkNotNull(writer, "writer cannot be null.");
+
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+    }
+
+    @Override
+    public void accept(PasswordRecord record) throws IOException
+    {
+        writer.write(started ? ",\n  " : "[\n  ");
+        started = true;
+        writer.write("{\"application\": ");
+        writeString(record.getApplicationName());
+        writer.write(", \"password\": ");
+        writeString(record.getPassword());
+        writer.write('}');
+    }
+
+    @Override
+    public void finish() throws IOException
+    {
+        writer.write(started ? "\n]\n" : "[]\n");
+        writer.flush();
+    }
+
+    /**
+     * Write a quoted, escaped string.
+     *
+     * @param value String to write.
+     *
+     * @throws IOException if there is a problem writing.
+     */
+    private void writeString(String value) throws IOException
+    {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        writer.write("\\u00");
+                        writer.write(HEX_DIGITS[c >> 4]);
+                        writer.write(HEX_DIGITS[c & 0xF]);
+                    }
+                    else
+                    {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+}
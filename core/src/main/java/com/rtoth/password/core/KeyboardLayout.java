@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import java.util.Arrays;
+
+/**
+ * Which keys neighbour each other on a keyboard, so runs of adjacent keys like "qwerty" or "zaq1" can be recognized
+ * as easy to guess.
+ * <p>
+ * Rows are slanted the way they are on a real keyboard, so each key has up to six neighbours: left and right on its
+ * own row, the two keys above it, and the two below it. Neighbours are looked up in a table indexed by character,
+ * so checking a pair costs a few array reads.
+ */
+final class KeyboardLayout
+{
+    /** Column and row offsets of each of the six neighbours, in order of direction. */
+    private static final int[][] NEIGHBOURS = {{-1, 0}, {0, -1}, {1, -1}, {1, 0}, {0, 1}, {-1, 1}};
+
+    /** US QWERTY keyboard. */
+    static final KeyboardLayout QWERTY = new KeyboardLayout(
+        new String[] {"`1234567890-=", "qwertyuiop[]\\", "asdfghjkl;'", "zxcvbnm,./"},
+        new String[] {"~!@#$%^&*()_+", "QWERTYUIOP{}|", "ASDFGHJKL:\"", "ZXCVBNM<>?"},
+        new int[] {0, 1, 1, 1});
+
+    /** Characters covered by the lookup tables. */
+    private static final int TABLE_SIZE = 128;
+
+    /** Column of each character's key, or {@code -1} if it isn't on the keyboard. */
+    private final int[] columns = new int[TABLE_SIZE];
+
+    /** Row of each character's key. */
+    private final int[] rows = new int[TABLE_SIZE];
+
+    /** Whether each character needs shift. */
+    private final boolean[] shifted = new boolean[TABLE_SIZE];
+
+    /** Unshifted character of each key, by row and column, or {@code 0} where there is no key. */
+    private final char[][] keys;
+
+    /** Number of keys. */
+    private final int keyCount;
+
+    /** Average number of neighbours of each key. */
+    private final double averageDegree;
+
+    /**
+     * Create a new {@link KeyboardLayout}.
+     *
+     * @param unshiftedRows Characters of each row, left to right, without shift.
+     * @param shiftedRows Characters of each row, left to right, with shift.
+     * @param rowOffsets Column of the first key of each row.
+     */
+    private KeyboardLayout(String[] unshiftedRows, String[] shiftedRows, int[] rowOffsets)
+    {
+        Arrays.fill(columns, -1);
+        int width = 0;
+        for (int row = 0; row < unshiftedRows.length; row++)
+        {
+            width = Math.max(width, rowOffsets[row] + unshiftedRows[row].length());
+        }
+        keys = new char[unshiftedRows.length][width];
+
+        int count = 0;
+        for (int row = 0; row < unshiftedRows.length; row++)
+        {
+            for (int i = 0; i < unshiftedRows[row].length(); i++)
+            {
+                int column = rowOffsets[row] + i;
+                keys[row][column] = unshiftedRows[row].charAt(i);
+                place(unshiftedRows[row].charAt(i), row, column, false);
+                place(shiftedRows[row].charAt(i), row, column, true);
+                count++;
+            }
+        }
+        keyCount = count;
+
+        int degrees = 0;
+        for (int row = 0; row < keys.length; row++)
+        {
+            for (int column = 0; column < width; column++)
+            {
+                if (keys[row][column] != 0)
+                {
+                    for (int[] neighbour : NEIGHBOURS)
+                    {
+                        if (key(row + neighbour[1], column + neighbour[0]) != 0)
+                        {
+                            degrees++;
+                        }
+                    }
+                }
+            }
+        }
+        averageDegree = (double) degrees / keyCount;
+    }
+
+    /**
+     * Get the number of keys, and so of places a run of adjacent keys can start.
+     *
+     * @return The number of keys.
+     */
+    int getKeyCount()
+    {
+        return keyCount;
+    }
+
+    /**
+     * Get the average number of neighbours of each key, and so of ways a run of adjacent keys can continue.
+     *
+     * @return The average number of neighbours.
+     */
+    double getAverageDegree()
+    {
+        return averageDegree;
+    }
+
+    /**
+     * Get which direction the key of one character lies from the key of another.
+     *
+     * @param from The first character.
+     * @param to The second character.
+     * @return The direction, from {@code 0} to {@code 5}, or {@code -1} if the keys aren't neighbours.
+     */
+    int direction(char from, char to)
+    {
+        if (from >= TABLE_SIZE || to >= TABLE_SIZE || columns[from] < 0 || columns[to] < 0)
+        {
+            return -1;
+        }
+        for (int direction = 0; direction < NEIGHBOURS.length; direction++)
+        {
+            if (columns[from] + NEIGHBOURS[direction][0] == columns[to] &&
+                rows[from] + NEIGHBOURS[direction][1] == rows[to])
+            {
+                return direction;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get whether a character needs shift.
+     *
+     * @param c The character.
+     * @return {@code true} if {@code c} is on the keyboard and needs shift, {@code false} otherwise.
+     */
+    boolean isShifted(char c)
+    {
+        return c < TABLE_SIZE && shifted[c];
+    }
+
+    /**
+     * Record where a character's key is.
+     *
+     * @param c The character.
+     * @param row Row of its key.
+     * @param column Column of its key.
+     * @param shift Whether it needs shift.
+     */
+    private void place(char c, int row, int column, boolean shift)
+    {
+        columns[c] = column;
+        rows[c] = row;
+        shifted[c] = shift;
+    }
+
+    /**
+     * Get the unshifted character of a key.
+     *
+     * @param row Row of the key.
+     * @param column Column of the key.
+     * @return The character, or {@code 0} if there is no key there.
+     */
+    private char key(int row, int column)
+    {
+        if (row < 0 || row >= keys.length || column < 0 || column >= keys[row].length)
+        {
+            return 0;
+        }
+        return keys[row][column];
+    }
+}
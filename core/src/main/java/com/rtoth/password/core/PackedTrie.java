@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Read-only trie of ranked words, packed into three flat arrays so it costs a few bytes per node and no object per
+ * node or word.
+ * <p>
+ * Nodes are numbered breadth first, so the children of each node are contiguous and sorted by label, and the
+ * children of node {@code n} end where the children of node {@code n + 1} begin. Words are walked one character at
+ * a time with {@link #child(int, char)}, which suits matching every word starting at each position of a password.
+ */
+final class PackedTrie
+{
+    /** The root node, matching the empty prefix. */
+    static final int ROOT = 0;
+
+    /** Label of the edge into each node. */
+    private final char[] labels;
+
+    /** First child of each node, followed by the number of nodes. */
+    private final int[] firstChild;
+
+    /** Rank of the word ending at each node, or {@code 0} if no word ends there. */
+    private final int[] ranks;
+
+    /**
+     * Create a new {@link PackedTrie}.
+     *
+     * @param labels Label of the edge into each node.
+     * @param firstChild First child of each node, followed by the number of nodes.
+     * @param ranks Rank of the word ending at each node, or {@code 0} if no word ends there.
+     */
+    private PackedTrie(char[] labels, int[] firstChild, int[] ranks)
+    {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.ranks = ranks;
+    }
+
+    /**
+     * Build a trie of ranked words.
+     *
+     * @param rankedWords Rank of each word, where lower ranks are more common. Cannot be {@code null}, and every
+     *                    word must be non-empty with a positive rank.
+     * @return The trie. Never {@code null}.
+     *
+     * @throws IllegalArgumentException if any word is empty or any rank is not positive.
+     * @throws NullPointerException if {@code rankedWords} is {@code null}.
+     */
+    static PackedTrie build(SortedMap<String, Integer> rankedWords)
+    {
+        Preconditions.checkNotNull(rankedWords, "rankedWords cannot be null.");
+
+        String[] words = rankedWords.keySet().toArray(new String[rankedWords.size()]);
+        int[] wordRanks = new int[words.length];
+        int nodeCount = 1;
+        int index = 0;
+        for (Map.Entry<String, Integer> entry : rankedWords.entrySet())
+        {
+            Preconditions.checkArgument(!entry.getKey().isEmpty(), "Words cannot be empty.");
+            Preconditions.checkArgument(entry.getValue() > 0, "Ranks must be positive.");
+            // Every character not shared with the previous word starts a new node.
+            nodeCount += entry.getKey().length() - (index == 0 ? 0 : commonPrefix(words[index - 1], words[index]));
+            wordRanks[index++] = entry.getValue();
+        }
+
+        char[] labels = new char[nodeCount];
+        int[] firstChild = new int[nodeCount + 1];
+        int[] ranks = new int[nodeCount];
+
+        // Each queued node is the range of words sharing its prefix, and the prefix length.
+        Deque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[] {0, words.length, 0});
+        int node = 0;
+        int next = 1;
+        while (!queue.isEmpty())
+        {
+            int[] range = queue.remove();
+            int start = range[0];
+            int end = range[1];
+            int depth = range[2];
+            // Sorted order puts the word equal to the prefix, if any, first.
+            if (start < end && words[start].length() == depth)
+            {
+                ranks[node] = wordRanks[start++];
+            }
+            firstChild[node] = next;
+            while (start < end)
+            {
+                char label = words[start].charAt(depth);
+                int childEnd = start + 1;
+                while (childEnd < end && words[childEnd].charAt(depth) == label)
+                {
+                    childEnd++;
+                }
+                labels[next++] = label;
+                queue.add(new int[] {start, childEnd, depth + 1});
+                start = childEnd;
+            }
+            node++;
+        }
+        firstChild[nodeCount] = nodeCount;
+        return new PackedTrie(labels, firstChild, ranks);
+    }
+
+    /**
+     * Get the number of nodes, including the root.
+     *
+     * @return The number of nodes. Always positive.
+     */
+    int size()
+    {
+        return labels.length;
+    }
+
+    /**
+     * Get the child of a node along an edge.
+     *
+     * @param node The node.
+     * @param label Label of the edge.
+     * @return The child, or {@code -1} if there is no such edge.
+     */
+    int child(int node, char label)
+    {
+        int low = firstChild[node];
+        int high = firstChild[node + 1] - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            if (labels[middle] < label)
+            {
+                low = middle + 1;
+            }
+            else if (labels[middle] > label)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the rank of the word ending at a node.
+     *
+     * @param node The node.
+     * @return The rank, or {@code 0} if no word ends at {@code node}.
+     */
+    int rank(int node)
+    {
+        return ranks[node];
+    }
+
+    /**
+     * Get the length of the longest common prefix of two strings.
+     *
+     * @param first The first string.
+     * @param second The second string.
+     * @return The length of their longest common prefix.
+     */
+    private static int commonPrefix(String first, String second)
+    {
+        int length = Math.min(first.length(), second.length());
+        int i = 0;
+        while (i < length && first.charAt(i) == second.charAt(i))
+        {
+            i++;
+        }
+        return i;
+    }
+}
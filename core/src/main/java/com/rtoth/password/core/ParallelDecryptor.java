@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the decryption of vault entries across a pool of threads.
+ * <p>
+ * Uses a plain fixed thread pool rather than a fork-join pool, which Android only has from API level 21.
+ */
+final class ParallelDecryptor
+{
+    /** Entries below this count are decrypted on the calling thread. */
+    private static final int MIN_ENTRIES_PER_TASK = 64;
+
+    /**
+     * Decrypts a single entry by index.
+     */
+    interface EntryDecryption
+    {
+        /**
+         * Decrypt the entry with the provided index. Will be called concurrently for different indices.
+         *
+         * @param index Index of the entry to decrypt.
+         */
+        void decrypt(int index);
+    }
+
+    private ParallelDecryptor()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Decrypt {@code count} entries using up to {@code parallelism} threads, returning once all are done.
+     *
+     * @param count Number of entries to decrypt. Must be non-negative.
+     * @param parallelism Maximum number of threads to use. Must be positive.
+     * @param decryption Decrypts a single entry. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code count} or {@code parallelism} is out of range.
+     * @throws NullPointerException if {@code decryption} is {@code null}.
+     * @throws RuntimeException if any decryption fails; the first failure is propagated.
+     */
+    static void decryptAll(int count, int parallelism, EntryDecryption decryption)
+    {
+        Preconditions.checkArgument(count >= 0, "count must be non-negative.");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive.");
+        Preconditions.checkNotNull(decryption, "decryption cannot be null.");
+
+        if (parallelism == 1 || count < MIN_ENTRIES_PER_TASK * 2)
+        {
+            decryptRange(decryption, 0, count);
+            return;
+        }
+
+        // A few tasks per thread so uneven entries still balance out.
+        int taskSize = Math.max(MIN_ENTRIES_PER_TASK, count / (parallelism * 4));
+        List<Callable<Void>> tasks = Lists.newArrayListWithCapacity((count + taskSize - 1) / taskSize);
+        for (int from = 0; from < count; from += taskSize)
+        {
+            tasks.add(new DecryptRangeTask(decryption, from, Math.min(count, from + taskSize)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try
+        {
+            for (Future<Void> future : executor.invokeAll(tasks))
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted decrypting entries.", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            else if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Decrypt a range of entries on the calling thread.
+     *
+     * @param decryption Decrypts a single entry.
+     * @param from First index, inclusive.
+     * @param to Last index, exclusive.
+     */
+    private static void decryptRange(EntryDecryption decryption, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            decryption.decrypt(i);
+        }
+    }
+
+    /**
+     * Decrypts a range of entries.
+     */
+    private static final class DecryptRangeTask implements Callable<Void>
+    {
+        /** Decrypts a single entry. */
+        private final EntryDecryption decryption;
+
+        /** First index, inclusive. */
+        private final int from;
+
+        /** Last index, exclusive. */
+        private final int to;
+
+        DecryptRangeTask(EntryDecryption decryption, int from, int to)
+        {
+            this.decryption = decryption;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Void call()
+        {
+            decryptRange(decryption, from, to);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * An ordered list of password operations, applied together by {@link PasswordManager#applyBatch(PasswordBatch)}.
+ * <p>
+ * Instances are immutable; use {@link #builder()} to create one.
+ */
+public final class PasswordBatch
+{
+    /**
+     * Kind of a single operation in a batch.
+     */
+    public enum OperationType
+    {
+        /** Generate a new password, overwriting any existing one. */
+        GENERATE,
+
+        /** Generate a new password for an application which already has one. */
+        CHANGE,
+
+        /** Delete an application's password. */
+        DELETE
+    }
+
+    /**
+     * Outcome of a single operation in a batch.
+     */
+    public enum OperationResult
+    {
+        /** The operation was applied. */
+        APPLIED,
+
+        /** The operation was skipped because the application had no password. */
+        NOT_FOUND
+    }
+
+    /**
+     * A single operation in a batch.
+     */
+    public static final class Operation
+    {
+        /** Kind of operation. */
+        private final OperationType type;
+
+        /** Application the operation applies to. */
+        private final String applicationName;
+
+        /**
+         * Create a new {@link Operation}.
+         *
+         * @param type Kind of operation.
+         * @param applicationName Application the operation applies to.
+         */
+        private Operation(OperationType type, String applicationName)
+        {
+            this.type = type;
+            this.applicationName = applicationName;
+        }
+
+        /**
+         * Get the kind of operation.
+         *
+         * @return The kind of operation. Never {@code null}.
+         */
+        public OperationType getType()
+        {
+            return type;
+        }
+
+        /**
+         * Get the application the operation applies to.
+         *
+         * @return The application the operation applies to. Never {@code null}.
+         */
+        public String getApplicationName()
+        {
+            return applicationName;
+        }
+    }
+
+    /** Operations, in the order they are applied. */
+    private final List<Operation> operations;
+
+    /**
+     * Create a new {@link PasswordBatch} from the provided builder.
+     *
+     * @param builder Builder holding the operations.
+     */
+    private PasswordBatch(Builder builder)
+    {
+        this.operations = builder.operations.build();
+    }
+
+    /**
+     * Create a new, empty builder.
+     *
+     * @return A new builder. Never {@code null}.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Get the operations, in the order they are applied.
+     *
+     * @return The operations. Never {@code null}, but may be empty.
+     */
+    public List<Operation> getOperations()
+    {
+        return operations;
+    }
+
+    /**
+     * Builder for {@link PasswordBatch}.
+     */
+    public static final class Builder
+    {
+        /** Operations added so far. */
+        private final ImmutableList.Builder<Operation> operations = ImmutableList.builder();
+
+        private Builder()
+        {
+            // Use PasswordBatch.builder()
+        }
+
+        /**
+         * Generate a new, random password for the provided application, overwriting any existing one.
+         *
+         * @param applicationName Application for which to generate a password. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code applicationName} is {@code null}.
+         */
+        public Builder generatePassword(String applicationName)
+        {
+            return add(OperationType.GENERATE, applicationName);
+        }
+
+        /**
+         * Change the provided application's password by generating a new, random password. Reports
+         * {@link OperationResult#NOT_FOUND} if the application has no password at that point in the batch.
+         *
+         * @param applicationName Application for which to change the password. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code applicationName} is {@code null}.
+         */
+        public Builder changePassword(String applicationName)
+        {
+            return add(OperationType.CHANGE, applicationName);
+        }
+
+        /**
+         * Delete the provided application's password. Reports {@link OperationResult#NOT_FOUND} if the application
+         * has no password at that point in the batch.
+         *
+         * @param applicationName Application for which to delete the password. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code applicationName} is {@code null}.
+         */
+        public Builder deletePassword(String applicationName)
+        {
+            return add(OperationType.DELETE, applicationName);
+        }
+
+        /**
+         * Add an operation.
+         *
+         * @param type Kind of operation.
+         * @param applicationName Application the operation applies to.
+         * @return This builder.
+         */
+        private Builder add(OperationType type, String applicationName)
+        {
+            Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+            operations.add(new Operation(type, applicationName));
+            return this;
+        }
+
+        /**
+         * Build the batch.
+         *
+         * @return The batch. Never {@code null}.
+         */
+        public PasswordBatch build()
+        {
+            return new PasswordBatch(this);
+        }
+    }
+}
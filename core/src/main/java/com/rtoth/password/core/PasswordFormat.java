@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * File formats supported by {@link PasswordManager#importPasswords(Reader, PasswordFormat)} and
+ * {@link PasswordManager#exportPasswords(Writer, PasswordFormat)}.
+ */
+public enum PasswordFormat
+{
+    /**
+     * Comma-separated values with a header row. Imports take the application name from the first column named
+     * {@code application}, {@code name}, {@code title} or {@code url}, and the password from the column named
+     * {@code password}, so exports from most other password managers can be imported as-is. Exports have the
+     * columns {@code application} and {@code password}.
+     */
+    CSV
+    {
+        @Override
+        PasswordRecordReader newReader(Reader reader)
+        {
+            return new CsvPasswordRecordReader(reader);
+        }
+
+        @Override
+        PasswordRecordWriter newWriter(Writer writer)
+        {
+            return new CsvPasswordRecordWriter(writer);
+        }
+    },
+
+    /**
+     * A JSON array of objects. Imports take the application name from the first member named
+     * {@code application}, {@code name} or {@code title}, and the password from the member named
+     * {@code password}; other members are ignored. Exports have the members {@code application} and
+     * {@code password}.
+     * <p>
+     * Other layouts, such as exports which nest the entries under a member of a top-level object, are rejected;
+     * import them with {@link PasswordManager#importPasswords(Reader, JsonImportLayout)}.
+     */
+    JSON
+    {
+        @Override
+        PasswordRecordReader newReader(Reader reader)
+        {
+            return new JsonPasswordRecordReader(reader, JsonImportLayout.defaults());
+        }
+
+        @Override
+        PasswordRecordWriter newWriter(Writer writer)
+        {
+            return new JsonPasswordRecordWriter(writer);
+        }
+    };
+
+    /**
+     * Create a reader for this format.
+     *
+     * @param reader Reader to read from.
+     * @return The record reader.
+     */
+    abstract PasswordRecordReader newReader(Reader reader);
+
+    /**
+     * Create a writer for this format.
+     *
+     * @param writer Writer to write to.
+     * @return The record writer.
+     */
+    abstract PasswordRecordWriter newWriter(Writer writer);
+}
@@ -21,56 +21,149 @@
  */
 package com.rtoth.password.core;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
 import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Manages CRUD operations on application passwords, including
  * storage/retrieval of encrypted core from the filesystem.
+ * <p>
+ * Changes are saved in the background; {@link #close()} the manager when done with it to save any unsaved changes
+ * and release its thread.
  */
-public class PasswordManager implements Serializable
+public class PasswordManager implements Closeable, Serializable
 {
     /** Logger for this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(PasswordManager.class);
 
+    /** Number of locks shared between applications for changes to single applications. */
+    private static final int APPLICATION_LOCK_STRIPES = 64;
+
     /** Used to do file IO in the background. */
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService executorService;
+
+    /** Whether {@link #executorService} was created by, and so must be shut down by, this manager. */
+    private final boolean ownsExecutorService;
+
+    /** Generates new random passwords for applications without their own password policy. */
+    private final RandomPasswordGenerator defaultPasswordGenerator;
+
+    /** Generates new random passwords for applications with their own password policy. */
+    private final Map<String, RandomPasswordGenerator> passwordGeneratorsByApplication;
+
+    /**
+     * Map of passwords by plaintext application. Read without locking; entries are immutable and are only replaced
+     * while holding {@link #passwordsLock}.
+     */
+    private final ConcurrentMap<String, PasswordEntry> passwordsByApplication = Maps.newConcurrentMap();
+
+    /** Index of the application names in {@link #passwordsByApplication}, for searching. */
+    private final ApplicationSearchIndex applicationIndex = new ApplicationSearchIndex();
 
-    /** Generates new random passwords. */
-    // FIXME: Make this range configurable or something.
-    private final RandomPasswordGenerator passwordGenerator = new AsciiPasswordGenerator(20, 30);
+    /**
+     * Applications changed since the last save. These are encrypted, unless they already are, and saved by the next
+     * {@link StorePasswordTask}.
+     */
+    private final Set<String> pendingApplications = Sets.newConcurrentHashSet();
 
-    /** Map of plaintext passwords by application. */
-    // FIXME: Figure out a way to make this not plaintext.
-    private final Map<String, String> passwordsByApplication = Maps.newHashMap();
+    /** Applications deleted since the last save. */
+    private final Set<String> removedApplications = Sets.newConcurrentHashSet();
+
+    /**
+     * Recently decrypted plaintext passwords, by the entry they were decrypted from, bounded by
+     * {@link PasswordManagerOptions#getPlaintextCacheSize()}. Only used with lazy decryption; otherwise every
+     * {@link PasswordEntry} holds its plaintext.
+     */
+    private final Cache<EncryptedEntry, String> plaintextPasswords;
 
-    /** Locks access to {@code #passwordsByApplication}. */
+    /**
+     * Locks changes to {@link #passwordsByApplication}, {@link #pendingApplications} and
+     * {@link #removedApplications}. Changes to single applications take the read lock, along with their lock from
+     * {@link #applicationLocks}, so changes to different applications can run in parallel. Changes to the whole
+     * vault take the write lock. Readers of {@link #passwordsByApplication} don't need it.
+     */
     private final ReadWriteLock passwordsLock = new ReentrantReadWriteLock();
 
+    /** Serializes changes to each application. */
+    private final Striped<Lock> applicationLocks = Striped.lock(APPLICATION_LOCK_STRIPES);
+
     /** Datastore used to store encrypted passwords. */
     private final EncryptedPasswordDatastore passwordDatastore;
 
-    /** Used to perform encryption and decryption. */
-    private StandardPBEStringEncryptor encryptor;
+    /** Tuning options. */
+    private final PasswordManagerOptions options;
+
+    /** Receives timings and counts of the work done, from {@link #options}. */
+    private final PasswordMetricsListener metrics;
+
+    /** Traces individual slow operations, from {@link #options}. */
+    private final PasswordTracer tracer;
+
+    /** Merges bursts of changes into a single save. */
+    private final WriteBehindScheduler saveScheduler;
+
+    /** Session key used to perform encryption and decryption. */
+    private volatile VaultKey vaultKey;
+
+    /** Incremented whenever an application is added or removed, so snapshots can tell whether they are current. */
+    private final AtomicLong applicationsVersion = new AtomicLong();
+
+    /** Latest snapshot of the application names, or {@code null} if none has been taken yet. */
+    private final AtomicReference<ApplicationsSnapshot> applicationsSnapshot = new AtomicReference<>();
+
+    /**
+     * Whether the next save must rewrite the complete vault rather than only what changed, because the header has
+     * not been saved yet, or because a previous save failed.
+     */
+    private volatile boolean fullRewriteRequired = false;
+
+    /** Whether {@link #close()} has been called. Only set while holding the write lock of {@link #passwordsLock}. */
+    private volatile boolean closed = false;
 
     /**
      * Create a new {@link PasswordManager} using the provided file path and master password.
@@ -91,49 +184,372 @@ public class PasswordManager implements Serializable
     public PasswordManager(File passwordFile, String masterPassword)
         throws EncryptionOperationNotPossibleException, IOException
     {
-        Preconditions.checkNotNull(passwordFile, "passwordDatastore cannot be null.");
+        this(passwordFile, masterPassword, PasswordManagerOptions.defaults());
+    }
+
+    /**
+     * Create a new {@link PasswordManager} using the provided file path, master password, and options.
+     *
+     * @param passwordFile File where encrypted passwords are stored. Cannot be {@code null}, and must be an existing
+     *                     regular file with read and write permissions.
+     * @param masterPassword Plaintext master password to use. This should be the password previously used to
+     *                       encrypt the passwords stored in {@code filePath}, or a new master password if there
+     *                       are no passwords stored yet. Cannot be {@code null}.
+     * @param options Tuning options to use. Cannot be {@code null}.
+     *
+     * @throws EncryptionOperationNotPossibleException if there are existing passwords in the file, and the provided
+     *         {@code masterPassword} is not correct.
+     * @throws IOException if there is some IO issue reading the provided {@code filePath}.
+     * @throws IllegalArgumentException if {@code passwordFile} is not an existing regular file with read and write
+     *         permissions.
+     * @throws NullPointerException if {@code filePath}, {@code masterPassword}, or {@code options} is {@code null}.
+     */
+    public PasswordManager(File passwordFile, String masterPassword, PasswordManagerOptions options)
+        throws EncryptionOperationNotPossibleException, IOException
+    {
+        this(new FileBasedEncryptedPasswordDatastore(
+                Preconditions.checkNotNull(passwordFile, "passwordFile cannot be null."),
+                FileBasedEncryptedPasswordDatastore.DEFAULT_DURABILITY,
+                FileBasedEncryptedPasswordDatastore.DEFAULT_READ_MODE,
+                Preconditions.checkNotNull(options, "options cannot be null.").getMetricsListener()),
+            masterPassword, options);
+    }
+
+    /**
+     * Create a new {@link PasswordManager} using the provided datastore, master password, and options.
+     *
+     * @param passwordDatastore Datastore where encrypted passwords are stored. Cannot be {@code null}. If it is
+     *                          {@link Closeable}, it is closed by {@link #close()}.
+     * @param masterPassword Plaintext master password to use. This should be the password previously used to
+     *                       encrypt the passwords stored in {@code passwordDatastore}, or a new master password if
+     *                       there are no passwords stored yet. Cannot be {@code null}.
+     * @param options Tuning options to use. Cannot be {@code null}.
+     *
+     * @throws EncryptionOperationNotPossibleException if there are existing passwords in the datastore, and the
+     *         provided {@code masterPassword} is not correct.
+     * @throws IOException if there is some IO issue reading the provided {@code passwordDatastore}.
+     * @throws NullPointerException if {@code passwordDatastore}, {@code masterPassword}, or {@code options} is
+     *         {@code null}.
+     */
+    public PasswordManager(EncryptedPasswordDatastore passwordDatastore, String masterPassword,
+                           PasswordManagerOptions options)
+        throws EncryptionOperationNotPossibleException, IOException
+    {
+        this.passwordDatastore = Preconditions.checkNotNull(passwordDatastore, "passwordDatastore cannot be null.");
+        Preconditions.checkNotNull(masterPassword, "masterPassword cannot be null.");
+        this.options = Preconditions.checkNotNull(options, "options cannot be null.");
+        this.metrics = options.getMetricsListener();
+        this.tracer = options.getTracer();
+        this.defaultPasswordGenerator = TracingPasswordGenerator.trace(
+            new PolicyPasswordGenerator(options.getDefaultPasswordPolicy()), tracer);
+        this.passwordGeneratorsByApplication =
+            createPasswordGenerators(options.getApplicationPasswordPolicies(), tracer);
+        this.plaintextPasswords =
+            CacheBuilder.newBuilder().maximumSize(options.getPlaintextCacheSize()).<EncryptedEntry, String>build();
+        this.ownsExecutorService = options.getPersistenceExecutor() == null;
+        this.executorService = ownsExecutorService ?
+            Executors.newSingleThreadScheduledExecutor() : options.getPersistenceExecutor();
+        this.saveScheduler = new WriteBehindScheduler(executorService, new StorePasswordTask(),
+            options.getSaveDelay(TimeUnit.NANOSECONDS), options.getMaxSaveDelay(TimeUnit.NANOSECONDS));
+
+        PasswordTracer.Span span = tracer.begin(PasswordTracer.Operation.UNLOCK);
+        boolean unlocked = false;
+        try
+        {
+            long startNanos = System.nanoTime();
+            loadExistingPasswords(masterPassword);
+            metrics.recordTime(PasswordMetricsListener.Timer.UNLOCK, System.nanoTime() - startNanos);
+            unlocked = true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Nobody can close a manager that was never returned, so don't leave its thread running.
+            if (ownsExecutorService)
+            {
+                executorService.shutdown();
+            }
+            throw e;
+        }
+        finally
+        {
+            if (span != PasswordTracer.Span.NONE)
+            {
+                span.end(passwordsByApplication.size(), encryptedSize(), unlocked);
+            }
+        }
+    }
+
+    /**
+     * Open a {@link PasswordManager} without blocking the calling thread, using the provided file path and master
+     * password. The file is read and decrypted on {@link PasswordManagerOptions#getAsyncExecutor()}.
+     *
+     * @param passwordFile File where encrypted passwords are stored. Cannot be {@code null}, and must be an existing
+     *                     regular file with read and write permissions.
+     * @param masterPassword Plaintext master password to use. Cannot be {@code null}.
+     * @return A future which completes with the password manager once it is ready, or fails with the cause if it
+     *         cannot be opened, as for {@link #PasswordManager(File, String)}. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code passwordFile} or {@code masterPassword} is {@code null}.
+     */
+    public static ListenableFuture<PasswordManager> openAsync(File passwordFile, String masterPassword)
+    {
+        return openAsync(passwordFile, masterPassword, PasswordManagerOptions.defaults());
+    }
+
+    /**
+     * Open a {@link PasswordManager} without blocking the calling thread, using the provided file path, master
+     * password, and options. The file is read and decrypted on {@link PasswordManagerOptions#getAsyncExecutor()}.
+     *
+     * @param passwordFile File where encrypted passwords are stored. Cannot be {@code null}, and must be an existing
+     *                     regular file with read and write permissions.
+     * @param masterPassword Plaintext master password to use. Cannot be {@code null}.
+     * @param options Tuning options to use. Cannot be {@code null}.
+     * @return A future which completes with the password manager once it is ready, or fails with the cause if it
+     *         cannot be opened, as for {@link #PasswordManager(File, String, PasswordManagerOptions)}. Never
+     *         {@code null}.
+     *
+     * @throws NullPointerException if {@code passwordFile}, {@code masterPassword}, or {@code options} is
+     *         {@code null}.
+     */
+    public static ListenableFuture<PasswordManager> openAsync(final File passwordFile, final String masterPassword,
+                                                              final PasswordManagerOptions options)
+    {
+        Preconditions.checkNotNull(passwordFile, "passwordFile cannot be null.");
+        Preconditions.checkNotNull(masterPassword, "masterPassword cannot be null.");
+        Preconditions.checkNotNull(options, "options cannot be null.");
+
+        return submit(new Callable<PasswordManager>()
+        {
+            @Override
+            public PasswordManager call() throws IOException
+            {
+                return new PasswordManager(passwordFile, masterPassword, options);
+            }
+        }, options.getAsyncExecutor());
+    }
+
+    /**
+     * Open a {@link PasswordManager} without blocking the calling thread, using the provided datastore, master
+     * password, and options. The datastore is read and decrypted on {@link PasswordManagerOptions#getAsyncExecutor()}.
+     *
+     * @param passwordDatastore Datastore where encrypted passwords are stored. Cannot be {@code null}.
+     * @param masterPassword Plaintext master password to use. Cannot be {@code null}.
+     * @param options Tuning options to use. Cannot be {@code null}.
+     * @return A future which completes with the password manager once it is ready, or fails with the cause if it
+     *         cannot be opened, as for
+     *         {@link #PasswordManager(EncryptedPasswordDatastore, String, PasswordManagerOptions)}. Never
+     *         {@code null}.
+     *
+     * @throws NullPointerException if {@code passwordDatastore}, {@code masterPassword}, or {@code options} is
+     *         {@code null}.
+     */
+    public static ListenableFuture<PasswordManager> openAsync(final EncryptedPasswordDatastore passwordDatastore,
+                                                              final String masterPassword,
+                                                              final PasswordManagerOptions options)
+    {
+        Preconditions.checkNotNull(passwordDatastore, "passwordDatastore cannot be null.");
         Preconditions.checkNotNull(masterPassword, "masterPassword cannot be null.");
+        Preconditions.checkNotNull(options, "options cannot be null.");
+
+        return submit(new Callable<PasswordManager>()
+        {
+            @Override
+            public PasswordManager call() throws IOException
+            {
+                return new PasswordManager(passwordDatastore, masterPassword, options);
+            }
+        }, options.getAsyncExecutor());
+    }
 
-        passwordDatastore = new FileBasedEncryptedPasswordDatastore(passwordFile);
+    /**
+     * Create a generator for each application with its own password policy. Applications sharing a policy share a
+     * generator, so each policy's tables and per-thread state exist only once.
+     *
+     * @param policies Password policies by application.
+     * @param tracer Tracer of the generators.
+     * @return An unmodifiable map of password generators by application.
+     */
+    private static Map<String, RandomPasswordGenerator> createPasswordGenerators(
+        Map<String, PasswordPolicy> policies, PasswordTracer tracer)
+    {
+        Map<PasswordPolicy, RandomPasswordGenerator> generatorsByPolicy = Maps.newIdentityHashMap();
+        ImmutableMap.Builder<String, RandomPasswordGenerator> generators = ImmutableMap.builder();
+        for (Map.Entry<String, PasswordPolicy> entry : policies.entrySet())
+        {
+            RandomPasswordGenerator generator = generatorsByPolicy.get(entry.getValue());
+            if (generator == null)
+            {
+                generator = TracingPasswordGenerator.trace(new PolicyPasswordGenerator(entry.getValue()), tracer);
+                generatorsByPolicy.put(entry.getValue(), generator);
+            }
+            generators.put(entry.getKey(), generator);
+        }
+        return generators.build();
+    }
 
-        encryptor = new StandardPBEStringEncryptor();
-        encryptor.setPassword(masterPassword);
+    /**
+     * Load any existing encrypted passwords from the {@link #passwordDatastore} into memory.
+     * <p>
+     * The master key is derived exactly once here and reused for every entry, and entries are decrypted using up
+     * to {@link PasswordManagerOptions#getParallelism()} threads. With lazy decryption enabled only application
+     * names are decrypted here. Legacy vaults, where every value was encrypted with its own salt, are decrypted
+     * the old way and then re-saved in the current format.
+     *
+     * @param masterPassword Plaintext master password to use.
+     *
+     * @throws EncryptionOperationNotPossibleException if there are existing passwords in the datastore, and the
+     *         {@code masterPassword} is not correct.
+     * @throws IOException if there is some IO issue reading the {@link #passwordDatastore}.
+     */
+    private void loadExistingPasswords(String masterPassword)
+        throws EncryptionOperationNotPossibleException, IOException
+    {
+        EncryptedVault vault = passwordDatastore.load();
+        if (vault == null)
+        {
+            vaultKey = generateKey(masterPassword);
+            fullRewriteRequired = true;
+        }
+        else if (vault.getHeader().isLegacy())
+        {
+            vaultKey = generateKey(masterPassword);
+            loadLegacyPasswords(vault.getEntries(), masterPassword);
+            fullRewriteRequired = true;
+            LOGGER.info("Migrating legacy password file to vault format version " + VaultHeader.CURRENT_VERSION);
+            saveScheduler.requestSave();
+            saveScheduler.flush();
+        }
+        else
+        {
+            final VaultKey key = deriveKey(masterPassword, vault.getHeader());
+            final List<EncryptedEntry> entries = vault.getEntries();
+            final boolean decryptPasswords = !options.isLazyDecryption();
+            final String[] applications = new String[entries.size()];
+            final String[] passwords = decryptPasswords ? new String[entries.size()] : null;
+            ParallelDecryptor.decryptAll(entries.size(), options.getParallelism(),
+                new ParallelDecryptor.EntryDecryption()
+                {
+                    @Override
+                    public void decrypt(int index)
+                    {
+                        EncryptedEntry entry = entries.get(index);
+                        applications[index] = decryptApplication(key, entry.getEncryptedApplication());
+                        if (decryptPasswords)
+                        {
+                            passwords[index] = decryptPassword(key, entry);
+                        }
+                    }
+                });
+            putAll(applications, entries.toArray(new EncryptedEntry[entries.size()]), key, passwords);
+            vaultKey = key;
+        }
+    }
 
-        loadExistingPasswords();
+    /**
+     * Load passwords from a legacy password file, where every value was encrypted with its own salt, re-encrypting
+     * each entry with the {@link #vaultKey}.
+     *
+     * @param legacyEntries Entries of the legacy password file.
+     * @param masterPassword Plaintext master password to use.
+     *
+     * @throws EncryptionOperationNotPossibleException if the {@code masterPassword} is not correct.
+     */
+    private void loadLegacyPasswords(final List<EncryptedEntry> legacyEntries, String masterPassword)
+        throws EncryptionOperationNotPossibleException
+    {
+        // StandardPBEStringEncryptor is thread-safe, and legacy decryption benefits most from parallelism.
+        final StandardPBEStringEncryptor legacyEncryptor = new StandardPBEStringEncryptor();
+        legacyEncryptor.setPassword(masterPassword);
+        final VaultKey key = vaultKey;
+        final String[] applications = new String[legacyEntries.size()];
+        final EncryptedEntry[] encryptedEntries = new EncryptedEntry[legacyEntries.size()];
+        final String[] passwords = new String[legacyEntries.size()];
+        ParallelDecryptor.decryptAll(legacyEntries.size(), options.getParallelism(),
+            new ParallelDecryptor.EntryDecryption()
+            {
+                @Override
+                public void decrypt(int index)
+                {
+                    EncryptedEntry entry = legacyEntries.get(index);
+                    applications[index] = legacyEncryptor.decrypt(
+                        new String(entry.getEncryptedApplication(), Charsets.UTF_8));
+                    passwords[index] = legacyEncryptor.decrypt(
+                        new String(entry.getEncryptedPassword(), Charsets.UTF_8));
+                    encryptedEntries[index] = encryptEntry(key, applications[index], passwords[index]);
+                }
+            });
+        putAll(applications, encryptedEntries, key, options.isLazyDecryption() ? null : passwords);
     }
 
     /**
-     * Load any existing encrypted passwords from the {@code passwordsFile} into memory.
+     * Merge decrypted applications and their passwords into {@link #passwordsByApplication}.
      *
-     * @throws EncryptionOperationNotPossibleException if there are existing passwords in the file, and the
-     *         {@code masterPassword} used to initialize the encryptor is not correct.
-     * @throws IOException if there is some IO issue reading the {@code passwordsFile}.
+     * @param applications Plaintext application names.
+     * @param encryptedEntries Encrypted entries, in the same order as {@code applications}.
+     * @param key Key the entries were encrypted with.
+     * @param passwords Plaintext passwords, in the same order as {@code applications}, or {@code null} if they
+     *                  have not been decrypted.
      */
-    private void loadExistingPasswords() throws EncryptionOperationNotPossibleException, IOException
+    private void putAll(String[] applications, EncryptedEntry[] encryptedEntries, VaultKey key, String[] passwords)
     {
-        Properties encryptedFileContents = new Properties();
-        InputStream in = passwordDatastore.getInputStream();
-        encryptedFileContents.load(in);
-        in.close();
-        for (Map.Entry<Object, Object> entry : encryptedFileContents.entrySet())
+        for (int i = 0; i < applications.length; i++)
         {
-            String application = encryptor.decrypt((String) entry.getKey());
-            passwordsByApplication.put(
-                application,
-                encryptor.decrypt((String) entry.getValue())
-            );
+            passwordsByApplication.put(applications[i],
+                PasswordEntry.saved(encryptedEntries[i], key, passwords == null ? null : passwords[i]));
+            applicationIndex.add(applications[i]);
         }
     }
 
     /**
      * Get a list of all applications with passwords currently managed by this application.
+     * <p>
+     * The list is a consistent snapshot: it reflects every change made before some point during this call, and
+     * no change made after it. Calls between changes share the same snapshot without copying.
      *
-     * @return A ist of all applications with passwords currently managed by this application. Never {@code null},
-     *         but may be empty.
+     * @return An unmodifiable list of all applications with passwords currently managed by this application. Never
+     *         {@code null}, but may be empty.
      */
     public List<String> getAvailableApplications()
     {
-        return Lists.newArrayList(passwordsByApplication.keySet());
+        while (true)
+        {
+            ApplicationsSnapshot snapshot = applicationsSnapshot.get();
+            long version = applicationsVersion.get();
+            if (snapshot != null && snapshot.version == version)
+            {
+                return snapshot.applications;
+            }
+            // Changes bump the version after changing the map. If the version hasn't moved while copying, the copy
+            // holds every change finished before the copy started, and only changes still in progress may be
+            // partially reflected.
+            List<String> applications = ImmutableList.copyOf(passwordsByApplication.keySet());
+            if (applicationsVersion.get() == version)
+            {
+                // If another caller published a snapshot first, it is at least as recent as this one.
+                applicationsSnapshot.compareAndSet(snapshot, new ApplicationsSnapshot(version, applications));
+                return applications;
+            }
+        }
+    }
+
+    /**
+     * Search the applications with passwords currently managed by this application, ignoring case.
+     * <p>
+     * Applications starting with the query come first, then applications containing it, then applications
+     * containing it with a typo, so this can be called on every keystroke of a search box. The index is kept up to
+     * date as passwords are added and removed, and is searched without locking.
+     *
+     * @param query Text to search for. Cannot be {@code null}. An empty query matches every application.
+     * @param maxResults Maximum number of applications to return. Must be positive.
+     * @return An unmodifiable list of the matching applications, best match first. Never {@code null}, but may be
+     *         empty.
+     *
+     * @throws IllegalArgumentException if {@code maxResults} is not positive.
+     * @throws NullPointerException if {@code query} is {@code null}.
+     */
+    public List<String> searchApplications(String query, int maxResults)
+    {
+        return applicationIndex.search(query, maxResults);
     }
 
     /**
@@ -148,19 +564,42 @@ public class PasswordManager implements Serializable
     {
         Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
 
-        passwordsLock.readLock().lock();
-        try
-        {
-            return passwordsByApplication.containsKey(applicationName);
-        }
-        finally
+        metrics.increment(PasswordMetricsListener.Counter.LOOKUP);
+        return passwordsByApplication.containsKey(applicationName);
+    }
+
+    /**
+     * Get the number of applications with passwords.
+     *
+     * @return The number of applications with passwords.
+     */
+    public int getPasswordCount()
+    {
+        return passwordsByApplication.size();
+    }
+
+    /**
+     * Get the number of applications whose passwords have changed or been deleted since the last save, and are
+     * waiting to be saved.
+     * <p>
+     * When the whole vault must be rewritten, for example after a failed save or a master password change, every
+     * password counts as unsaved, and an empty vault counts as one unsaved change.
+     *
+     * @return The number of unsaved changes.
+     */
+    public int getUnsavedChangeCount()
+    {
+        if (fullRewriteRequired)
         {
-            passwordsLock.readLock().unlock();
+            return Math.max(1, passwordsByApplication.size()) + removedApplications.size();
         }
+        return pendingApplications.size() + removedApplications.size();
     }
 
     /**
      * Get the plaintext password for the provided application.
+     * <p>
+     * With lazy decryption enabled, the password is decrypted here unless it was accessed recently.
      *
      * @param applicationName Application for which to get the password. Cannot be {@code null}.
      * @return The plaintext password for the provided application, or {@code null} if there is no password stored.
@@ -171,40 +610,70 @@ public class PasswordManager implements Serializable
     {
         Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
 
-        passwordsLock.readLock().lock();
+        metrics.increment(PasswordMetricsListener.Counter.LOOKUP);
+        return plaintextPassword(applicationName);
+    }
+
+    /**
+     * Generate a new, random password for the provided application.
+     * <p>
+     * If a password is already stored for the provided application, a new one will be created and will overwrite
+     * the existing one.
+     *
+     * @param applicationName Application for which to generate and save a new password. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public void generatePassword(String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        String newPassword = passwordGenerator(applicationName).generatePassword();
+        Lock applicationLock = lockApplication(applicationName);
         try
         {
-            return passwordsByApplication.get(applicationName);
+            putPassword(applicationName, newPassword);
+            saveScheduler.requestSave();
         }
         finally
         {
-            passwordsLock.readLock().unlock();
+            unlockApplication(applicationLock);
         }
     }
 
     /**
-     * Generate a new, random password for the provided application.
-     * <p>
-     * If a password is already stored for the provided application, a new one will be created and will overwrite
-     * the existing one.
+     * Atomically generate a new, random password for the provided application, only if it doesn't already have
+     * one.
      *
      * @param applicationName Application for which to generate and save a new password. Cannot be {@code null}.
+     * @return {@code true} if a password was generated, {@code false} if the application already had one.
      *
      * @throws NullPointerException if {@code applicationName} is {@code null}.
      */
-    public void generatePassword(String applicationName)
+    public boolean generateIfAbsent(String applicationName)
     {
         Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
 
-        passwordsLock.writeLock().lock();
+        if (passwordsByApplication.containsKey(applicationName))
+        {
+            return false;
+        }
+
+        String newPassword = passwordGenerator(applicationName).generatePassword();
+        Lock applicationLock = lockApplication(applicationName);
         try
         {
-            passwordsByApplication.put(applicationName, passwordGenerator.generatePassword());
-            executorService.submit(new StorePasswordTask());
+            if (passwordsByApplication.containsKey(applicationName))
+            {
+                return false;
+            }
+            putPassword(applicationName, newPassword);
+            saveScheduler.requestSave();
+            return true;
         }
         finally
         {
-            passwordsLock.writeLock().unlock();
+            unlockApplication(applicationLock);
         }
     }
 
@@ -219,18 +688,17 @@ public class PasswordManager implements Serializable
     {
         Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
 
-        passwordsLock.writeLock().lock();
+        Lock applicationLock = lockApplication(applicationName);
         try
         {
-            if (hasPassword(applicationName))
+            if (removePassword(applicationName))
             {
-                passwordsByApplication.remove(applicationName);
-                executorService.submit(new StorePasswordTask());
+                saveScheduler.requestSave();
             }
         }
         finally
         {
-            passwordsLock.writeLock().unlock();
+            unlockApplication(applicationLock);
         }
     }
 
@@ -243,94 +711,1283 @@ public class PasswordManager implements Serializable
      * @throws IllegalArgumentException if {@code applicationName} does not have an existing password.
      * @throws NullPointerException if {@code applicationName} is {@code null}.
      */
-    // FIXME: Threading bug likely here if someone invokes delete before we grab the lock
     public void changePassword(String applicationName)
     {
         Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
-        Preconditions.checkArgument(hasPassword(applicationName),
+        Preconditions.checkArgument(rotateIfPresent(applicationName),
             "Cannot change password for unknown application: " + applicationName);
+    }
 
-        passwordsLock.writeLock().lock();
+    /**
+     * Atomically change the provided application's password by generating a new, random password, only if it
+     * already has one.
+     *
+     * @param applicationName Application for which to generate and save a new password. Cannot be {@code null}.
+     * @return {@code true} if the password was changed, {@code false} if the application has no password.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public boolean rotateIfPresent(String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        // Generate outside the lock; regenerating inside it is only needed in the unlikely case of a repeat.
+        RandomPasswordGenerator generator = passwordGenerator(applicationName);
+        String newPassword = generator.generatePassword();
+        Lock applicationLock = lockApplication(applicationName);
         try
         {
-            String existingPassword = passwordsByApplication.get(applicationName);
-            String newPassword;
-            do
+            String existingPassword = plaintextPassword(applicationName);
+            if (existingPassword == null)
+            {
+                return false;
+            }
+            while (newPassword.equals(existingPassword))
             {
-                newPassword = passwordGenerator.generatePassword();
+                newPassword = generator.generatePassword();
             }
-            while (newPassword.equals(existingPassword));
 
-            passwordsByApplication.put(applicationName, newPassword);
-            executorService.submit(new StorePasswordTask());
+            putPassword(applicationName, newPassword);
+            saveScheduler.requestSave();
+            return true;
         }
         finally
         {
-            passwordsLock.writeLock().unlock();
+            unlockApplication(applicationLock);
         }
     }
 
     /**
-     * Change the master password to the provided value.
+     * Atomically set the provided application's password to a new value, only if its current password is the
+     * expected value.
      *
-     * @param newMasterPassword New plaintext master password to use. Cannot be {@code null}.
+     * @param applicationName Application for which to set the password. Cannot be {@code null}.
+     * @param expectedPassword Plaintext password the application is expected to have, or {@code null} if it is
+     *                         expected to have no password.
+     * @param newPassword Plaintext password to set. Cannot be {@code null}.
+     * @return {@code true} if the password was set, {@code false} if the current password was not
+     *         {@code expectedPassword}.
      *
-     * @throws NullPointerException if {@code newMasterPassword} is {@code null}.
+     * @throws NullPointerException if {@code applicationName} or {@code newPassword} is {@code null}.
      */
-    public void changeMasterPassword(String newMasterPassword)
+    public boolean compareAndSetPassword(String applicationName, String expectedPassword, String newPassword)
     {
-        Preconditions.checkNotNull(newMasterPassword, "newMasterPassword cannot be null.");
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+        Preconditions.checkNotNull(newPassword, "newPassword cannot be null.");
 
-        passwordsLock.readLock().lock();
+        Lock applicationLock = lockApplication(applicationName);
         try
         {
-            // Cannot set the password of an encryptor after it's been created,
-            // so need to create a new one here instead.
-            encryptor = new StandardPBEStringEncryptor();
-            encryptor.setPassword(newMasterPassword);
-            executorService.submit(new StorePasswordTask());
+            String existingPassword = plaintextPassword(applicationName);
+            if (existingPassword == null ? expectedPassword != null : !existingPassword.equals(expectedPassword))
+            {
+                return false;
+            }
+            if (!newPassword.equals(existingPassword))
+            {
+                putPassword(applicationName, newPassword);
+                saveScheduler.requestSave();
+            }
+            return true;
         }
         finally
         {
-            passwordsLock.readLock().unlock();
+            unlockApplication(applicationLock);
         }
     }
 
     /**
-     * Runnable task to encrypt and store the current password map to disk.
+     * Apply every operation in the provided batch, in order, as a single change.
+     * <p>
+     * No other change can be interleaved with the batch, and the whole batch is saved by a single write, making
+     * this much faster than performing the operations one at a time.
+     *
+     * @param batch Operations to apply. Cannot be {@code null}.
+     * @return The result of each operation, in the same order as {@link PasswordBatch#getOperations()}. Never
+     *         {@code null}.
+     *
+     * @throws NullPointerException if {@code batch} is {@code null}.
      */
-    private final class StorePasswordTask implements Runnable
+    public List<PasswordBatch.OperationResult> applyBatch(PasswordBatch batch)
     {
-        @Override
-        public void run()
+        Preconditions.checkNotNull(batch, "batch cannot be null.");
+
+        // Generate up front, all at once for each generator, so the lock is only held while applying the results.
+        List<PasswordBatch.Operation> operations = batch.getOperations();
+        Map<RandomPasswordGenerator, Integer> generatedCounts = Maps.newIdentityHashMap();
+        for (PasswordBatch.Operation operation : operations)
         {
-            passwordsLock.readLock().lock();
-            try
+            if (operation.getType() != PasswordBatch.OperationType.DELETE)
             {
-                Properties encryptedFileContents = new Properties();
-                for (Map.Entry<String, String> entry : passwordsByApplication.entrySet())
-                {
-                    encryptedFileContents.setProperty(
-                        encryptor.encrypt(entry.getKey()),
-                        encryptor.encrypt(entry.getValue())
-                    );
-                }
-
-                OutputStream out = passwordDatastore.getOutputStream();
-                encryptedFileContents.store(out, null); // null comments
-                out.flush();
-                out.close();
-                LOGGER.info("Encrypted passwords saved to file.");
+                RandomPasswordGenerator generator = passwordGenerator(operation.getApplicationName());
+                Integer count = generatedCounts.get(generator);
+                generatedCounts.put(generator, count == null ? 1 : count + 1);
+            }
+        }
+        Map<RandomPasswordGenerator, Iterator<String>> generatedPasswords = Maps.newIdentityHashMap();
+        for (Map.Entry<RandomPasswordGenerator, Integer> entry : generatedCounts.entrySet())
+        {
+            generatedPasswords.put(entry.getKey(), entry.getKey().generatePasswords(entry.getValue()).iterator());
+        }
+        String[] newPasswords = new String[operations.size()];
+        for (int i = 0; i < newPasswords.length; i++)
+        {
+            if (operations.get(i).getType() != PasswordBatch.OperationType.DELETE)
+            {
+                newPasswords[i] = generatedPasswords.get(passwordGenerator(operations.get(i).getApplicationName()))
+                    .next();
             }
-            catch (Exception e)
+        }
+
+        ImmutableList.Builder<PasswordBatch.OperationResult> results = ImmutableList.builder();
+        boolean changed = false;
+        passwordsLock.writeLock().lock();
+        try
+        {
+            checkOpen();
+            for (int i = 0; i < newPasswords.length; i++)
             {
-                // FIXME this...
-                LOGGER.warn("Error storing password in file...", e);
+                String applicationName = operations.get(i).getApplicationName();
+                boolean applied;
+                switch (operations.get(i).getType())
+                {
+                    case GENERATE:
+                    {
+                        putPassword(applicationName, newPasswords[i]);
+                        applied = true;
+                        break;
+                    }
+                    case CHANGE:
+                    {
+                        String existingPassword = plaintextPassword(applicationName);
+                        applied = existingPassword != null;
+                        if (applied)
+                        {
+                            while (newPasswords[i].equals(existingPassword))
+                            {
+                                newPasswords[i] = passwordGenerator(applicationName).generatePassword();
+                            }
+                            putPassword(applicationName, newPasswords[i]);
+                        }
+                        break;
+                    }
+                    case DELETE:
+                    {
+                        applied = removePassword(applicationName);
+                        break;
+                    }
+                    default:
+                    {
+                        throw new IllegalStateException("Unknown operation type: " + operations.get(i).getType());
+                    }
+                }
+                results.add(applied ? PasswordBatch.OperationResult.APPLIED : PasswordBatch.OperationResult.NOT_FOUND);
+                changed |= applied;
             }
-            finally
+
+            if (changed)
             {
-                passwordsLock.readLock().unlock();
+                saveScheduler.requestSave();
             }
         }
+        finally
+        {
+            passwordsLock.writeLock().unlock();
+        }
+        return results.build();
+    }
+
+    /**
+     * Import every password from the provided reader, overwriting the password of any application which already
+     * has one.
+     * <p>
+     * The input is streamed: entries are parsed on one thread, encrypted on up to
+     * {@link PasswordManagerOptions#getParallelism()} threads, and stored in input order, with at most
+     * {@link PasswordPipeline#MAX_IN_FLIGHT} entries between the stages. Memory use beyond the vault itself does
+     * not grow with the size of the input. Entries without both an application name and a password are skipped.
+     * The imported passwords are saved together once the import is done.
+     *
+     * @param reader Reader to import from. Cannot be {@code null}. Not closed by this method.
+     * @param format Format of the input. Cannot be {@code null}.
+     * @return Number of passwords imported.
+     *
+     * @throws IOException if there is a problem reading, or the input is malformed. Passwords imported before the
+     *         problem are kept.
+     * @throws NullPointerException if {@code reader} or {@code format} is {@code null}.
+     */
+    public int importPasswords(Reader reader, PasswordFormat format) throws IOException
+    {
+        Preconditions.checkNotNull(reader, "reader cannot be null.");
+        Preconditions.checkNotNull(format, "format cannot be null.");
+
+        return importRecords(format.newReader(reader));
+    }
+
+    /**
+     * Import every password from the provided JSON reader, finding the entries, application names and passwords
+     * as described by the provided layout, and overwriting the password of any application which already has one.
+     * Behaves as {@link #importPasswords(Reader, PasswordFormat)} otherwise.
+     *
+     * @param reader Reader to import from. Cannot be {@code null}. Not closed by this method.
+     * @param layout Where the entries, application names and passwords are. Cannot be {@code null}.
+     * @return Number of passwords imported.
+     *
+     * @throws IOException if there is a problem reading, the input is malformed, or it does not match
+     *         {@code layout}. Passwords imported before the problem are kept.
+     * @throws NullPointerException if {@code reader} or {@code layout} is {@code null}.
+     */
+    public int importPasswords(Reader reader, JsonImportLayout layout) throws IOException
+    {
+        Preconditions.checkNotNull(reader, "reader cannot be null.");
+        Preconditions.checkNotNull(layout, "layout cannot be null.");
+
+        return importRecords(new JsonPasswordRecordReader(reader, layout));
+    }
+
+    /**
+     * Import every record from the provided record reader; see {@link #importPasswords(Reader, PasswordFormat)}.
+     *
+     * @param records Reader of the records to import.
+     * @return Number of passwords imported.
+     *
+     * @throws IOException if there is a problem reading, or the input is malformed.
+     */
+    private int importRecords(PasswordRecordReader records) throws IOException
+    {
+        final VaultKey key = vaultKey;
+        try
+        {
+            return PasswordPipeline.run(records,
+                new Function<PasswordRecord, Map.Entry<PasswordRecord, EncryptedEntry>>()
+                {
+                    @Override
+                    public Map.Entry<PasswordRecord, EncryptedEntry> apply(PasswordRecord record)
+                    {
+                        return Maps.immutableEntry(record,
+                            encryptEntry(key, record.getApplicationName(), record.getPassword()));
+                    }
+                },
+                new PasswordPipeline.Sink<Map.Entry<PasswordRecord, EncryptedEntry>>()
+                {
+                    @Override
+                    public void accept(Map.Entry<PasswordRecord, EncryptedEntry> imported)
+                    {
+                        putImportedPassword(imported.getKey(), imported.getValue(), key);
+                    }
+                },
+                options.getParallelism());
+        }
+        finally
+        {
+            // Save whatever was imported, even if the import failed part way. Anything imported before a close was
+            // saved by it.
+            if (!closed && !pendingApplications.isEmpty())
+            {
+                saveScheduler.requestSave();
+            }
+        }
+    }
+
+    /**
+     * Export every password to the provided writer.
+     * <p>
+     * The output is streamed: passwords are decrypted on up to {@link PasswordManagerOptions#getParallelism()}
+     * threads and written as they are ready, with at most {@link PasswordPipeline#MAX_IN_FLIGHT} passwords between
+     * the stages. Exporting does not block changes; a password changed during the export may be exported with
+     * either its old or its new value.
+     *
+     * @param writer Writer to export to. Cannot be {@code null}. Flushed, but not closed, by this method.
+     * @param format Format of the output. Cannot be {@code null}.
+     * @return Number of passwords exported.
+     *
+     * @throws IOException if there is a problem writing.
+     * @throws NullPointerException if {@code writer} or {@code format} is {@code null}.
+     */
+    public int exportPasswords(Writer writer, PasswordFormat format) throws IOException
+    {
+        Preconditions.checkNotNull(writer, "writer cannot be null.");
+        Preconditions.checkNotNull(format, "format cannot be null.");
+
+        final Iterator<Map.Entry<String, PasswordEntry>> entries = passwordsByApplication.entrySet().iterator();
+        PasswordRecordWriter recordWriter = format.newWriter(writer);
+        int count = PasswordPipeline.run(
+            new PasswordPipeline.Source<Map.Entry<String, PasswordEntry>>()
+            {
+                @Override
+                public Map.Entry<String, PasswordEntry> next()
+                {
+                    return entries.hasNext() ? entries.next() : null;
+                }
+            },
+            new Function<Map.Entry<String, PasswordEntry>, PasswordRecord>()
+            {
+                @Override
+                public PasswordRecord apply(Map.Entry<String, PasswordEntry> entry)
+                {
+                    // Bypass the plaintext cache, so an export doesn't evict everything useful from it.
+                    PasswordEntry passwordEntry = entry.getValue();
+                    String plaintext = passwordEntry.plaintext != null ? passwordEntry.plaintext :
+                        decryptPassword(passwordEntry.key, passwordEntry.encryptedEntry);
+                    return new PasswordRecord(entry.getKey(), plaintext);
+                }
+            },
+            recordWriter, options.getParallelism());
+        recordWriter.finish();
+        return count;
+    }
+
+    /**
+     * Change the master password to the provided value.
+     * <p>
+     * Every saved entry is re-encrypted under the new master password; entries changed since the last save are
+     * encrypted under it when they are saved.
+     *
+     * @param newMasterPassword New plaintext master password to use. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code newMasterPassword} is {@code null}.
+     */
+    public void changeMasterPassword(String newMasterPassword)
+    {
+        Preconditions.checkNotNull(newMasterPassword, "newMasterPassword cannot be null.");
+
+        PasswordTracer.Span span = tracer.begin(PasswordTracer.Operation.CHANGE_MASTER_PASSWORD);
+        int entryCount = 0;
+        long size = 0;
+        boolean changed = false;
+        passwordsLock.writeLock().lock();
+        try
+        {
+            checkOpen();
+            // Use a fresh salt rather than reusing the old header.
+            VaultKey newVaultKey = generateKey(newMasterPassword);
+            for (Map.Entry<String, PasswordEntry> entry : passwordsByApplication.entrySet())
+            {
+                PasswordEntry passwordEntry = entry.getValue();
+                if (!passwordEntry.isPending())
+                {
+                    String plaintext = plaintextPassword(entry.getKey());
+                    EncryptedEntry encryptedEntry = encryptEntry(newVaultKey, entry.getKey(), plaintext);
+                    entry.setValue(PasswordEntry.saved(encryptedEntry, newVaultKey, passwordEntry.plaintext));
+                    entryCount++;
+                    size += encryptedSize(encryptedEntry);
+                }
+            }
+            vaultKey = newVaultKey;
+            fullRewriteRequired = true;
+            saveScheduler.requestSave();
+            changed = true;
+        }
+        finally
+        {
+            passwordsLock.writeLock().unlock();
+            span.end(entryCount, size, changed);
+        }
+    }
+
+    /**
+     * Save any unsaved changes as soon as possible, rather than waiting for the save delay to pass.
+     * <p>
+     * Changes are always saved eventually without calling this method, as failed saves are retried after a delay;
+     * callers only need it to know when their changes are durable.
+     *
+     * @return A future which completes once every change made before this call has been saved, or fails with the
+     *         cause if the save fails. Never {@code null}.
+     */
+    public ListenableFuture<Void> flush()
+    {
+        if (fullRewriteRequired)
+        {
+            // A failed save may have taken the only record of its changes with it; the rewrite covers them.
+            saveScheduler.requestSave();
+        }
+        return saveScheduler.flush();
+    }
+
+    /**
+     * Save any unsaved changes, waiting at most {@link PasswordManagerOptions#getCloseTimeout(TimeUnit)}, and stop
+     * accepting changes. Does nothing if already closed.
+     * <p>
+     * Every change made before this call is saved, even if the wait times out: the save carries on in the
+     * background, and the background thread exits once it is done. This includes changes whose earlier saves
+     * failed. If the save fails, this throws, and the changes exist only in memory: failed saves are not retried
+     * after this call, even on a {@link PasswordManagerOptions#getPersistenceExecutor() shared executor}. Changes
+     * attempted after this call fail with an {@link IllegalStateException}; passwords can still be read.
+     * <p>
+     * If the datastore is {@link Closeable}, it is closed too, after the save.
+     *
+     * @throws IOException if the unsaved changes could not be saved, or the wait timed out.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        passwordsLock.writeLock().lock();
+        try
+        {
+            // Every change either finished before this, and so is covered by the flush below, or fails.
+            closed = true;
+        }
+        finally
+        {
+            passwordsLock.writeLock().unlock();
+        }
+
+        try
+        {
+            Uninterruptibles.getUninterruptibly(flush(), options.getCloseTimeout(TimeUnit.NANOSECONDS),
+                TimeUnit.NANOSECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Unable to save passwords on close.", e.getCause());
+        }
+        catch (TimeoutException e)
+        {
+            throw new IOException("Timed out saving passwords on close; saving continues in the background.", e);
+        }
+        finally
+        {
+            // A save still running after a timeout finishes, but nothing retries it if it fails.
+            saveScheduler.stop();
+            // Saves already scheduled still run after shutdown.
+            if (ownsExecutorService)
+            {
+                executorService.shutdown();
+            }
+            if (passwordDatastore instanceof Closeable)
+            {
+                ((Closeable) passwordDatastore).close();
+            }
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #getPlaintextPassword(String)}, for when the password may need decrypting.
+     *
+     * @param applicationName Application for which to get the password. Cannot be {@code null}.
+     * @return A future which completes with the plaintext password for the provided application, or {@code null} if
+     *         there is no password stored. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public ListenableFuture<String> getPlaintextPasswordAsync(final String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        return submit(new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                return getPlaintextPassword(applicationName);
+            }
+        }, options.getAsyncExecutor());
+    }
+
+    /**
+     * Asynchronous version of {@link #generatePassword(String)}.
+     *
+     * @param applicationName Application for which to generate and save a new password. Cannot be {@code null}.
+     * @return A future which completes once the new password has been saved, or fails with the cause if it could
+     *         not be saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public ListenableFuture<Void> generatePasswordAsync(final String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        return submitAndSave(new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                generatePassword(applicationName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #generateIfAbsent(String)}.
+     *
+     * @param applicationName Application for which to generate and save a new password. Cannot be {@code null}.
+     * @return A future which completes once any new password has been saved, with {@code true} if a password was
+     *         generated, or fails with the cause if it could not be saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public ListenableFuture<Boolean> generateIfAbsentAsync(final String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        return submitAndSave(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return generateIfAbsent(applicationName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #deletePassword(String)}.
+     *
+     * @param applicationName Application for which to delete the password. Cannot be {@code null}.
+     * @return A future which completes once the deletion has been saved, or fails with the cause if it could not be
+     *         saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public ListenableFuture<Void> deletePasswordAsync(final String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        return submitAndSave(new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                deletePassword(applicationName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #changePassword(String)}.
+     *
+     * @param applicationName Application for which to generate and save a new password. Cannot be {@code null}.
+     * @return A future which completes once the new password has been saved, or fails with an
+     *         {@link IllegalArgumentException} if the application has no password, or with the cause if it could not
+     *         be saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public ListenableFuture<Void> changePasswordAsync(final String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        return submitAndSave(new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                changePassword(applicationName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #rotateIfPresent(String)}.
+     *
+     * @param applicationName Application for which to generate and save a new password. Cannot be {@code null}.
+     * @return A future which completes once any new password has been saved, with {@code true} if the password was
+     *         changed, or fails with the cause if it could not be saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} is {@code null}.
+     */
+    public ListenableFuture<Boolean> rotateIfPresentAsync(final String applicationName)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+
+        return submitAndSave(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return rotateIfPresent(applicationName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #compareAndSetPassword(String, String, String)}.
+     *
+     * @param applicationName Application for which to set the password. Cannot be {@code null}.
+     * @param expectedPassword Plaintext password the application is expected to have, or {@code null} if it is
+     *                         expected to have no password.
+     * @param newPassword Plaintext password to set. Cannot be {@code null}.
+     * @return A future which completes once any new password has been saved, with {@code true} if the password was
+     *         set, or fails with the cause if it could not be saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code applicationName} or {@code newPassword} is {@code null}.
+     */
+    public ListenableFuture<Boolean> compareAndSetPasswordAsync(final String applicationName,
+                                                                final String expectedPassword,
+                                                                final String newPassword)
+    {
+        Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+        Preconditions.checkNotNull(newPassword, "newPassword cannot be null.");
+
+        return submitAndSave(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return compareAndSetPassword(applicationName, expectedPassword, newPassword);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #applyBatch(PasswordBatch)}.
+     *
+     * @param batch Operations to apply. Cannot be {@code null}.
+     * @return A future which completes once the batch has been saved, with the result of each operation, or fails
+     *         with the cause if it could not be saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code batch} is {@code null}.
+     */
+    public ListenableFuture<List<PasswordBatch.OperationResult>> applyBatchAsync(final PasswordBatch batch)
+    {
+        Preconditions.checkNotNull(batch, "batch cannot be null.");
+
+        return submitAndSave(new Callable<List<PasswordBatch.OperationResult>>()
+        {
+            @Override
+            public List<PasswordBatch.OperationResult> call()
+            {
+                return applyBatch(batch);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #importPasswords(Reader, PasswordFormat)}. The reader must not be used by
+     * anything else until the returned future completes.
+     *
+     * @param reader Reader to import from. Cannot be {@code null}. Not closed by this method.
+     * @param format Format of the input. Cannot be {@code null}.
+     * @return A future which completes once the imported passwords have been saved, with the number imported, or
+     *         fails with the cause if they could not be read or saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code reader} or {@code format} is {@code null}.
+     */
+    public ListenableFuture<Integer> importPasswordsAsync(final Reader reader, final PasswordFormat format)
+    {
+        Preconditions.checkNotNull(reader, "reader cannot be null.");
+        Preconditions.checkNotNull(format, "format cannot be null.");
+
+        return submitAndSave(new Callable<Integer>()
+        {
+            @Override
+            public Integer call() throws IOException
+            {
+                return importPasswords(reader, format);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #importPasswords(Reader, JsonImportLayout)}. The reader must not be used by
+     * anything else until the returned future completes.
+     *
+     * @param reader Reader to import from. Cannot be {@code null}. Not closed by this method.
+     * @param layout Where the entries, application names and passwords are. Cannot be {@code null}.
+     * @return A future which completes once the imported passwords have been saved, with the number imported, or
+     *         fails with the cause if they could not be read or saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code reader} or {@code layout} is {@code null}.
+     */
+    public ListenableFuture<Integer> importPasswordsAsync(final Reader reader, final JsonImportLayout layout)
+    {
+        Preconditions.checkNotNull(reader, "reader cannot be null.");
+        Preconditions.checkNotNull(layout, "layout cannot be null.");
+
+        return submitAndSave(new Callable<Integer>()
+        {
+            @Override
+            public Integer call() throws IOException
+            {
+                return importPasswords(reader, layout);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #exportPasswords(Writer, PasswordFormat)}. The writer must not be used by
+     * anything else until the returned future completes.
+     *
+     * @param writer Writer to export to. Cannot be {@code null}. Not closed by this method.
+     * @param format Format of the output. Cannot be {@code null}.
+     * @return A future which completes with the number of passwords exported, or fails with the cause if they could
+     *         not be written. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code writer} or {@code format} is {@code null}.
+     */
+    public ListenableFuture<Integer> exportPasswordsAsync(final Writer writer, final PasswordFormat format)
+    {
+        Preconditions.checkNotNull(writer, "writer cannot be null.");
+        Preconditions.checkNotNull(format, "format cannot be null.");
+
+        return submit(new Callable<Integer>()
+        {
+            @Override
+            public Integer call() throws IOException
+            {
+                return exportPasswords(writer, format);
+            }
+        }, options.getAsyncExecutor());
+    }
+
+    /**
+     * Asynchronous version of {@link #changeMasterPassword(String)}.
+     *
+     * @param newMasterPassword New plaintext master password to use. Cannot be {@code null}.
+     * @return A future which completes once every password has been saved under the new master password, or fails
+     *         with the cause if they could not be saved. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code newMasterPassword} is {@code null}.
+     */
+    public ListenableFuture<Void> changeMasterPasswordAsync(final String newMasterPassword)
+    {
+        Preconditions.checkNotNull(newMasterPassword, "newMasterPassword cannot be null.");
+
+        return submitAndSave(new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                changeMasterPassword(newMasterPassword);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Run an operation on an executor.
+     *
+     * @param operation Operation to run.
+     * @param executor Executor to run it on.
+     * @return A future which completes with the result of the operation.
+     */
+    private static <T> ListenableFuture<T> submit(Callable<T> operation, Executor executor)
+    {
+        ListenableFutureTask<T> task = ListenableFutureTask.create(operation);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Run an operation which may change passwords on the {@link PasswordManagerOptions#getAsyncExecutor() async
+     * executor}, completing once everything changed by the time it finished has been saved.
+     *
+     * @param operation Operation to run.
+     * @return A future which completes with the result of the operation once its changes are saved, or fails with
+     *         the cause if the operation or the save fails.
+     */
+    private <T> ListenableFuture<T> submitAndSave(Callable<T> operation)
+    {
+        return Futures.transformAsync(submit(operation, options.getAsyncExecutor()), new AsyncFunction<T, T>()
+        {
+            @Override
+            public ListenableFuture<T> apply(T result)
+            {
+                return Futures.transform(saveScheduler.whenSaved(), Functions.constant(result),
+                    MoreExecutors.directExecutor());
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Generate a new vault key with a fresh salt, recording the time taken.
+     *
+     * @param masterPassword Plaintext master password.
+     * @return The new key.
+     */
+    private VaultKey generateKey(String masterPassword)
+    {
+        long startNanos = System.nanoTime();
+        VaultKey key = VaultKey.generate(masterPassword);
+        metrics.recordTime(PasswordMetricsListener.Timer.KEY_DERIVATION, System.nanoTime() - startNanos);
+        return key;
+    }
+
+    /**
+     * Derive the vault key of an existing vault, recording the time taken.
+     *
+     * @param masterPassword Plaintext master password.
+     * @param header Header of the vault.
+     * @return The key.
+     *
+     * @throws EncryptionOperationNotPossibleException if the {@code masterPassword} is not correct.
+     */
+    private VaultKey deriveKey(String masterPassword, VaultHeader header)
+        throws EncryptionOperationNotPossibleException
+    {
+        long startNanos = System.nanoTime();
+        VaultKey key = VaultKey.derive(masterPassword, header);
+        metrics.recordTime(PasswordMetricsListener.Timer.KEY_DERIVATION, System.nanoTime() - startNanos);
+        return key;
+    }
+
+    /**
+     * Encrypt a single entry, recording the time taken.
+     *
+     * @param key Key to encrypt with.
+     * @param applicationName Plaintext application name.
+     * @param password Plaintext password.
+     * @return The encrypted entry.
+     */
+    private EncryptedEntry encryptEntry(VaultKey key, String applicationName, String password)
+    {
+        long startNanos = System.nanoTime();
+        byte[] encryptedApplication = key.encryptApplication(applicationName);
+        EncryptedEntry encryptedEntry =
+            new EncryptedEntry(encryptedApplication, key.encryptPassword(password, encryptedApplication));
+        metrics.recordTime(PasswordMetricsListener.Timer.ENCRYPT, System.nanoTime() - startNanos);
+        return encryptedEntry;
+    }
+
+    /**
+     * Decrypt a single application name, recording the time taken.
+     *
+     * @param key Key to decrypt with.
+     * @param ciphertext Encrypted application name.
+     * @return The plaintext application name.
+     *
+     * @throws EncryptionOperationNotPossibleException if {@code key} is not the key {@code ciphertext} was
+     *         encrypted with.
+     */
+    private String decryptApplication(VaultKey key, byte[] ciphertext) throws EncryptionOperationNotPossibleException
+    {
+        long startNanos = System.nanoTime();
+        String plaintext = key.decryptApplication(ciphertext);
+        metrics.recordTime(PasswordMetricsListener.Timer.DECRYPT, System.nanoTime() - startNanos);
+        return plaintext;
+    }
+
+    /**
+     * Decrypt the password of a single entry, recording the time taken.
+     *
+     * @param key Key to decrypt with.
+     * @param encryptedEntry Entry holding the password.
+     * @return The plaintext password.
+     *
+     * @throws EncryptionOperationNotPossibleException if {@code key} is not the key the entry was encrypted with,
+     *         or its password belongs to another entry.
+     */
+    private String decryptPassword(VaultKey key, EncryptedEntry encryptedEntry)
+        throws EncryptionOperationNotPossibleException
+    {
+        long startNanos = System.nanoTime();
+        String plaintext =
+            key.decryptPassword(encryptedEntry.getEncryptedPassword(), encryptedEntry.getEncryptedApplication());
+        metrics.recordTime(PasswordMetricsListener.Timer.DECRYPT, System.nanoTime() - startNanos);
+        return plaintext;
+    }
+
+    /**
+     * Get the plaintext password for the provided application, decrypting it if necessary. Needs no lock.
+     *
+     * @param applicationName Application for which to get the password.
+     * @return The plaintext password for the provided application, or {@code null} if there is no password stored.
+     */
+    private String plaintextPassword(String applicationName)
+    {
+        PasswordEntry passwordEntry = passwordsByApplication.get(applicationName);
+        if (passwordEntry == null)
+        {
+            return null;
+        }
+        if (passwordEntry.plaintext != null)
+        {
+            return passwordEntry.plaintext;
+        }
+
+        // Cached by entry rather than application, so a plaintext decrypted from an entry that has since been
+        // replaced can never be returned for its replacement.
+        String plaintext = plaintextPasswords.getIfPresent(passwordEntry.encryptedEntry);
+        if (plaintext == null)
+        {
+            plaintext = decryptPassword(passwordEntry.key, passwordEntry.encryptedEntry);
+            plaintextPasswords.put(passwordEntry.encryptedEntry, plaintext);
+        }
+        return plaintext;
+    }
+
+    /**
+     * Get the generator for new passwords of the provided application, following its password policy.
+     *
+     * @param applicationName Application to generate a password for.
+     * @return The generator.
+     */
+    private RandomPasswordGenerator passwordGenerator(String applicationName)
+    {
+        RandomPasswordGenerator generator = passwordGeneratorsByApplication.get(applicationName);
+        return generator != null ? generator : defaultPasswordGenerator;
+    }
+
+    /**
+     * Get the total size of the saved entries, for tracing.
+     *
+     * @return The number of encrypted bytes in the saved entries.
+     */
+    private long encryptedSize()
+    {
+        long size = 0;
+        for (PasswordEntry passwordEntry : passwordsByApplication.values())
+        {
+            if (!passwordEntry.isPending())
+            {
+                size += encryptedSize(passwordEntry.encryptedEntry);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the total size of the provided entries, for tracing.
+     *
+     * @param entries Encrypted entries.
+     * @return The number of encrypted bytes in {@code entries}.
+     */
+    private static long encryptedSize(List<EncryptedEntry> entries)
+    {
+        long size = 0;
+        for (EncryptedEntry entry : entries)
+        {
+            size += encryptedSize(entry);
+        }
+        return size;
+    }
+
+    /**
+     * Get the size of the provided entry, for tracing.
+     *
+     * @param entry Encrypted entry.
+     * @return The number of encrypted bytes in {@code entry}.
+     */
+    private static long encryptedSize(EncryptedEntry entry)
+    {
+        return entry.getEncryptedApplication().length + entry.getEncryptedPassword().length;
+    }
+
+    /**
+     * Make sure this manager hasn't been closed. Callers must hold a lock of {@link #passwordsLock}.
+     *
+     * @throws IllegalStateException if this manager has been closed.
+     */
+    private void checkOpen()
+    {
+        Preconditions.checkState(!closed, "PasswordManager is closed.");
+    }
+
+    /**
+     * Take the locks needed to change a single application.
+     *
+     * @param applicationName Application to change.
+     * @return The application's lock, to pass to {@link #unlockApplication(Lock)}.
+     *
+     * @throws IllegalStateException if this manager has been closed.
+     */
+    private Lock lockApplication(String applicationName)
+    {
+        passwordsLock.readLock().lock();
+        try
+        {
+            checkOpen();
+        }
+        catch (IllegalStateException e)
+        {
+            passwordsLock.readLock().unlock();
+            throw e;
+        }
+        Lock applicationLock = applicationLocks.get(applicationName);
+        applicationLock.lock();
+        return applicationLock;
+    }
+
+    /**
+     * Release the locks taken by {@link #lockApplication(String)}.
+     *
+     * @param applicationLock The application's lock.
+     */
+    private void unlockApplication(Lock applicationLock)
+    {
+        applicationLock.unlock();
+        passwordsLock.readLock().unlock();
+    }
+
+    /**
+     * Store the provided password, marking the entry as changed so the next save encrypts it. Callers must hold
+     * the locks from {@link #lockApplication(String)}, or the write lock of {@link #passwordsLock}.
+     *
+     * @param applicationName Application for which to store the password.
+     * @param password Plaintext password to store.
+     */
+    private void putPassword(String applicationName, String password)
+    {
+        putEntry(applicationName, PasswordEntry.pending(password));
+    }
+
+    /**
+     * Store an imported password which has already been encrypted, marking the entry as changed so the next save
+     * writes it.
+     *
+     * @param record Imported application and password.
+     * @param encryptedEntry {@code record}, encrypted.
+     * @param key Key {@code encryptedEntry} was encrypted with.
+     */
+    private void putImportedPassword(PasswordRecord record, EncryptedEntry encryptedEntry, VaultKey key)
+    {
+        String applicationName = record.getApplicationName();
+        Lock applicationLock = lockApplication(applicationName);
+        try
+        {
+            // The master password can't change while we hold the lock, but may have changed during the import.
+            if (key == vaultKey)
+            {
+                putEntry(applicationName,
+                    PasswordEntry.saved(encryptedEntry, key, options.isLazyDecryption() ? null : record.getPassword()));
+            }
+            else
+            {
+                putPassword(applicationName, record.getPassword());
+            }
+        }
+        finally
+        {
+            unlockApplication(applicationLock);
+        }
+    }
+
+    /**
+     * Store the provided entry, marking it as changed so the next save writes it. Callers must hold the locks from
+     * {@link #lockApplication(String)}, or the write lock of {@link #passwordsLock}.
+     *
+     * @param applicationName Application for which to store the entry.
+     * @param passwordEntry Entry to store.
+     */
+    private void putEntry(String applicationName, PasswordEntry passwordEntry)
+    {
+        if (passwordsByApplication.put(applicationName, passwordEntry) == null)
+        {
+            applicationIndex.add(applicationName);
+            applicationsVersion.incrementAndGet();
+        }
+        removedApplications.remove(applicationName);
+        pendingApplications.add(applicationName);
+        metrics.increment(PasswordMetricsListener.Counter.MUTATION);
+    }
+
+    /**
+     * Remove the provided application's password, marking it as deleted so the next save removes it. Callers must
+     * hold the locks from {@link #lockApplication(String)}, or the write lock of {@link #passwordsLock}.
+     *
+     * @param applicationName Application for which to remove the password.
+     * @return {@code true} if the application had a password, {@code false} otherwise.
+     */
+    private boolean removePassword(String applicationName)
+    {
+        if (passwordsByApplication.remove(applicationName) == null)
+        {
+            return false;
+        }
+        applicationIndex.remove(applicationName);
+        pendingApplications.remove(applicationName);
+        removedApplications.add(applicationName);
+        applicationsVersion.incrementAndGet();
+        metrics.increment(PasswordMetricsListener.Counter.MUTATION);
+        return true;
+    }
+
+    /**
+     * Encrypt every entry changed since the last save, leaving unchanged entries and entries already encrypted with
+     * the current key untouched, and collect the changes to save. Callers must hold the write lock of
+     * {@link #passwordsLock}.
+     *
+     * @return The changes since the last save. Never {@code null}.
+     */
+    private VaultChanges collectChanges()
+    {
+        VaultKey key = vaultKey;
+        boolean keepPlaintext = !options.isLazyDecryption();
+        List<EncryptedEntry> updatedEntries = Lists.newArrayListWithCapacity(pendingApplications.size());
+        for (String application : pendingApplications)
+        {
+            PasswordEntry passwordEntry = passwordsByApplication.get(application);
+            if (passwordEntry.key == key)
+            {
+                // Encrypted when it was imported.
+                updatedEntries.add(passwordEntry.encryptedEntry);
+                continue;
+            }
+            String plaintext = passwordEntry.plaintext;
+            EncryptedEntry encryptedEntry = encryptEntry(key, application, plaintext);
+            passwordsByApplication.put(application,
+                PasswordEntry.saved(encryptedEntry, key, keepPlaintext ? plaintext : null));
+            if (!keepPlaintext)
+            {
+                // It was just used, so keep it handy.
+                plaintextPasswords.put(encryptedEntry, plaintext);
+            }
+            updatedEntries.add(encryptedEntry);
+        }
+        pendingApplications.clear();
+
+        List<byte[]> removedEntries = Lists.newArrayListWithCapacity(removedApplications.size());
+        for (String application : removedApplications)
+        {
+            removedEntries.add(key.encryptApplication(application));
+        }
+        removedApplications.clear();
+
+        if (fullRewriteRequired)
+        {
+            fullRewriteRequired = false;
+            return VaultChanges.fullRewrite();
+        }
+        return VaultChanges.of(updatedEntries, removedEntries);
+    }
+
+    /**
+     * Task to encrypt and store the current password map to disk. Run by {@link #saveScheduler}, which merges
+     * bursts of changes into a single run.
+     * <p>
+     * Only entries changed since the last save are encrypted; every other entry is written from its existing
+     * ciphertext.
+     */
+    private final class StorePasswordTask implements Callable<Void>
+    {
+        @Override
+        public Void call() throws IOException
+        {
+            PasswordTracer.Span span = tracer.begin(PasswordTracer.Operation.SAVE);
+            List<EncryptedEntry> entries = ImmutableList.of();
+            boolean saved = false;
+            try
+            {
+                VaultChanges changes;
+                EncryptedVault vault;
+                passwordsLock.writeLock().lock();
+                try
+                {
+                    changes = collectChanges();
+                    entries = Lists.newArrayListWithCapacity(passwordsByApplication.size());
+                    for (PasswordEntry passwordEntry : passwordsByApplication.values())
+                    {
+                        entries.add(passwordEntry.encryptedEntry);
+                    }
+                    vault = new EncryptedVault(vaultKey.getHeader(), entries);
+                }
+                finally
+                {
+                    passwordsLock.writeLock().unlock();
+                }
+
+                // Changes made while the file is written are saved by the next run.
+                try
+                {
+                    passwordDatastore.store(vault, changes);
+                    saved = true;
+                    LOGGER.info("Encrypted passwords saved to file.");
+                    return null;
+                }
+                catch (IOException e)
+                {
+                    // The changes collected for this save are gone, so make sure the next save writes everything.
+                    fullRewriteRequired = true;
+                    metrics.increment(PasswordMetricsListener.Counter.FAILED_SAVE);
+                    throw e;
+                }
+            }
+            finally
+            {
+                if (span != PasswordTracer.Span.NONE)
+                {
+                    span.end(entries.size(), encryptedSize(entries), saved);
+                }
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the application names, along with the version of the applications it was taken at.
+     */
+    private static final class ApplicationsSnapshot
+    {
+        /** Value of {@link PasswordManager#applicationsVersion} the snapshot was taken at. */
+        private final long version;
+
+        /** Unmodifiable list of the application names. */
+        private final List<String> applications;
+
+        /**
+         * Create a new {@link ApplicationsSnapshot}.
+         *
+         * @param version Value of {@link PasswordManager#applicationsVersion} the snapshot was taken at.
+         * @param applications Unmodifiable list of the application names.
+         */
+        private ApplicationsSnapshot(long version, List<String> applications)
+        {
+            this.version = version;
+            this.applications = applications;
+        }
+    }
+
+    /**
+     * Immutable state of a single application's password.
+     */
+    private static final class PasswordEntry
+    {
+        /** Encrypted entry, or {@code null} if the password has not been encrypted since it last changed. */
+        private final EncryptedEntry encryptedEntry;
+
+        /** Key {@link #encryptedEntry} was encrypted with, or {@code null} if it is {@code null}. */
+        private final VaultKey key;
+
+        /** Plaintext password, or {@code null} if it has not been decrypted. */
+        private final String plaintext;
+
+        /**
+         * Create a new {@link PasswordEntry}.
+         *
+         * @param encryptedEntry Encrypted entry, or {@code null} if the password changed since the last save.
+         * @param key Key {@code encryptedEntry} was encrypted with.
+         * @param plaintext Plaintext password, or {@code null} if it has not been decrypted.
+         */
+        private PasswordEntry(EncryptedEntry encryptedEntry, VaultKey key, String plaintext)
+        {
+            this.encryptedEntry = encryptedEntry;
+            this.key = key;
+            this.plaintext = plaintext;
+        }
+
+        /**
+         * Create an entry for a password that has been saved.
+         *
+         * @param encryptedEntry Encrypted entry.
+         * @param key Key {@code encryptedEntry} was encrypted with.
+         * @param plaintext Plaintext password, or {@code null} if it has not been decrypted.
+         * @return The entry.
+         */
+        private static PasswordEntry saved(EncryptedEntry encryptedEntry, VaultKey key, String plaintext)
+        {
+            return new PasswordEntry(encryptedEntry, key, plaintext);
+        }
+
+        /**
+         * Create an entry for a password that changed since the last save.
+         *
+         * @param plaintext Plaintext password.
+         * @return The entry.
+         */
+        private static PasswordEntry pending(String plaintext)
+        {
+            return new PasswordEntry(null, null, plaintext);
+        }
+
+        /**
+         * Get whether the password changed since the last save.
+         *
+         * @return {@code true} if the password changed since the last save, {@code false} otherwise.
+         */
+        private boolean isPending()
+        {
+            return encryptedEntry == null;
+        }
     }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Exposes a {@link PasswordManager} and its {@link PasswordMetrics} over JMX, as a {@link PasswordManagerMXBean}.
+ * <p>
+ * Optional: nothing else in this package refers to JMX, so this class is never loaded on platforms without it,
+ * such as Android.
+ */
+public final class PasswordManagerJmx
+{
+    /** Domain of the registered object names. */
+    public static final String DOMAIN = "com.rtoth.password";
+
+    private PasswordManagerJmx()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Register a password manager with the platform MBean server.
+     *
+     * @param passwordManager Password manager to expose. Cannot be {@code null}.
+     * @param metrics Metrics recorded for it, usually its {@link PasswordManagerOptions#getMetricsListener()}.
+     *                Cannot be {@code null}.
+     * @param name Name distinguishing it from other registered password managers. Cannot be {@code null}.
+     * @return Object name it was registered under, to pass to {@link #unregister(ObjectName)}. Never {@code null}.
+     *
+     * @throws JMException if it cannot be registered, for example because the name is already registered.
+     * @throws NullPointerException if any argument is {@code null}.
+     */
+    public static ObjectName register(PasswordManager passwordManager, PasswordMetrics metrics, String name)
+        throws JMException
+    {
+        Preconditions.checkNotNull(passwordManager, "passwordManager cannot be null.");
+        Preconditions.checkNotNull(metrics, "metrics cannot be null.");
+        Preconditions.checkNotNull(name, "name cannot be null.");
+
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=PasswordManager,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(passwordManager, metrics), objectName);
+        return objectName;
+    }
+
+    /**
+     * Unregister a password manager from the platform MBean server.
+     *
+     * @param objectName Object name returned by {@link #register(PasswordManager, PasswordMetrics, String)}.
+     *                   Cannot be {@code null}.
+     *
+     * @throws JMException if it is not registered.
+     * @throws NullPointerException if {@code objectName} is {@code null}.
+     */
+    public static void unregister(ObjectName objectName) throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+            Preconditions.checkNotNull(objectName, "objectName cannot be null."));
+    }
+
+    /**
+     * {@link PasswordManagerMXBean} reading from a password manager and its metrics.
+     */
+    private static final class Bean implements PasswordManagerMXBean
+    {
+        /** Nanoseconds per millisecond. */
+        private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+        /** The password manager. */
+        private final PasswordManager passwordManager;
+
+        /** Metrics recorded for it. */
+        private final PasswordMetrics metrics;
+
+        /**
+         * Create a new {@link Bean}.
+         *
+         * @param passwordManager The password manager.
+         * @param metrics Metrics recorded for it.
+         */
+        private Bean(PasswordManager passwordManager, PasswordMetrics metrics)
+        {
+            this.passwordManager = passwordManager;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int getPasswordCount()
+        {
+            return passwordManager.getPasswordCount();
+        }
+
+        @Override
+        public int getUnsavedChangeCount()
+        {
+            return passwordManager.getUnsavedChangeCount();
+        }
+
+        @Override
+        public Map<String, Long> getCounters()
+        {
+            ImmutableMap.Builder<String, Long> counters = ImmutableMap.builder();
+            for (PasswordMetricsListener.Counter counter : PasswordMetricsListener.Counter.values())
+            {
+                counters.put(counter.name(), metrics.getCount(counter));
+            }
+            return counters.build();
+        }
+
+        @Override
+        public Map<String, Long> getTimerCounts()
+        {
+            ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+            for (PasswordMetricsListener.Timer timer : PasswordMetricsListener.Timer.values())
+            {
+                counts.put(timer.name(), metrics.getCount(timer));
+            }
+            return counts.build();
+        }
+
+        @Override
+        public Map<String, Double> getTimerMeanMillis()
+        {
+            ImmutableMap.Builder<String, Double> means = ImmutableMap.builder();
+            for (PasswordMetricsListener.Timer timer : PasswordMetricsListener.Timer.values())
+            {
+                long count = metrics.getCount(timer);
+                means.put(timer.name(), count == 0 ? 0 :
+                    metrics.getTotalTime(timer, TimeUnit.NANOSECONDS) / NANOS_PER_MILLI / count);
+            }
+            return means.build();
+        }
+
+        @Override
+        public Map<String, Double> getTimerMaxMillis()
+        {
+            ImmutableMap.Builder<String, Double> maximums = ImmutableMap.builder();
+            for (PasswordMetricsListener.Timer timer : PasswordMetricsListener.Timer.values())
+            {
+                maximums.put(timer.name(), metrics.getMaxTime(timer, TimeUnit.NANOSECONDS) / NANOS_PER_MILLI);
+            }
+            return maximums.build();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import java.util.Map;
+
+/**
+ * Management interface of a {@link PasswordManager} and its {@link PasswordMetrics}, registered with
+ * {@link PasswordManagerJmx#register(PasswordManager, PasswordMetrics, String)}.
+ * <p>
+ * Timers and counters are keyed by the names of {@link PasswordMetricsListener.Timer} and
+ * {@link PasswordMetricsListener.Counter} constants.
+ */
+public interface PasswordManagerMXBean
+{
+    /**
+     * Get the number of applications with passwords.
+     *
+     * @return The number of applications with passwords.
+     */
+    int getPasswordCount();
+
+    /**
+     * Get the number of changes waiting to be saved.
+     *
+     * @return The number of unsaved changes.
+     */
+    int getUnsavedChangeCount();
+
+    /**
+     * Get the total of each counter.
+     *
+     * @return The total of each counter, by name.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Get the number of times each operation has been timed.
+     *
+     * @return The number of times each operation has been timed, by name.
+     */
+    Map<String, Long> getTimerCounts();
+
+    /**
+     * Get the mean time taken by each operation.
+     *
+     * @return The mean time taken by each operation in milliseconds, by name.
+     */
+    Map<String, Double> getTimerMeanMillis();
+
+    /**
+     * Get the longest time taken by each operation.
+     *
+     * @return The longest time taken by each operation in milliseconds, by name.
+     */
+    Map<String, Double> getTimerMaxMillis();
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tuning options for a {@link PasswordManager}.
+ * <p>
+ * Instances are immutable; use {@link #builder()} to create one, or {@link #defaults()} for sensible defaults.
+ */
+public final class PasswordManagerOptions
+{
+    /** Default number of plaintext passwords cached when lazy decryption is enabled. */
+    public static final int DEFAULT_PLAINTEXT_CACHE_SIZE = 32;
+
+    /** Default quiet period after the latest change before saving, in milliseconds. */
+    public static final long DEFAULT_SAVE_DELAY_MILLIS = 100;
+
+    /** Default maximum time between the oldest unsaved change and saving, in milliseconds. */
+    public static final long DEFAULT_MAX_SAVE_DELAY_MILLIS = 1000;
+
+    /** Default maximum time to wait for unsaved changes to be saved on close, in milliseconds. */
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 10000;
+
+    /** Number of threads used to decrypt the vault on unlock. */
+    private final int parallelism;
+
+    /** Whether passwords are decrypted on first access rather than on unlock. */
+    private final boolean lazyDecryption;
+
+    /** Maximum number of plaintext passwords cached when lazy decryption is enabled. */
+    private final int plaintextCacheSize;
+
+    /** Quiet period after the latest change before saving, in nanoseconds. */
+    private final long saveDelayNanos;
+
+    /** Maximum time between the oldest unsaved change and saving, in nanoseconds. */
+    private final long maxSaveDelayNanos;
+
+    /** Maximum time to wait for unsaved changes to be saved on close, in nanoseconds. */
+    private final long closeTimeoutNanos;
+
+    /** Executor on which saves run, or {@code null} for each password manager to create its own. */
+    private final ScheduledExecutorService persistenceExecutor;
+
+    /** Policy for generated passwords of applications without their own policy. */
+    private final PasswordPolicy defaultPasswordPolicy;
+
+    /** Policies for generated passwords, by application. */
+    private final Map<String, PasswordPolicy> applicationPasswordPolicies;
+
+    /** Executor on which asynchronous operations run, or {@code null} to use the shared default. */
+    private final Executor asyncExecutor;
+
+    /** Receives timings and counts of the work done. */
+    private final PasswordMetricsListener metricsListener;
+
+    /** Traces individual slow operations. */
+    private final PasswordTracer tracer;
+
+    /**
+     * Create a new {@link PasswordManagerOptions} from the provided builder.
+     *
+     * @param builder Builder holding the option values.
+     */
+    private PasswordManagerOptions(Builder builder)
+    {
+        this.parallelism = builder.parallelism;
+        this.lazyDecryption = builder.lazyDecryption;
+        this.plaintextCacheSize = builder.plaintextCacheSize;
+        this.saveDelayNanos = builder.saveDelayNanos;
+        this.maxSaveDelayNanos = Math.max(builder.saveDelayNanos, builder.maxSaveDelayNanos);
+        this.closeTimeoutNanos = builder.closeTimeoutNanos;
+        this.persistenceExecutor = builder.persistenceExecutor;
+        this.defaultPasswordPolicy = builder.defaultPasswordPolicy;
+        this.applicationPasswordPolicies = ImmutableMap.copyOf(builder.applicationPasswordPolicies);
+        this.asyncExecutor = builder.asyncExecutor;
+        this.metricsListener = builder.metricsListener;
+        this.tracer = builder.tracer;
+    }
+
+    /**
+     * Get the default options.
+     *
+     * @return The default options. Never {@code null}.
+     */
+    public static PasswordManagerOptions defaults()
+    {
+        return builder().build();
+    }
+
+    /**
+     * Create a new builder, initialized with the default options.
+     *
+     * @return A new builder. Never {@code null}.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Get the number of threads used to decrypt the vault on unlock.
+     *
+     * @return The number of threads used to decrypt the vault on unlock. Always positive.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Get whether passwords are decrypted on first access rather than on unlock.
+     *
+     * @return {@code true} if only application names are decrypted on unlock, {@code false} if every password is
+     *         decrypted on unlock as well.
+     */
+    public boolean isLazyDecryption()
+    {
+        return lazyDecryption;
+    }
+
+    /**
+     * Get the maximum number of plaintext passwords cached when lazy decryption is enabled.
+     *
+     * @return The maximum number of plaintext passwords cached when lazy decryption is enabled. Always
+     *         non-negative; {@code 0} means passwords are decrypted on every access.
+     */
+    public int getPlaintextCacheSize()
+    {
+        return plaintextCacheSize;
+    }
+
+    /**
+     * Get the quiet period after the latest change before saving.
+     *
+     * @param unit Unit of the result. Cannot be {@code null}.
+     * @return The quiet period after the latest change before saving. Always non-negative.
+     */
+    public long getSaveDelay(TimeUnit unit)
+    {
+        return unit.convert(saveDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the maximum time between the oldest unsaved change and saving. Never less than
+     * {@link #getSaveDelay(TimeUnit)}.
+     *
+     * @param unit Unit of the result. Cannot be {@code null}.
+     * @return The maximum time between the oldest unsaved change and saving. Always non-negative.
+     */
+    public long getMaxSaveDelay(TimeUnit unit)
+    {
+        return unit.convert(maxSaveDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the maximum time {@link PasswordManager#close()} waits for unsaved changes to be saved.
+     *
+     * @param unit Unit of the result. Cannot be {@code null}.
+     * @return The maximum time to wait for unsaved changes to be saved on close. Always non-negative.
+     */
+    public long getCloseTimeout(TimeUnit unit)
+    {
+        return unit.convert(closeTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the executor on which saves run, if one is shared between password managers.
+     *
+     * @return The executor, or {@code null} if each password manager creates and shuts down its own.
+     */
+    public ScheduledExecutorService getPersistenceExecutor()
+    {
+        return persistenceExecutor;
+    }
+
+    /**
+     * Get the policy for generated passwords of applications without their own policy.
+     *
+     * @return The default password policy. Never {@code null}.
+     */
+    public PasswordPolicy getDefaultPasswordPolicy()
+    {
+        return defaultPasswordPolicy;
+    }
+
+    /**
+     * Get the policies for generated passwords of applications with their own policy.
+     *
+     * @return An unmodifiable map of password policies by application. Never {@code null}, but may be empty.
+     */
+    public Map<String, PasswordPolicy> getApplicationPasswordPolicies()
+    {
+        return applicationPasswordPolicies;
+    }
+
+    /**
+     * Get the executor on which asynchronous {@link PasswordManager} operations run.
+     *
+     * @return The executor. Never {@code null}.
+     */
+    public Executor getAsyncExecutor()
+    {
+        return asyncExecutor != null ? asyncExecutor : DefaultAsyncExecutor.INSTANCE;
+    }
+
+    /**
+     * Get the listener which receives timings and counts of the work done.
+     *
+     * @return The metrics listener. Never {@code null}.
+     */
+    public PasswordMetricsListener getMetricsListener()
+    {
+        return metricsListener;
+    }
+
+    /**
+     * Get the tracer of individual slow operations.
+     *
+     * @return The tracer. Never {@code null}.
+     */
+    public PasswordTracer getTracer()
+    {
+        return tracer;
+    }
+
+    /**
+     * Builder for {@link PasswordManagerOptions}.
+     */
+    public static final class Builder
+    {
+        /** Number of threads used to decrypt the vault on unlock. */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /** Whether passwords are decrypted on first access rather than on unlock. */
+        private boolean lazyDecryption = false;
+
+        /** Maximum number of plaintext passwords cached when lazy decryption is enabled. */
+        private int plaintextCacheSize = DEFAULT_PLAINTEXT_CACHE_SIZE;
+
+        /** Quiet period after the latest change before saving, in nanoseconds. */
+        private long saveDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SAVE_DELAY_MILLIS);
+
+        /** Maximum time between the oldest unsaved change and saving, in nanoseconds. */
+        private long maxSaveDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_SAVE_DELAY_MILLIS);
+
+        /** Maximum time to wait for unsaved changes to be saved on close, in nanoseconds. */
+        private long closeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CLOSE_TIMEOUT_MILLIS);
+
+        /** Executor on which saves run, or {@code null} for each password manager to create its own. */
+        private ScheduledExecutorService persistenceExecutor = null;
+
+        /** Policy for generated passwords of applications without their own policy. */
+        private PasswordPolicy defaultPasswordPolicy = PasswordPolicy.defaults();
+
+        /** Policies for generated passwords, by application. */
+        private final Map<String, PasswordPolicy> applicationPasswordPolicies = Maps.newLinkedHashMap();
+
+        /** Executor on which asynchronous operations run, or {@code null} to use the shared default. */
+        private Executor asyncExecutor = null;
+
+        /** Receives timings and counts of the work done. */
+        private PasswordMetricsListener metricsListener = PasswordMetricsListener.NONE;
+
+        /** Traces individual slow operations. */
+        private PasswordTracer tracer = PasswordTracer.NONE;
+
+        private Builder()
+        {
+            // Use PasswordManagerOptions.builder()
+        }
+
+        /**
+         * Set the number of threads used to decrypt the vault on unlock. Defaults to the number of available
+         * processors; use {@code 1} to decrypt on the calling thread only.
+         *
+         * @param parallelism Number of threads. Must be positive.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code parallelism} is not positive.
+         */
+        public Builder parallelism(int parallelism)
+        {
+            Preconditions.checkArgument(parallelism > 0, "parallelism must be positive.");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Set whether passwords are decrypted on first access rather than on unlock. Defaults to {@code false}.
+         * <p>
+         * When enabled, only application names are decrypted on unlock, and at most
+         * {@link #plaintextCacheSize(int)} plaintext passwords are kept in memory at a time.
+         *
+         * @param lazyDecryption Whether passwords are decrypted on first access.
+         * @return This builder.
+         */
+        public Builder lazyDecryption(boolean lazyDecryption)
+        {
+            this.lazyDecryption = lazyDecryption;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of plaintext passwords cached when lazy decryption is enabled. Defaults to
+         * {@link #DEFAULT_PLAINTEXT_CACHE_SIZE}. Ignored unless lazy decryption is enabled.
+         *
+         * @param plaintextCacheSize Maximum number of cached plaintext passwords. Must be non-negative; {@code 0}
+         *                           disables caching entirely.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code plaintextCacheSize} is negative.
+         */
+        public Builder plaintextCacheSize(int plaintextCacheSize)
+        {
+            Preconditions.checkArgument(plaintextCacheSize >= 0, "plaintextCacheSize must be non-negative.");
+            this.plaintextCacheSize = plaintextCacheSize;
+            return this;
+        }
+
+        /**
+         * Set the quiet period after the latest change before saving. Defaults to
+         * {@link #DEFAULT_SAVE_DELAY_MILLIS} milliseconds.
+         * <p>
+         * Changes made within this period of each other are saved together in a single write.
+         *
+         * @param saveDelay Quiet period. Must be non-negative.
+         * @param unit Unit of {@code saveDelay}. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code saveDelay} is negative.
+         * @throws NullPointerException if {@code unit} is {@code null}.
+         */
+        public Builder saveDelay(long saveDelay, TimeUnit unit)
+        {
+            Preconditions.checkArgument(saveDelay >= 0, "saveDelay must be non-negative.");
+            this.saveDelayNanos = Preconditions.checkNotNull(unit, "unit cannot be null.").toNanos(saveDelay);
+            return this;
+        }
+
+        /**
+         * Set the maximum time between the oldest unsaved change and saving, so a steady stream of changes cannot
+         * postpone a save indefinitely. Defaults to {@link #DEFAULT_MAX_SAVE_DELAY_MILLIS} milliseconds, and is
+         * never less than the save delay.
+         *
+         * @param maxSaveDelay Maximum delay. Must be non-negative.
+         * @param unit Unit of {@code maxSaveDelay}. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code maxSaveDelay} is negative.
+         * @throws NullPointerException if {@code unit} is {@code null}.
+         */
+        public Builder maxSaveDelay(long maxSaveDelay, TimeUnit unit)
+        {
+            Preconditions.checkArgument(maxSaveDelay >= 0, "maxSaveDelay must be non-negative.");
+            this.maxSaveDelayNanos = Preconditions.checkNotNull(unit, "unit cannot be null.").toNanos(maxSaveDelay);
+            return this;
+        }
+
+        /**
+         * Set the maximum time {@link PasswordManager#close()} waits for unsaved changes to be saved. Defaults to
+         * {@link #DEFAULT_CLOSE_TIMEOUT_MILLIS} milliseconds.
+         *
+         * @param closeTimeout Maximum time to wait. Must be non-negative.
+         * @param unit Unit of {@code closeTimeout}. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code closeTimeout} is negative.
+         * @throws NullPointerException if {@code unit} is {@code null}.
+         */
+        public Builder closeTimeout(long closeTimeout, TimeUnit unit)
+        {
+            Preconditions.checkArgument(closeTimeout >= 0, "closeTimeout must be non-negative.");
+            this.closeTimeoutNanos = Preconditions.checkNotNull(unit, "unit cannot be null.").toNanos(closeTimeout);
+            return this;
+        }
+
+        /**
+         * Set the executor on which saves run, so one executor can serve many password managers. By default each
+         * password manager creates its own single thread, and shuts it down on {@link PasswordManager#close()}.
+         * <p>
+         * A shared executor is never shut down by a password manager. Each password manager runs at most one save
+         * on it at a time.
+         *
+         * @param persistenceExecutor Executor. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code persistenceExecutor} is {@code null}.
+         */
+        public Builder persistenceExecutor(ScheduledExecutorService persistenceExecutor)
+        {
+            this.persistenceExecutor =
+                Preconditions.checkNotNull(persistenceExecutor, "persistenceExecutor cannot be null.");
+            return this;
+        }
+
+        /**
+         * Set the policy for generated passwords of applications without their own policy. Defaults to
+         * {@link PasswordPolicy#defaults()}.
+         *
+         * @param passwordPolicy Password policy. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code passwordPolicy} is {@code null}.
+         */
+        public Builder defaultPasswordPolicy(PasswordPolicy passwordPolicy)
+        {
+            this.defaultPasswordPolicy = Preconditions.checkNotNull(passwordPolicy, "passwordPolicy cannot be null.");
+            return this;
+        }
+
+        /**
+         * Set the policy for generated passwords of a single application, replacing any policy set for it before.
+         *
+         * @param applicationName Application the policy applies to. Cannot be {@code null}.
+         * @param passwordPolicy Password policy. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code applicationName} or {@code passwordPolicy} is {@code null}.
+         */
+        public Builder passwordPolicy(String applicationName, PasswordPolicy passwordPolicy)
+        {
+            Preconditions.checkNotNull(applicationName, "applicationName cannot be null.");
+            Preconditions.checkNotNull(passwordPolicy, "passwordPolicy cannot be null.");
+            applicationPasswordPolicies.put(applicationName, passwordPolicy);
+            return this;
+        }
+
+        /**
+         * Set the executor on which asynchronous {@link PasswordManager} operations, such as
+         * {@link PasswordManager#generatePasswordAsync(String)}, run. Defaults to a pool of daemon threads shared by
+         * every password manager, one per available processor.
+         *
+         * @param asyncExecutor Executor. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code asyncExecutor} is {@code null}.
+         */
+        public Builder asyncExecutor(Executor asyncExecutor)
+        {
+            this.asyncExecutor = Preconditions.checkNotNull(asyncExecutor, "asyncExecutor cannot be null.");
+            return this;
+        }
+
+        /**
+         * Set the listener which receives timings and counts of the work done by the password manager, and by the
+         * datastore it creates when given a file. Defaults to {@link PasswordMetricsListener#NONE}.
+         *
+         * @param metricsListener Metrics listener. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code metricsListener} is {@code null}.
+         */
+        public Builder metricsListener(PasswordMetricsListener metricsListener)
+        {
+            this.metricsListener = Preconditions.checkNotNull(metricsListener, "metricsListener cannot be null.");
+            return this;
+        }
+
+        /**
+         * Set the tracer of individual slow operations: unlocking, saving, changing the master password, and
+         * generating passwords. Defaults to {@link PasswordTracer#NONE}.
+         *
+         * @param tracer Tracer. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code tracer} is {@code null}.
+         */
+        public Builder tracer(PasswordTracer tracer)
+        {
+            this.tracer = Preconditions.checkNotNull(tracer, "tracer cannot be null.");
+            return this;
+        }
+
+        /**
+         * Build the options.
+         *
+         * @return The options. Never {@code null}.
+         */
+        public PasswordManagerOptions build()
+        {
+            return new PasswordManagerOptions(this);
+        }
+    }
+
+    /**
+     * Holds the default executor for asynchronous operations, so its threads are only started on first use.
+     */
+    private static final class DefaultAsyncExecutor
+    {
+        /** The default executor. */
+        private static final Executor INSTANCE = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactoryBuilder().setNameFormat("password-manager-async-%d").setDaemon(true).build());
+    }
+}
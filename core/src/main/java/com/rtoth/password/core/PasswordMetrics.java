@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link PasswordMetricsListener} which keeps the count, total and maximum time of each timer, and the total of
+ * each counter, since it was created.
+ * <p>
+ * Recording is lock-free and allocation-free, so one instance can be shared by any number of password managers.
+ * Counts and totals are striped across threads, so that concurrent lookups from many threads don't all contend on
+ * the same counter; reading one sums its stripes.
+ */
+public final class PasswordMetrics implements PasswordMetricsListener
+{
+    /** Every timer, so recording doesn't copy {@link Timer#values()}. */
+    private static final Timer[] TIMERS = Timer.values();
+
+    /** Every counter, so recording doesn't copy {@link Counter#values()}. */
+    private static final Counter[] COUNTERS = Counter.values();
+
+    /** Number of times each timer has been recorded, by ordinal. */
+    private final StripedCounters timerCounts = new StripedCounters(TIMERS.length);
+
+    /** Total time recorded by each timer, in nanoseconds, by ordinal. */
+    private final StripedCounters timerTotals = new StripedCounters(TIMERS.length);
+
+    /**
+     * Longest time recorded by each timer, in nanoseconds, by ordinal. Not striped: it is only written when a new
+     * maximum is recorded, which soon becomes rare.
+     */
+    private final AtomicLongArray timerMaximums = new AtomicLongArray(TIMERS.length);
+
+    /** Total of each counter, by ordinal. */
+    private final StripedCounters counters = new StripedCounters(COUNTERS.length);
+
+    @Override
+    public void recordTime(Timer timer, long nanos)
+    {
+        int index = timer.ordinal();
+        timerCounts.add(index, 1);
+        timerTotals.add(index, nanos);
+        long maximum = timerMaximums.get(index);
+        while (nanos > maximum && !timerMaximums.compareAndSet(index, maximum, nanos))
+        {
+            maximum = timerMaximums.get(index);
+        }
+    }
+
+    @Override
+    public void increment(Counter counter)
+    {
+        counters.add(counter.ordinal(), 1);
+    }
+
+    /**
+     * Get the number of times an operation has been timed.
+     *
+     * @param timer The operation. Cannot be {@code null}.
+     * @return The number of times it has been timed.
+     *
+     * @throws NullPointerException if {@code timer} is {@code null}.
+     */
+    public long getCount(Timer timer)
+    {
+        return timerCounts.sum(Preconditions.checkNotNull(timer, "timer cannot be null.").ordinal());
+    }
+
+    /**
+     * Get the total time taken by an operation.
+     *
+     * @param timer The operation. Cannot be {@code null}.
+     * @param unit Unit of the result. Cannot be {@code null}.
+     * @return The total time taken by every timed run of the operation.
+     *
+     * @throws NullPointerException if {@code timer} or {@code unit} is {@code null}.
+     */
+    public long getTotalTime(Timer timer, TimeUnit unit)
+    {
+        Preconditions.checkNotNull(timer, "timer cannot be null.");
+        Preconditions.checkNotNull(unit, "unit cannot be null.");
+        return unit.convert(timerTotals.sum(timer.ordinal()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the longest time taken by a single run of an operation.
+     *
+     * @param timer The operation. Cannot be {@code null}.
+     * @param unit Unit of the result. Cannot be {@code null}.
+     * @return The longest time taken, or {@code 0} if it has never been timed.
+     *
+     * @throws NullPointerException if {@code timer} or {@code unit} is {@code null}.
+     */
+    public long getMaxTime(Timer timer, TimeUnit unit)
+    {
+        Preconditions.checkNotNull(timer, "timer cannot be null.");
+        Preconditions.checkNotNull(unit, "unit cannot be null.");
+        return unit.convert(timerMaximums.get(timer.ordinal()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of times an event has happened.
+     *
+     * @param counter The event. Cannot be {@code null}.
+     * @return The number of times it has happened.
+     *
+     * @throws NullPointerException if {@code counter} is {@code null}.
+     */
+    public long getCount(Counter counter)
+    {
+        return counters.sum(Preconditions.checkNotNull(counter, "counter cannot be null.").ordinal());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+/**
+ * Receives timings and counts of the work done by a {@link PasswordManager} and its datastore, to find out where
+ * the time goes.
+ * <p>
+ * Methods are called on whichever thread did the work, including lookups on callers' threads, so implementations
+ * must be thread-safe, fast, and must not throw. Arguments are enum constants and primitives, so recording never
+ * allocates. {@link PasswordMetrics} is a ready-made implementation which keeps totals.
+ */
+public interface PasswordMetricsListener
+{
+    /** Listener which ignores everything. */
+    PasswordMetricsListener NONE = new PasswordMetricsListener()
+    {
+        @Override
+        public void recordTime(Timer timer, long nanos)
+        {
+            // Ignored
+        }
+
+        @Override
+        public void increment(Counter counter)
+        {
+            // Ignored
+        }
+    };
+
+    /**
+     * Timed operations.
+     */
+    enum Timer
+    {
+        /** Deriving the vault key from a master password, on unlock or when changing it. */
+        KEY_DERIVATION,
+
+        /** Encrypting a single entry. */
+        ENCRYPT,
+
+        /** Decrypting a single application name or password. */
+        DECRYPT,
+
+        /** Encoding changes or a complete vault into bytes for storage. */
+        SERIALIZE,
+
+        /** Writing encoded bytes to storage, forcing them to the device, and replacing the previous file. */
+        FILE_WRITE,
+
+        /** Opening a password manager: reading, deriving the key, and decrypting. */
+        UNLOCK
+    }
+
+    /**
+     * Counted events.
+     */
+    enum Counter
+    {
+        /** A password or application looked up. */
+        LOOKUP,
+
+        /** A single application's password added, changed, or removed. */
+        MUTATION,
+
+        /** A save which failed, and will be retried after a delay, or sooner on the next change or flush. */
+        FAILED_SAVE
+    }
+
+    /**
+     * Record how long an operation took.
+     *
+     * @param timer The operation.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    void recordTime(Timer timer, long nanos);
+
+    /**
+     * Record that an event happened.
+     *
+     * @param counter The event.
+     */
+    void increment(Counter counter);
+}
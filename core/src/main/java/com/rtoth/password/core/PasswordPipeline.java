@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams items from a source, through a transform run in parallel, to a sink, in the original order.
+ * <p>
+ * The source is read on its own thread and each item is transformed on a pool of worker threads, while the sink is
+ * fed on the calling thread. At most {@link #MAX_IN_FLIGHT} items are between the source and the sink at any time,
+ * so memory use does not grow with the number of items.
+ */
+final class PasswordPipeline
+{
+    /** Maximum number of items read from the source but not yet passed to the sink. */
+    static final int MAX_IN_FLIGHT = 1024;
+
+    /**
+     * Produces the items to process.
+     *
+     * @param <I> Type of item.
+     */
+    interface Source<I>
+    {
+        /**
+         * Get the next item.
+         *
+         * @return The next item, or {@code null} if there are no more.
+         *
+         * @throws IOException if there is a problem reading the item.
+         */
+        I next() throws IOException;
+    }
+
+    /**
+     * Consumes processed items.
+     *
+     * @param <O> Type of item.
+     */
+    interface Sink<O>
+    {
+        /**
+         * Consume the next item. Always called on the thread running the pipeline.
+         *
+         * @param item The item.
+         *
+         * @throws IOException if there is a problem consuming the item.
+         */
+        void accept(O item) throws IOException;
+    }
+
+    private PasswordPipeline()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Run every item from {@code source} through {@code transform} and into {@code sink}, returning once all are
+     * done. Items the transform maps to {@code null} are dropped.
+     *
+     * @param source Produces the items. Cannot be {@code null}.
+     * @param transform Transforms a single item. Will be called concurrently. Cannot be {@code null}.
+     * @param sink Consumes the transformed items, in source order. Cannot be {@code null}.
+     * @param parallelism Number of threads to run the transform on. Must be positive.
+     * @param <I> Type of source item.
+     * @param <O> Type of transformed item.
+     * @return Number of items passed to the sink.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive.
+     * @throws IOException if the source or sink fails, or the pipeline is interrupted.
+     * @throws NullPointerException if {@code source}, {@code transform} or {@code sink} is {@code null}.
+     * @throws RuntimeException if the transform fails; the first failure is propagated.
+     */
+    static <I, O> int run(final Source<I> source, final Function<? super I, ? extends O> transform, Sink<O> sink,
+                          int parallelism)
+        throws IOException
+    {
+        Preconditions.checkNotNull(source, "source cannot be null.");
+        Preconditions.checkNotNull(transform, "transform cannot be null.");
+        Preconditions.checkNotNull(sink, "sink cannot be null.");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive.");
+
+        final ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        final BlockingQueue<Future<? extends O>> results = new ArrayBlockingQueue<>(MAX_IN_FLIGHT);
+        final Future<O> end = Futures.immediateFuture(null);
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        try
+        {
+            Future<Void> reading = reader.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws IOException, InterruptedException
+                {
+                    try
+                    {
+                        I item;
+                        while (!stopped.get() && (item = source.next()) != null)
+                        {
+                            final I input = item;
+                            results.put(workers.submit(new Callable<O>()
+                            {
+                                @Override
+                                public O call()
+                                {
+                                    return transform.apply(input);
+                                }
+                            }));
+                        }
+                    }
+                    finally
+                    {
+                        // Also on failure, so the sink stops waiting and finds out why; unless the sink has already
+                        // stopped, in which case nothing would take it from a full queue.
+                        if (!stopped.get())
+                        {
+                            results.put(end);
+                        }
+                    }
+                    return null;
+                }
+            });
+
+            int count = 0;
+            Future<? extends O> result;
+            while ((result = results.take()) != end)
+            {
+                O item = result.get();
+                if (item != null)
+                {
+                    sink.accept(item);
+                    count++;
+                }
+            }
+            reading.get();
+            return count;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted running pipeline.");
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Pipeline stage failed.", e.getCause());
+        }
+        finally
+        {
+            // Free up the queue, so a reader blocked putting an item can see it should stop.
+            stopped.set(true);
+            results.clear();
+            reader.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+}
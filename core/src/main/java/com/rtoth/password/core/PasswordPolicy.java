@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Rules for the passwords generated by a {@link PolicyPasswordGenerator}: which characters may be used, how many
+ * of each class of characters are required, and the range of lengths.
+ * <p>
+ * Instances are immutable; use {@link #builder()} to create one, or {@link #defaults()} for any printable ASCII
+ * character. Each policy is compiled once, when built, into the character tables generation draws from.
+ */
+public final class PasswordPolicy
+{
+    /** Lowercase ASCII letters. */
+    public static final String LOWERCASE = "abcdefghijklmnopqrstuvwxyz";
+
+    /** Uppercase ASCII letters. */
+    public static final String UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** ASCII digits. */
+    public static final String DIGITS = "0123456789";
+
+    /** Printable ASCII symbols. */
+    public static final String SYMBOLS = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    /** Default minimum password length. */
+    public static final int DEFAULT_MIN_LENGTH = 20;
+
+    /** Default maximum password length. */
+    public static final int DEFAULT_MAX_LENGTH = 30;
+
+    /** Minimum password length. */
+    private final int minLength;
+
+    /** Maximum password length. */
+    private final int maxLength;
+
+    /** Every character which may be used, without duplicates, in ascending order. */
+    private final char[] alphabet;
+
+    /** Characters of each required class, without excluded characters. */
+    private final char[][] requiredClasses;
+
+    /** Number of characters required from each of {@link #requiredClasses}. */
+    private final int[] requiredCounts;
+
+    /**
+     * Create a new {@link PasswordPolicy} from the provided builder, compiling its character tables.
+     *
+     * @param builder Builder holding the policy.
+     * @param alphabet Every character which may be used, in ascending order.
+     */
+    private PasswordPolicy(Builder builder, char[] alphabet)
+    {
+        this.minLength = builder.minLength;
+        this.maxLength = builder.maxLength;
+        this.alphabet = alphabet;
+        List<char[]> classes = Lists.newArrayList();
+        List<Integer> counts = Lists.newArrayList();
+        for (int i = 0; i < builder.classes.size(); i++)
+        {
+            if (builder.minCounts.get(i) > 0)
+            {
+                classes.add(toChars(builder.classes.get(i), builder.excluded));
+                counts.add(builder.minCounts.get(i));
+            }
+        }
+        this.requiredClasses = classes.toArray(new char[classes.size()][]);
+        this.requiredCounts = new int[counts.size()];
+        for (int i = 0; i < requiredCounts.length; i++)
+        {
+            requiredCounts[i] = counts.get(i);
+        }
+    }
+
+    /**
+     * Get the default policy: {@value #DEFAULT_MIN_LENGTH} to {@value #DEFAULT_MAX_LENGTH} printable ASCII
+     * characters, with no required classes.
+     *
+     * @return The default policy. Never {@code null}.
+     */
+    public static PasswordPolicy defaults()
+    {
+        return builder().build();
+    }
+
+    /**
+     * Create a new builder, with the default length range and no character classes.
+     *
+     * @return A new builder. Never {@code null}.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Get the minimum password length.
+     *
+     * @return The minimum password length. Always positive.
+     */
+    public int getMinLength()
+    {
+        return minLength;
+    }
+
+    /**
+     * Get the maximum password length.
+     *
+     * @return The maximum password length. Never less than {@link #getMinLength()}.
+     */
+    public int getMaxLength()
+    {
+        return maxLength;
+    }
+
+    /**
+     * Get every character which may be used.
+     *
+     * @return The characters, without duplicates, in ascending order. Never empty.
+     */
+    public String getAlphabet()
+    {
+        return new String(alphabet);
+    }
+
+    /**
+     * Get the compiled table of every character which may be used. Must not be modified.
+     *
+     * @return The characters, without duplicates, in ascending order.
+     */
+    char[] alphabet()
+    {
+        return alphabet;
+    }
+
+    /**
+     * Get the compiled tables of the characters of each required class. Must not be modified.
+     *
+     * @return The characters of each required class.
+     */
+    char[][] requiredClasses()
+    {
+        return requiredClasses;
+    }
+
+    /**
+     * Get the number of characters required from each of {@link #requiredClasses()}. Must not be modified.
+     *
+     * @return The number of characters required from each class.
+     */
+    int[] requiredCounts()
+    {
+        return requiredCounts;
+    }
+
+    /**
+     * Get the distinct characters of the provided string, leaving out excluded characters.
+     *
+     * @param characters Characters to use.
+     * @param excluded Characters to leave out.
+     * @return The characters, in ascending order.
+     */
+    private static char[] toChars(String characters, BitSet excluded)
+    {
+        BitSet included = new BitSet();
+        for (int i = 0; i < characters.length(); i++)
+        {
+            included.set(characters.charAt(i));
+        }
+        included.andNot(excluded);
+
+        char[] chars = new char[included.cardinality()];
+        int index = 0;
+        for (int c = included.nextSetBit(0); c >= 0; c = included.nextSetBit(c + 1))
+        {
+            chars[index++] = (char) c;
+        }
+        return chars;
+    }
+
+    /**
+     * Builder for {@link PasswordPolicy}.
+     */
+    public static final class Builder
+    {
+        /** Minimum password length. */
+        private int minLength = DEFAULT_MIN_LENGTH;
+
+        /** Maximum password length. */
+        private int maxLength = DEFAULT_MAX_LENGTH;
+
+        /** Characters of each class. */
+        private final List<String> classes = Lists.newArrayList();
+
+        /** Number of characters required from each of {@link #classes}. */
+        private final List<Integer> minCounts = Lists.newArrayList();
+
+        /** Characters which may never be used. */
+        private final BitSet excluded = new BitSet();
+
+        private Builder()
+        {
+            // Use PasswordPolicy.builder()
+        }
+
+        /**
+         * Set the range of password lengths. Defaults to {@value #DEFAULT_MIN_LENGTH} to
+         * {@value #DEFAULT_MAX_LENGTH}.
+         *
+         * @param minLength Minimum length. Must be positive, and at least the total number of required characters.
+         * @param maxLength Maximum length. Must be at least {@code minLength}, and at most
+         *                  {@link AsciiPasswordGenerator#ABSOLUTE_MAX_CHARS}.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code minLength} or {@code maxLength} is out of range.
+         */
+        public Builder length(int minLength, int maxLength)
+        {
+            Preconditions.checkArgument(minLength > 0, "minLength must be positive.");
+            Preconditions.checkArgument(maxLength >= minLength, "maxLength must be >= minLength.");
+            Preconditions.checkArgument(maxLength <= AsciiPasswordGenerator.ABSOLUTE_MAX_CHARS,
+                "maxLength must be <= " + AsciiPasswordGenerator.ABSOLUTE_MAX_CHARS);
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            return this;
+        }
+
+        /**
+         * Allow a class of characters, such as {@link #LOWERCASE}, requiring at least {@code minCount} of them in
+         * every password. If no classes are added, every printable ASCII character is allowed.
+         *
+         * @param characters Characters of the class. Cannot be {@code null} or empty.
+         * @param minCount Number of characters required from the class. Must be non-negative; {@code 0} allows the
+         *                 class without requiring it.
+         * @return This builder.
+         *
+         * @throws IllegalArgumentException if {@code characters} is empty, or {@code minCount} is negative.
+         * @throws NullPointerException if {@code characters} is {@code null}.
+         */
+        public Builder characters(String characters, int minCount)
+        {
+            Preconditions.checkNotNull(characters, "characters cannot be null.");
+            Preconditions.checkArgument(!characters.isEmpty(), "characters cannot be empty.");
+            Preconditions.checkArgument(minCount >= 0, "minCount must be non-negative.");
+            classes.add(characters);
+            minCounts.add(minCount);
+            return this;
+        }
+
+        /**
+         * Never use the provided characters, even if they belong to an allowed class.
+         *
+         * @param characters Characters to exclude. Cannot be {@code null}.
+         * @return This builder.
+         *
+         * @throws NullPointerException if {@code characters} is {@code null}.
+         */
+        public Builder exclude(String characters)
+        {
+            Preconditions.checkNotNull(characters, "characters cannot be null.");
+            for (int i = 0; i < characters.length(); i++)
+            {
+                excluded.set(characters.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Build and compile the policy.
+         *
+         * @return The policy. Never {@code null}.
+         *
+         * @throws IllegalArgumentException if the required characters don't fit in the minimum length, a required
+         *         class has only excluded characters, or every character is excluded.
+         */
+        public PasswordPolicy build()
+        {
+            StringBuilder allowed = new StringBuilder();
+            int requiredTotal = 0;
+            if (classes.isEmpty())
+            {
+                allowed.append(LOWERCASE).append(UPPERCASE).append(DIGITS).append(SYMBOLS);
+            }
+            for (int i = 0; i < classes.size(); i++)
+            {
+                allowed.append(classes.get(i));
+                if (minCounts.get(i) > 0)
+                {
+                    Preconditions.checkArgument(toChars(classes.get(i), excluded).length > 0,
+                        "Every character of a required class is excluded: " + classes.get(i));
+                    requiredTotal += minCounts.get(i);
+                }
+            }
+            Preconditions.checkArgument(requiredTotal <= minLength,
+                "minLength must be >= the " + requiredTotal + " required characters.");
+
+            char[] alphabet = toChars(allowed.toString(), excluded);
+            Preconditions.checkArgument(alphabet.length > 0, "Every allowed character is excluded.");
+            return new PasswordPolicy(this, alphabet);
+        }
+    }
+}
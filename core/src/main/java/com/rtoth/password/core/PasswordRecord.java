@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+/**
+ * A plaintext application and password pair, as imported or exported.
+ */
+final class PasswordRecord
+{
+    /** Plaintext application name. */
+    private final String applicationName;
+
+    /** Plaintext password. */
+    private final String password;
+
+    /**
+     * Create a new {@link PasswordRecord}.
+     *
+     * @param applicationName Plaintext application name.
+     * @param password Plaintext password.
+     */
+    PasswordRecord(String applicationName, String password)
+    {
+        this.applicationName = applicationName;
+        this.password = password;
+    }
+
+    /**
+     * Get the plaintext application name.
+     *
+     * @return The plaintext application name.
+     */
+    String getApplicationName()
+    {
+        return applicationName;
+    }
+
+    /**
+     * Get the plaintext password.
+     *
+     * @return The plaintext password.
+     */
+    String getPassword()
+    {
+        return password;
+    }
+}
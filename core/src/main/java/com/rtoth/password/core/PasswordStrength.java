@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+/**
+ * How hard a password is to guess, as estimated by {@link PasswordStrengthEstimator}.
+ */
+public final class PasswordStrength
+{
+    /** Number of guesses from which each score above {@code 0} starts. */
+    private static final double[] SCORE_THRESHOLDS = {1e3 + 5, 1e6 + 5, 1e8 + 5, 1e10 + 5};
+
+    /** Highest possible score. */
+    public static final int MAX_SCORE = SCORE_THRESHOLDS.length;
+
+    /** Estimated number of guesses needed to find the password. */
+    private final double guesses;
+
+    /**
+     * Create a new {@link PasswordStrength}.
+     *
+     * @param guesses Estimated number of guesses needed to find the password.
+     */
+    PasswordStrength(double guesses)
+    {
+        this.guesses = guesses;
+    }
+
+    /**
+     * Get the estimated number of guesses an attacker needs to find the password.
+     *
+     * @return The number of guesses. Always at least {@code 1}.
+     */
+    public double getGuesses()
+    {
+        return guesses;
+    }
+
+    /**
+     * Get the entropy of the password, assuming every one of {@link #getGuesses()} guesses is equally likely.
+     *
+     * @return The entropy, in bits.
+     */
+    public double getEntropyBits()
+    {
+        return Math.log(guesses) / Math.log(2);
+    }
+
+    /**
+     * Get a coarse score for the password, for display:
+     * <ul>
+     *     <li>{@code 0}: fewer than a thousand guesses, such as a very common password.</li>
+     *     <li>{@code 1}: fewer than a million guesses, enough to stop a few guesses per minute online.</li>
+     *     <li>{@code 2}: fewer than 10<sup>8</sup> guesses, enough to stop unthrottled guessing online.</li>
+     *     <li>{@code 3}: fewer than 10<sup>10</sup> guesses, enough to stop slow offline guessing.</li>
+     *     <li>{@code 4}: enough to stop fast offline guessing.</li>
+     * </ul>
+     *
+     * @return The score, from {@code 0} to {@value #MAX_SCORE}.
+     */
+    public int getScore()
+    {
+        int score = 0;
+        while (score < SCORE_THRESHOLDS.length && guesses >= SCORE_THRESHOLDS[score])
+        {
+            score++;
+        }
+        return score;
+    }
+}
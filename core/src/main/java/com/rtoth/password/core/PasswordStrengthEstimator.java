@@ -0,0 +1,651 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Estimates how many guesses an attacker needs to find a password, by looking for the patterns attackers try first.
+ * <p>
+ * A password is split into the cheapest sequence of common passwords, dictionary words (including capitalized and
+ * "l33t" spellings), repeated characters, sequences like "abc" or "987", runs of adjacent keys like "qwerty", and
+ * recent years, with anything else guessed one character at a time. The dictionaries are held in a single
+ * {@link PackedTrie}, loaded the first time {@link #getDefault()} is used.
+ * <p>
+ * Estimates can be made all at once with {@link #estimate(CharSequence)}, or kept up to date as a password is typed
+ * with a {@link Session}, which only does work for the characters that changed. Estimators are thread-safe;
+ * sessions are not.
+ */
+public final class PasswordStrengthEstimator
+{
+    /** Resource holding commonly used passwords, most common first, relative to this class. */
+    static final String COMMON_PASSWORDS_RESOURCE = "common-passwords.txt";
+
+    /** Guesses per character not covered by any pattern. */
+    private static final double BRUTEFORCE_CARDINALITY = 10;
+
+    /** Fewest guesses any pattern is counted as, since an attacker can't try every pattern first. */
+    private static final double MIN_PATTERN_GUESSES = 50;
+
+    /** Fewest characters in a repeat, sequence or run of adjacent keys. */
+    private static final int MIN_PATTERN_LENGTH = 3;
+
+    /** Earliest year recognized. */
+    private static final int MIN_YEAR = 1900;
+
+    /** Latest year recognized. */
+    private static final int MAX_YEAR = 2099;
+
+    /** Fewest guesses a year is counted as, however close it is to the current year. */
+    private static final int MIN_YEAR_SPACE = 20;
+
+    /** Year against which years in passwords are compared. */
+    private static final int REFERENCE_YEAR = Calendar.getInstance().get(Calendar.YEAR);
+
+    /** Initial number of characters a {@link Session} has room for. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Letters each character may stand in for in "l33t" spellings, indexed by character. */
+    private static final char[][] SUBSTITUTIONS = new char[128][];
+
+    static
+    {
+        String[][] substitutions = {
+            {"4@", "a"}, {"8", "b"}, {"({[<", "c"}, {"3", "e"}, {"69", "g"}, {"1|", "il"}, {"!", "i"},
+            {"7", "lt"}, {"0", "o"}, {"$5", "s"}, {"+", "t"}, {"%", "x"}, {"2", "z"}
+        };
+        for (String[] substitution : substitutions)
+        {
+            for (char c : substitution[0].toCharArray())
+            {
+                SUBSTITUTIONS[c] = substitution[1].toCharArray();
+            }
+        }
+    }
+
+    /** Ranked common passwords and dictionary words, in lowercase. */
+    private final PackedTrie dictionary;
+
+    /** Keyboard on which runs of adjacent keys are recognized. */
+    private final KeyboardLayout keyboard;
+
+    /**
+     * Create a new {@link PasswordStrengthEstimator}.
+     *
+     * @param dictionary Ranked common passwords and dictionary words, in lowercase.
+     * @param keyboard Keyboard on which runs of adjacent keys are recognized.
+     */
+    PasswordStrengthEstimator(PackedTrie dictionary, KeyboardLayout keyboard)
+    {
+        this.dictionary = Preconditions.checkNotNull(dictionary, "dictionary cannot be null.");
+        this.keyboard = Preconditions.checkNotNull(keyboard, "keyboard cannot be null.");
+    }
+
+    /**
+     * Get the estimator using the bundled common passwords and {@link DicewarePasswordGenerator} word list, loading
+     * them if this is the first use.
+     *
+     * @return The estimator. Never {@code null}.
+     *
+     * @throws IllegalStateException if a bundled dictionary is missing or malformed.
+     */
+    public static PasswordStrengthEstimator getDefault()
+    {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Estimate the strength of a password.
+     *
+     * @param password The password. Cannot be {@code null}.
+     * @return The strength. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code password} is {@code null}.
+     */
+    public PasswordStrength estimate(CharSequence password)
+    {
+        Session session = newSession();
+        session.update(password);
+        PasswordStrength strength = session.getStrength();
+        session.clear();
+        return strength;
+    }
+
+    /**
+     * Start estimating the strength of a password as it is typed.
+     *
+     * @return A new session, starting with an empty password. Never {@code null}.
+     */
+    public Session newSession()
+    {
+        return new Session();
+    }
+
+    /**
+     * Load the bundled dictionaries: common passwords ranked by how common they are, then every word of the
+     * {@link DicewareWordList} not already included, ranked as though they were equally common.
+     *
+     * @return The dictionaries.
+     *
+     * @throws IllegalStateException if a dictionary is missing or malformed.
+     */
+    private static PackedTrie loadDictionary()
+    {
+        List<String> lines;
+        try
+        {
+            lines = Resources.readLines(
+                Resources.getResource(PasswordStrengthEstimator.class, COMMON_PASSWORDS_RESOURCE), Charsets.UTF_8);
+        }
+        catch (IllegalArgumentException | IOException e)
+        {
+            throw new IllegalStateException("Unable to read common passwords resource: " +
+                COMMON_PASSWORDS_RESOURCE, e);
+        }
+
+        SortedMap<String, Integer> rankedWords = new TreeMap<>();
+        int rank = 1;
+        for (String line : lines)
+        {
+            String word = line.trim().toLowerCase();
+            if (!word.isEmpty() && word.charAt(0) != '#')
+            {
+                if (!rankedWords.containsKey(word))
+                {
+                    rankedWords.put(word, rank);
+                }
+                rank++;
+            }
+        }
+
+        DicewareWordList words = DicewareWordList.get();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < words.size(); i++)
+        {
+            word.setLength(0);
+            words.appendWord(i, word);
+            if (!rankedWords.containsKey(word.toString()))
+            {
+                rankedWords.put(word.toString(), words.size());
+            }
+        }
+        return PackedTrie.build(rankedWords);
+    }
+
+    /**
+     * Get the number of ways of choosing items from a set.
+     *
+     * @param n Size of the set.
+     * @param k Number of items chosen.
+     * @return The number of ways.
+     */
+    private static double binomial(int n, int k)
+    {
+        double result = 1;
+        for (int i = 1; i <= k; i++)
+        {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of ways a pattern could have some of its characters changed, such as capitalized or shifted.
+     *
+     * @param changed Number of changed characters.
+     * @param unchanged Number of characters which could have been changed but weren't.
+     * @return The number of ways. Always at least {@code 1}.
+     */
+    private static double variations(int changed, int unchanged)
+    {
+        if (changed == 0)
+        {
+            return 1;
+        }
+        if (unchanged == 0)
+        {
+            return 2;
+        }
+        double result = 0;
+        for (int i = 1; i <= Math.min(changed, unchanged); i++)
+        {
+            result += binomial(changed + unchanged, i);
+        }
+        return result;
+    }
+
+    /**
+     * Get whether two characters are both digits, both lowercase letters, or both uppercase letters.
+     *
+     * @param first The first character.
+     * @param second The second character.
+     * @return {@code true} if they are of the same class, {@code false} otherwise.
+     */
+    private static boolean sameClass(char first, char second)
+    {
+        return (first >= '0' && first <= '9' && second >= '0' && second <= '9') ||
+            (first >= 'a' && first <= 'z' && second >= 'a' && second <= 'z') ||
+            (first >= 'A' && first <= 'Z' && second >= 'A' && second <= 'Z');
+    }
+
+    /**
+     * Get the number of characters an attacker would expect in place of a character.
+     *
+     * @param c The character.
+     * @return The number of characters.
+     */
+    private static int cardinality(char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return 10;
+        }
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+        {
+            return 26;
+        }
+        return 33;
+    }
+
+    /**
+     * Estimates the strength of a password as it is typed, keeping what it has learned about each prefix so that
+     * each change only costs work for the characters after it.
+     * <p>
+     * Holds a copy of the password, so call {@link #clear()} when done with it. Not thread-safe.
+     */
+    public final class Session
+    {
+        /** The password. */
+        private char[] chars = new char[INITIAL_CAPACITY];
+
+        /** Length of the password. */
+        private int length = 0;
+
+        /** Fewest guesses needed to find each prefix, indexed by its length. */
+        private double[] guesses = new double[INITIAL_CAPACITY + 1];
+
+        /** Start of the repeated character ending each prefix. */
+        private int[] runStarts = new int[INITIAL_CAPACITY + 1];
+
+        /** Start of the sequence ending each prefix. */
+        private int[] sequenceStarts = new int[INITIAL_CAPACITY + 1];
+
+        /** Step between characters of the sequence ending each prefix, {@code 1} or {@code -1}, else {@code 0}. */
+        private int[] sequenceDeltas = new int[INITIAL_CAPACITY + 1];
+
+        /** Start of the run of adjacent keys ending each prefix. */
+        private int[] chainStarts = new int[INITIAL_CAPACITY + 1];
+
+        /** Direction of the last step of the run of adjacent keys ending each prefix. */
+        private int[] chainDirections = new int[INITIAL_CAPACITY + 1];
+
+        /** Number of changes of direction in the run of adjacent keys ending each prefix. */
+        private int[] chainTurns = new int[INITIAL_CAPACITY + 1];
+
+        /** Number of shifted characters in the run of adjacent keys ending each prefix. */
+        private int[] chainShifted = new int[INITIAL_CAPACITY + 1];
+
+        /** End of the dictionary walks still in progress after each prefix, in the walk arrays. */
+        private int[] walkEnds = new int[INITIAL_CAPACITY + 1];
+
+        /** Dictionary node reached by each walk. */
+        private int[] walkNodes = new int[INITIAL_CAPACITY * 4];
+
+        /** Start of each walk in the password. */
+        private int[] walkStarts = new int[INITIAL_CAPACITY * 4];
+
+        /** Number of "l33t" substitutions made by each walk. */
+        private int[] walkSubstitutions = new int[INITIAL_CAPACITY * 4];
+
+        /**
+         * Create a new {@link Session}, starting with an empty password.
+         */
+        private Session()
+        {
+            guesses[0] = 1;
+        }
+
+        /**
+         * Get the length of the password.
+         *
+         * @return The length.
+         */
+        public int length()
+        {
+            return length;
+        }
+
+        /**
+         * Get the strength of the password.
+         *
+         * @return The strength. Never {@code null}.
+         */
+        public PasswordStrength getStrength()
+        {
+            return new PasswordStrength(guesses[length]);
+        }
+
+        /**
+         * Change the password, only re-estimating from the first character that differs.
+         *
+         * @param password The new password. Cannot be {@code null}.
+         *
+         * @throws NullPointerException if {@code password} is {@code null}.
+         */
+        public void update(CharSequence password)
+        {
+            Preconditions.checkNotNull(password, "password cannot be null.");
+
+            int common = 0;
+            while (common < length && common < password.length() && chars[common] == password.charAt(common))
+            {
+                common++;
+            }
+            truncate(common);
+            for (int i = common; i < password.length(); i++)
+            {
+                append(password.charAt(i));
+            }
+        }
+
+        /**
+         * Add a character to the end of the password.
+         *
+         * @param c The character.
+         */
+        public void append(char c)
+        {
+            ensureCapacity(length + 1);
+            int n = length;
+            int end = n + 1;
+            chars[n] = c;
+
+            double best = guesses[n] * BRUTEFORCE_CARDINALITY;
+
+            // Dictionary words: continue every walk still in progress, and start a new one here.
+            int walkStart = n == 0 ? 0 : walkEnds[n - 1];
+            int walkEnd = n == 0 ? 0 : walkEnds[n];
+            int top = walkEnd;
+            for (int i = walkStart; i < walkEnd; i++)
+            {
+                top = step(walkNodes[i], walkStarts[i], walkSubstitutions[i], c, top);
+            }
+            top = step(PackedTrie.ROOT, n, 0, c, top);
+            walkEnds[end] = top;
+            for (int i = walkEnd; i < top; i++)
+            {
+                int rank = dictionary.rank(walkNodes[i]);
+                if (rank > 0)
+                {
+                    int start = walkStarts[i];
+                    double variations = capitalizations(start, end) * Math.pow(2, walkSubstitutions[i]);
+                    best = Math.min(best, guesses[start] * Math.max(rank * variations, MIN_PATTERN_GUESSES));
+                }
+            }
+
+            // Repeated characters.
+            runStarts[end] = n > 0 && chars[n - 1] == c ? runStarts[n] : n;
+            int runLength = end - runStarts[end];
+            if (runLength >= MIN_PATTERN_LENGTH)
+            {
+                best = Math.min(best, guesses[runStarts[end]] *
+                    Math.max((double) cardinality(c) * runLength, MIN_PATTERN_GUESSES));
+            }
+
+            // Sequences.
+            int delta = n > 0 && sameClass(chars[n - 1], c) ? c - chars[n - 1] : 0;
+            if (delta == 1 || delta == -1)
+            {
+                sequenceStarts[end] = sequenceDeltas[n] == delta ? sequenceStarts[n] : n - 1;
+                sequenceDeltas[end] = delta;
+            }
+            else
+            {
+                sequenceStarts[end] = n;
+                sequenceDeltas[end] = 0;
+            }
+            int sequenceLength = end - sequenceStarts[end];
+            if (sequenceLength >= MIN_PATTERN_LENGTH)
+            {
+                char first = chars[sequenceStarts[end]];
+                double base = "aAzZ019".indexOf(first) >= 0 ? 4 : cardinality(first);
+                best = Math.min(best, guesses[sequenceStarts[end]] *
+                    Math.max(base * sequenceLength * (delta < 0 ? 2 : 1), MIN_PATTERN_GUESSES));
+            }
+
+            // Runs of adjacent keys.
+            int direction = n > 0 ? keyboard.direction(chars[n - 1], c) : -1;
+            int shifted = keyboard.isShifted(c) ? 1 : 0;
+            if (direction >= 0)
+            {
+                chainStarts[end] = chainStarts[n];
+                chainTurns[end] = chainTurns[n] + (direction == chainDirections[n] ? 0 : 1);
+                chainShifted[end] = chainShifted[n] + shifted;
+            }
+            else
+            {
+                chainStarts[end] = n;
+                chainTurns[end] = 0;
+                chainShifted[end] = shifted;
+            }
+            chainDirections[end] = direction;
+            int chainLength = end - chainStarts[end];
+            if (chainLength >= MIN_PATTERN_LENGTH)
+            {
+                best = Math.min(best, guesses[chainStarts[end]] * Math.max(
+                    chainGuesses(chainLength, chainTurns[end]) *
+                        variations(chainShifted[end], chainLength - chainShifted[end]),
+                    MIN_PATTERN_GUESSES));
+            }
+
+            // Recent years.
+            if (end >= 4)
+            {
+                int year = 0;
+                for (int i = end - 4; i < end && year >= 0; i++)
+                {
+                    year = chars[i] >= '0' && chars[i] <= '9' ? year * 10 + chars[i] - '0' : -1;
+                }
+                if (year >= MIN_YEAR && year <= MAX_YEAR)
+                {
+                    best = Math.min(best, guesses[end - 4] *
+                        Math.max(Math.max(Math.abs(year - REFERENCE_YEAR), MIN_YEAR_SPACE), MIN_PATTERN_GUESSES));
+                }
+            }
+
+            guesses[end] = best;
+            length = end;
+        }
+
+        /**
+         * Remove characters from the end of the password.
+         *
+         * @param newLength Length to shorten the password to. Must be non-negative and at most {@link #length()}.
+         *
+         * @throws IllegalArgumentException if {@code newLength} is negative or more than {@link #length()}.
+         */
+        public void truncate(int newLength)
+        {
+            Preconditions.checkArgument(newLength >= 0 && newLength <= length,
+                "newLength must be non-negative and at most the length.");
+
+            Arrays.fill(chars, newLength, length, '\0');
+            length = newLength;
+        }
+
+        /**
+         * Forget the password, overwriting the copy held by this session.
+         */
+        public void clear()
+        {
+            truncate(0);
+        }
+
+        /**
+         * Continue a dictionary walk with the next character, both as typed and as each letter it may stand in for.
+         *
+         * @param node Node the walk has reached.
+         * @param start Start of the walk in the password.
+         * @param substitutions Number of substitutions made by the walk so far.
+         * @param c The next character.
+         * @param top End of the walk arrays, where continued walks are added.
+         * @return The new end of the walk arrays.
+         */
+        private int step(int node, int start, int substitutions, char c, int top)
+        {
+            char lower = Character.toLowerCase(c);
+            top = push(dictionary.child(node, lower), start, substitutions, top);
+            if (c < SUBSTITUTIONS.length && SUBSTITUTIONS[c] != null)
+            {
+                for (char letter : SUBSTITUTIONS[c])
+                {
+                    top = push(dictionary.child(node, letter), start, substitutions + 1, top);
+                }
+            }
+            return top;
+        }
+
+        /**
+         * Add a walk to the walk arrays, unless it has left the dictionary.
+         *
+         * @param node Node the walk has reached, or {@code -1} if it has left the dictionary.
+         * @param start Start of the walk in the password.
+         * @param substitutions Number of substitutions made by the walk.
+         * @param top End of the walk arrays.
+         * @return The new end of the walk arrays.
+         */
+        private int push(int node, int start, int substitutions, int top)
+        {
+            if (node < 0)
+            {
+                return top;
+            }
+            if (top == walkNodes.length)
+            {
+                walkNodes = Arrays.copyOf(walkNodes, top * 2);
+                walkStarts = Arrays.copyOf(walkStarts, top * 2);
+                walkSubstitutions = Arrays.copyOf(walkSubstitutions, top * 2);
+            }
+            walkNodes[top] = node;
+            walkStarts[top] = start;
+            walkSubstitutions[top] = substitutions;
+            return top + 1;
+        }
+
+        /**
+         * Get the number of ways a dictionary word could have been capitalized to match part of the password.
+         *
+         * @param start Start of the word in the password.
+         * @param end End of the word in the password.
+         * @return The number of ways. Always at least {@code 1}.
+         */
+        private double capitalizations(int start, int end)
+        {
+            int upper = 0;
+            int lower = 0;
+            for (int i = start; i < end; i++)
+            {
+                if (Character.isUpperCase(chars[i]))
+                {
+                    upper++;
+                }
+                else if (Character.isLowerCase(chars[i]))
+                {
+                    lower++;
+                }
+            }
+            // Capitalizing only the first or last letter is as common as capitalizing all of them.
+            if (upper == 1 && (Character.isUpperCase(chars[start]) || Character.isUpperCase(chars[end - 1])))
+            {
+                return 2;
+            }
+            return variations(upper, lower);
+        }
+
+        /**
+         * Get the number of guesses needed to find a run of adjacent keys, trying every starting key and every path
+         * with up to the same number of changes of direction.
+         *
+         * @param chainLength Number of keys in the run.
+         * @param turns Number of changes of direction, counting the first step.
+         * @return The number of guesses.
+         */
+        private double chainGuesses(int chainLength, int turns)
+        {
+            double result = 0;
+            for (int i = 2; i <= chainLength; i++)
+            {
+                for (int j = 1; j <= Math.min(turns, i - 1); j++)
+                {
+                    result += binomial(i - 1, j - 1) * keyboard.getKeyCount() *
+                        Math.pow(keyboard.getAverageDegree(), j);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Make sure there is room for the state of each prefix of a password.
+         *
+         * @param capacity Number of characters needed.
+         */
+        private void ensureCapacity(int capacity)
+        {
+            if (capacity <= chars.length)
+            {
+                return;
+            }
+            int newCapacity = Math.max(capacity, chars.length * 2);
+            char[] newChars = Arrays.copyOf(chars, newCapacity);
+            Arrays.fill(chars, '\0');
+            chars = newChars;
+            guesses = Arrays.copyOf(guesses, newCapacity + 1);
+            runStarts = Arrays.copyOf(runStarts, newCapacity + 1);
+            sequenceStarts = Arrays.copyOf(sequenceStarts, newCapacity + 1);
+            sequenceDeltas = Arrays.copyOf(sequenceDeltas, newCapacity + 1);
+            chainStarts = Arrays.copyOf(chainStarts, newCapacity + 1);
+            chainDirections = Arrays.copyOf(chainDirections, newCapacity + 1);
+            chainTurns = Arrays.copyOf(chainTurns, newCapacity + 1);
+            chainShifted = Arrays.copyOf(chainShifted, newCapacity + 1);
+            walkEnds = Arrays.copyOf(walkEnds, newCapacity + 1);
+        }
+    }
+
+    /**
+     * Holds the default estimator, so the dictionaries are only loaded on first use.
+     */
+    private static final class Holder
+    {
+        /** The default estimator. */
+        private static final PasswordStrengthEstimator INSTANCE =
+            new PasswordStrengthEstimator(loadDictionary(), KeyboardLayout.QWERTY);
+    }
+}
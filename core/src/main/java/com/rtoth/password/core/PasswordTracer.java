@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+/**
+ * Traces individual slow operations of a {@link PasswordManager}, so they can be lined up with garbage collection,
+ * I/O, and other activity in a profiler recording, such as a Java Flight Recorder recording.
+ * <p>
+ * Where {@link PasswordMetricsListener} keeps totals, a tracer sees each operation as a span with a start, an end,
+ * and what it worked on. Methods are called on whichever thread does the work, so implementations must be
+ * thread-safe, and must not throw. An implementation which is not currently recording should return
+ * {@link Span#NONE} from {@link #begin(Operation)}, so tracing costs nothing.
+ */
+public interface PasswordTracer
+{
+    /** Tracer which ignores everything. */
+    PasswordTracer NONE = new PasswordTracer()
+    {
+        @Override
+        public Span begin(Operation operation)
+        {
+            return Span.NONE;
+        }
+    };
+
+    /**
+     * Traced operations.
+     */
+    enum Operation
+    {
+        /** Opening a password manager: reading, deriving the key, and decrypting. */
+        UNLOCK,
+
+        /** Saving the vault to the datastore. */
+        SAVE,
+
+        /** Changing the master password, which re-encrypts every entry. */
+        CHANGE_MASTER_PASSWORD,
+
+        /** Generating one or more random passwords. */
+        GENERATE
+    }
+
+    /**
+     * Start tracing an operation on the calling thread.
+     *
+     * @param operation Operation starting. Never {@code null}.
+     * @return Span to end once the operation finishes, or {@link Span#NONE} if it is not being traced. Never
+     *         {@code null}.
+     */
+    Span begin(Operation operation);
+
+    /**
+     * A single traced operation, ended exactly once by the thread which began it.
+     */
+    interface Span
+    {
+        /** Span which ignores its end. */
+        Span NONE = new Span()
+        {
+            @Override
+            public void end(int entryCount, long size, boolean succeeded)
+            {
+                // Ignored
+            }
+        };
+
+        /**
+         * End the operation.
+         *
+         * @param entryCount Number of entries worked on: loaded, saved, or re-encrypted, or the number of passwords
+         *                   generated.
+         * @param size Size of what was worked on: the number of encrypted bytes loaded, saved, or re-encrypted, or
+         *             the total number of characters generated.
+         * @param succeeded Whether the operation succeeded; if not, {@code entryCount} and {@code size} cover what
+         *                  was done before it failed.
+         */
+        void end(int entryCount, long size, boolean succeeded);
+    }
+}
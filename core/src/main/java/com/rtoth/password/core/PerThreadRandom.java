@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Gives each thread its own {@link BufferedRandom}, so password generators can be shared between threads without
+ * contention.
+ * <p>
+ * A single {@link SecureRandom} serializes every thread that uses it. Instead, each thread here gets its own
+ * {@value #PER_THREAD_ALGORITHM} generator, seeded from a shared {@link SecureRandom}, and reseeded from it after
+ * every {@value #RESEED_INTERVAL} passwords. The shared generator is only touched when seeding, so generation
+ * scales with the number of threads.
+ */
+final class PerThreadRandom
+{
+    /** Algorithm of the per-thread generators. Falls back to the platform default if unavailable. */
+    static final String PER_THREAD_ALGORITHM = "SHA1PRNG";
+
+    /** Number of passwords each thread generates between reseeds. */
+    static final int RESEED_INTERVAL = 4096;
+
+    /** Number of seed bytes used for each seed and reseed. */
+    private static final int SEED_BYTES = 32;
+
+    /** Source of seeds for the per-thread generators. */
+    private final SecureRandom seedSource = new SecureRandom();
+
+    /** Each thread's random number generator, created on first use. */
+    private final ThreadLocal<ThreadRandom> threadRandoms = new ThreadLocal<ThreadRandom>()
+    {
+        @Override
+        protected ThreadRandom initialValue()
+        {
+            return new ThreadRandom();
+        }
+    };
+
+    /**
+     * Get the calling thread's random number generator, reseeding it first if it is due. The result must only be
+     * used by the calling thread.
+     *
+     * @param passwordCount Number of passwords about to be generated with it.
+     * @return The calling thread's random number generator.
+     */
+    BufferedRandom get(int passwordCount)
+    {
+        return threadRandoms.get().random(passwordCount);
+    }
+
+    /**
+     * Get some fresh seed bytes from the {@link #seedSource}.
+     *
+     * @return The seed bytes.
+     */
+    private byte[] nextSeed()
+    {
+        byte[] seed = new byte[SEED_BYTES];
+        seedSource.nextBytes(seed);
+        return seed;
+    }
+
+    /**
+     * A single thread's random number generator, and when it is due to be reseeded.
+     */
+    private final class ThreadRandom
+    {
+        /** The thread's random number generator. */
+        private final BufferedRandom random;
+
+        /** Number of passwords generated since {@link #random} was last seeded. */
+        private int generatedSinceSeed = 0;
+
+        /**
+         * Create a new {@link ThreadRandom}, seeded from the {@link #seedSource}.
+         */
+        private ThreadRandom()
+        {
+            SecureRandom threadRandom;
+            try
+            {
+                threadRandom = SecureRandom.getInstance(PER_THREAD_ALGORITHM);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                threadRandom = new SecureRandom();
+            }
+            // Seeding before first use replaces the generator's own seeding.
+            threadRandom.setSeed(nextSeed());
+            this.random = new BufferedRandom(threadRandom);
+        }
+
+        /**
+         * Get the random number generator to generate passwords with, reseeding it first if it is due.
+         *
+         * @param count Number of passwords about to be generated.
+         * @return The random number generator.
+         */
+        private BufferedRandom random(int count)
+        {
+            if (generatedSinceSeed >= RESEED_INTERVAL)
+            {
+                // Mixed into the existing state, rather than replacing it.
+                random.setSeed(nextSeed());
+                generatedSinceSeed = 0;
+            }
+            generatedSinceSeed += count;
+            return random;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * {@link RandomPasswordGenerator} which generates passwords following a {@link PasswordPolicy}, without contention
+ * between threads.
+ * <p>
+ * Required characters are drawn from their class and the rest from every allowed character, then the whole
+ * password is shuffled, so every password meets the policy without any being generated and thrown away. Each
+ * thread draws from its own random number generator.
+ */
+public class PolicyPasswordGenerator implements RandomPasswordGenerator
+{
+    /** Policy passwords follow. */
+    private final PasswordPolicy policy;
+
+    /** Random number generators of each thread. */
+    private final PerThreadRandom randoms = new PerThreadRandom();
+
+    /**
+     * Create a new {@link PolicyPasswordGenerator}.
+     *
+     * @param policy Policy passwords follow. Cannot be {@code null}.
+     *
+     * @throws NullPointerException if {@code policy} is {@code null}.
+     */
+    public PolicyPasswordGenerator(PasswordPolicy policy)
+    {
+        this.policy = Preconditions.checkNotNull(policy, "policy cannot be null.");
+    }
+
+    /**
+     * Get the policy passwords follow.
+     *
+     * @return The policy. Never {@code null}.
+     */
+    public PasswordPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    @Override
+    public String generatePassword()
+    {
+        return nextPassword(randoms.get(1));
+    }
+
+    @Override
+    public List<String> generatePasswords(int count)
+    {
+        Preconditions.checkArgument(count >= 0, "count must be non-negative.");
+
+        BufferedRandom random = randoms.get(count);
+        ImmutableList.Builder<String> passwords = ImmutableList.builder();
+        for (int i = 0; i < count; i++)
+        {
+            passwords.add(nextPassword(random));
+        }
+        return passwords.build();
+    }
+
+    /**
+     * Generate a single password.
+     *
+     * @param random The calling thread's random number generator.
+     * @return The password.
+     */
+    private String nextPassword(BufferedRandom random)
+    {
+        char[] password = new char[policy.getMinLength() +
+            random.nextInt(policy.getMaxLength() - policy.getMinLength() + 1)];
+
+        int index = 0;
+        char[][] requiredClasses = policy.requiredClasses();
+        int[] requiredCounts = policy.requiredCounts();
+        for (int i = 0; i < requiredClasses.length; i++)
+        {
+            for (int j = 0; j < requiredCounts[i]; j++)
+            {
+                password[index++] = requiredClasses[i][random.nextInt(requiredClasses[i].length)];
+            }
+        }
+        char[] alphabet = policy.alphabet();
+        while (index < password.length)
+        {
+            password[index++] = alphabet[random.nextInt(alphabet.length)];
+        }
+
+        if (requiredClasses.length > 0)
+        {
+            // Fisher-Yates, so the required characters can end up anywhere.
+            for (int i = password.length - 1; i > 0; i--)
+            {
+                int swap = random.nextInt(i + 1);
+                char c = password[i];
+                password[i] = password[swap];
+                password[swap] = c;
+            }
+        }
+        return new String(password);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Reads {@link EncryptedVault}s from {@link Properties}, the format vaults were stored in before
+ * {@link BinaryVaultCodec} replaced it.
+ * <p>
+ * Header fields are stored under reserved {@code vault.*} keys. Each entry is stored with its base64 encrypted
+ * application name as the key and its base64 encrypted password as the value; since base64 never contains a
+ * {@code '.'}, entries can never collide with the header keys.
+ * <p>
+ * Vaults written before the header existed contain only entries, each encrypted with its own salt. These are read
+ * with the {@link VaultHeader#LEGACY} header.
+ */
+final class PropertiesVaultFormat
+{
+    /** Prefix of all header keys. */
+    private static final String HEADER_PREFIX = "vault.";
+
+    /** Key of the format version. */
+    private static final String VERSION_KEY = HEADER_PREFIX + "version";
+
+    /** Key of the key derivation function name. */
+    private static final String KDF_KEY = HEADER_PREFIX + "kdf";
+
+    /** Key of the key derivation iteration count. */
+    private static final String ITERATIONS_KEY = HEADER_PREFIX + "iterations";
+
+    /** Key of the key derivation salt. */
+    private static final String SALT_KEY = HEADER_PREFIX + "salt";
+
+    /** Key of the key check value. */
+    private static final String KEY_CHECK_KEY = HEADER_PREFIX + "keyCheck";
+
+    /** Encoding used for binary values. */
+    private static final BaseEncoding BASE64 = BaseEncoding.base64();
+
+    private PropertiesVaultFormat()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Read a vault from the provided properties.
+     *
+     * @param properties Vault properties. Cannot be {@code null}.
+     * @return The vault, or {@code null} if {@code properties} is empty.
+     *
+     * @throws IOException if the properties are not a well-formed vault.
+     */
+    static EncryptedVault read(Properties properties) throws IOException
+    {
+        if (properties.isEmpty())
+        {
+            return null;
+        }
+        else if (!properties.containsKey(VERSION_KEY))
+        {
+            return readLegacy(properties);
+        }
+
+        try
+        {
+            VaultHeader header = new VaultHeader(
+                Integer.parseInt(required(properties, VERSION_KEY)),
+                required(properties, KDF_KEY),
+                Integer.parseInt(required(properties, ITERATIONS_KEY)),
+                BASE64.decode(required(properties, SALT_KEY)),
+                BASE64.decode(required(properties, KEY_CHECK_KEY))
+            );
+
+            List<EncryptedEntry> entries = Lists.newArrayListWithCapacity(properties.size());
+            for (Map.Entry<Object, Object> entry : properties.entrySet())
+            {
+                String key = (String) entry.getKey();
+                if (!key.startsWith(HEADER_PREFIX))
+                {
+                    entries.add(new EncryptedEntry(BASE64.decode(key), BASE64.decode((String) entry.getValue())));
+                }
+            }
+            return new EncryptedVault(header, entries);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Malformed vault.", e);
+        }
+    }
+
+    /**
+     * Read a legacy vault, where every value was encrypted with its own salt.
+     *
+     * @param properties Vault properties.
+     * @return The vault, with the {@link VaultHeader#LEGACY} header.
+     */
+    private static EncryptedVault readLegacy(Properties properties)
+    {
+        List<EncryptedEntry> entries = Lists.newArrayListWithCapacity(properties.size());
+        for (Map.Entry<Object, Object> entry : properties.entrySet())
+        {
+            entries.add(new EncryptedEntry(
+                ((String) entry.getKey()).getBytes(Charsets.UTF_8),
+                ((String) entry.getValue()).getBytes(Charsets.UTF_8)
+            ));
+        }
+        return new EncryptedVault(VaultHeader.LEGACY, entries);
+    }
+
+    /**
+     * Get a required property.
+     *
+     * @param properties Properties to read.
+     * @param key Key to read.
+     * @return The property value. Never {@code null}.
+     *
+     * @throws IOException if the property is missing.
+     */
+    private static String required(Properties properties, String key) throws IOException
+    {
+        String value = properties.getProperty(key);
+        if (value == null)
+        {
+            throw new IOException("Malformed vault, missing " + key);
+        }
+        return value;
+    }
+}
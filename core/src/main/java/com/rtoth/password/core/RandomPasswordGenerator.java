@@ -21,6 +21,8 @@
  */
 package com.rtoth.password.core;
 
+import java.util.List;
+
 /**
  * Generates random string passwords.
  */
@@ -32,4 +34,14 @@ public interface RandomPasswordGenerator
      * @return A new random password. Never {@code null}.
      */
     String generatePassword();
+
+    /**
+     * Generate several new random passwords at once, which may be faster than generating them one at a time.
+     *
+     * @param count Number of passwords to generate. Must be non-negative.
+     * @return An unmodifiable list of {@code count} new random passwords. Never {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code count} is negative.
+     */
+    List<String> generatePasswords(int count);
 }
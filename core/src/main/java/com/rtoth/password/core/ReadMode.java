@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+/**
+ * How a file-based {@link EncryptedPasswordDatastore} reads its vault file.
+ */
+public enum ReadMode
+{
+    /**
+     * Read the file through a small buffer. Suitable for any vault.
+     */
+    STREAM,
+
+    /**
+     * Memory-map the file and decode entries from the mapping, rather than reading it through a buffer. This saves
+     * a copy through the read buffer and the read system calls, making large vaults a little faster to load. Every
+     * entry is still copied into its own arrays, so heap use is the same as in {@link #STREAM} mode. Vaults still in
+     * the older properties format are read as in {@link #STREAM} mode.
+     * <p>
+     * The mapping is only released once it is garbage collected; on platforms that refuse to replace a mapped file
+     * (such as Windows), stores may fail until then.
+     */
+    MAPPED
+}
@@ -0,0 +1,714 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EncryptedPasswordDatastore} that spreads entries across several shard files in a directory, so a store
+ * only rewrites the shards holding changed entries, and loading reads the shards in parallel.
+ * <p>
+ * Entries are assigned to shards by the first bytes of their encrypted application name. Application names are
+ * encrypted with a synthetic IV, which is an HMAC of the name under the vault key, so this is a keyed hash of the
+ * name: an entry always lands in the same shard, and shard sizes reveal nothing about the names. The number of
+ * shards is always a power of two.
+ * <p>
+ * The current shards are listed by a manifest file, which names a generation and its number of shards. Full
+ * rewrites, such as after a master password change, write a complete new generation and then replace the
+ * manifest, so a crash leaves either the old vault or the new one. When the vault grows past the maximum number of
+ * entries per shard, the next store (which runs on the caller's background save thread) reshards it this way into
+ * twice as many shards. Other stores replace just the changed shards, each atomically; a crash part way through a
+ * store changing several shards may leave some of its changes saved and others not.
+ * <p>
+ * The directory must be dedicated to this datastore: files left behind by an interrupted rewrite are deleted when
+ * the vault is loaded.
+ * <p>
+ * Shards are read and written on one thread pool for the life of the datastore, either provided or created by the
+ * datastore. A created pool's threads exit when idle, and {@link #close()} shuts it down; a {@link PasswordManager}
+ * closes its datastore when it is closed. Stores touching a single shard run on the calling thread.
+ */
+public class ShardedEncryptedPasswordDatastore implements EncryptedPasswordDatastore, Closeable
+{
+    /** Logger for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedEncryptedPasswordDatastore.class);
+
+    /** Default number of shards of a new vault. */
+    public static final int DEFAULT_INITIAL_SHARD_COUNT = 4;
+
+    /** Default average number of entries per shard past which the vault is resharded. */
+    public static final int DEFAULT_MAX_SHARD_ENTRIES = 512;
+
+    /** Name of the manifest file. */
+    public static final String MANIFEST_NAME = "vault.shards";
+
+    /** Prefix of shard file names, followed by the generation and shard index. */
+    private static final String SHARD_PREFIX = "shard-";
+
+    /** Suffix of shard file names. */
+    private static final String SHARD_SUFFIX = ".vault";
+
+    /** Suffix appended to the manifest file name to get the temporary file name. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Magic number at the start of the manifest -- "PHS1". */
+    private static final int MAGIC = 0x50485331;
+
+    /** How long an idle thread of a pool created by the datastore waits for work before exiting, in seconds. */
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+    /** Directory holding the manifest and shards. */
+    private final File directory;
+
+    /** File listing the current generation of shards. */
+    private final File manifestFile;
+
+    /** Temporary file written before being renamed to {@link #manifestFile}. */
+    private final File tempManifestFile;
+
+    /** Where {@link #manifestFile} is moved while being replaced, on platforms which can't rename over it. */
+    private final File backupManifestFile;
+
+    /** Number of shards of a new vault. */
+    private final int initialShardCount;
+
+    /** Average number of entries per shard past which the vault is resharded. */
+    private final int maxShardEntries;
+
+    /** How hard to work to make each store survive a crash. */
+    private final Durability durability;
+
+    /** Maximum number of shards read or written at once. */
+    private final int parallelism;
+
+    /** Receives the time taken to serialize and write each store. */
+    private final PasswordMetricsListener metricsListener;
+
+    /** Pool shards are read and written on. */
+    private final ExecutorService executor;
+
+    /** Whether {@link #executor} was created by this datastore, and so is shut down by {@link #close()}. */
+    private final boolean ownsExecutor;
+
+    /** Current generation, or {@code -1} if the manifest hasn't been read yet. */
+    private int generation = -1;
+
+    /** Datastores of the current shards, or {@code null} if the next store must write a new generation. */
+    private FileBasedEncryptedPasswordDatastore[] shards;
+
+    /**
+     * Create a new {@link ShardedEncryptedPasswordDatastore} using the provided directory, starting with
+     * {@link #DEFAULT_INITIAL_SHARD_COUNT} shards and resharding past {@link #DEFAULT_MAX_SHARD_ENTRIES}.
+     *
+     * @param directory Directory holding the shards. Cannot be {@code null}, and must be an existing directory with
+     *                  read and write permissions.
+     *
+     * @throws IllegalArgumentException if {@code directory} is not an existing directory with read and write
+     *         permissions.
+     * @throws NullPointerException if {@code directory} is {@code null}.
+     */
+    public ShardedEncryptedPasswordDatastore(File directory)
+    {
+        this(directory, DEFAULT_INITIAL_SHARD_COUNT, DEFAULT_MAX_SHARD_ENTRIES);
+    }
+
+    /**
+     * Create a new {@link ShardedEncryptedPasswordDatastore}.
+     *
+     * @param directory Directory holding the shards. Cannot be {@code null}, and must be an existing directory with
+     *                  read and write permissions.
+     * @param initialShardCount Number of shards of a new vault. Must be a positive power of two.
+     * @param maxShardEntries Average number of entries per shard past which the vault is resharded. Must be
+     *                        positive.
+     *
+     * @throws IllegalArgumentException if {@code directory} is not an existing directory with read and write
+     *         permissions, {@code initialShardCount} is not a positive power of two, or {@code maxShardEntries} is
+     *         not positive.
+     * @throws NullPointerException if {@code directory} is {@code null}.
+     */
+    public ShardedEncryptedPasswordDatastore(File directory, int initialShardCount, int maxShardEntries)
+    {
+        this(directory, initialShardCount, maxShardEntries, FileBasedEncryptedPasswordDatastore.DEFAULT_DURABILITY,
+            Runtime.getRuntime().availableProcessors(), PasswordMetricsListener.NONE);
+    }
+
+    /**
+     * Create a new {@link ShardedEncryptedPasswordDatastore}.
+     *
+     * @param directory Directory holding the shards. Cannot be {@code null}, and must be an existing directory with
+     *                  read and write permissions.
+     * @param initialShardCount Number of shards of a new vault. Must be a positive power of two.
+     * @param maxShardEntries Average number of entries per shard past which the vault is resharded. Must be
+     *                        positive.
+     * @param durability How hard to work to make each store survive a crash. Cannot be {@code null}.
+     * @param parallelism Maximum number of shards read or written at once. Must be positive.
+     * @param metricsListener Receives the time taken to serialize and write each store. Cannot be {@code null}.
+     *
+     * @throws IllegalArgumentException if {@code directory} is not an existing directory with read and write
+     *         permissions, {@code initialShardCount} is not a positive power of two, or {@code maxShardEntries} or
+     *         {@code parallelism} is not positive.
+     * @throws NullPointerException if {@code directory}, {@code durability}, or {@code metricsListener} is
+     *         {@code null}.
+     */
+    public ShardedEncryptedPasswordDatastore(File directory, int initialShardCount, int maxShardEntries,
+                                             Durability durability, int parallelism,
+                                             PasswordMetricsListener metricsListener)
+    {
+        this(directory, initialShardCount, maxShardEntries, durability, parallelism, metricsListener, null);
+    }
+
+    /**
+     * Create a new {@link ShardedEncryptedPasswordDatastore}.
+     *
+     * @param directory Directory holding the shards. Cannot be {@code null}, and must be an existing directory with
+     *                  read and write permissions.
+     * @param initialShardCount Number of shards of a new vault. Must be a positive power of two.
+     * @param maxShardEntries Average number of entries per shard past which the vault is resharded. Must be
+     *                        positive.
+     * @param durability How hard to work to make each store survive a crash. Cannot be {@code null}.
+     * @param parallelism Maximum number of shards read or written at once. Must be positive.
+     * @param metricsListener Receives the time taken to serialize and write each store. Cannot be {@code null}.
+     * @param executor Pool to read and write shards on, which is not shut down by {@link #close()}, and must not
+     *                 be the single thread that loads and stores are called on; or {@code null} to have the
+     *                 datastore create its own pool of {@code parallelism} threads.
+     *
+     * @throws IllegalArgumentException if {@code directory} is not an existing directory with read and write
+     *         permissions, {@code initialShardCount} is not a positive power of two, or {@code maxShardEntries} or
+     *         {@code parallelism} is not positive.
+     * @throws NullPointerException if {@code directory}, {@code durability}, or {@code metricsListener} is
+     *         {@code null}.
+     */
+    public ShardedEncryptedPasswordDatastore(File directory, int initialShardCount, int maxShardEntries,
+                                             Durability durability, int parallelism,
+                                             PasswordMetricsListener metricsListener, ExecutorService executor)
+    {
+        this.directory = Preconditions.checkNotNull(directory, "directory cannot be null.");
+        Preconditions.checkArgument(directory.isDirectory() && directory.canRead() && directory.canWrite(),
+            "directory must be a directory with rw permissions.");
+        Preconditions.checkArgument(initialShardCount > 0 && Integer.bitCount(initialShardCount) == 1,
+            "initialShardCount must be a positive power of two.");
+        Preconditions.checkArgument(maxShardEntries > 0, "maxShardEntries must be positive.");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive.");
+        this.manifestFile = new File(directory, MANIFEST_NAME);
+        this.tempManifestFile = new File(directory, MANIFEST_NAME + TEMP_SUFFIX);
+        this.backupManifestFile = new File(directory, MANIFEST_NAME + FileReplacement.BACKUP_SUFFIX);
+        this.initialShardCount = initialShardCount;
+        this.maxShardEntries = maxShardEntries;
+        this.durability = Preconditions.checkNotNull(durability, "durability cannot be null.");
+        this.parallelism = parallelism;
+        this.metricsListener = Preconditions.checkNotNull(metricsListener, "metricsListener cannot be null.");
+        this.ownsExecutor = executor == null;
+        this.executor = ownsExecutor ? newExecutor(parallelism) : executor;
+        FileReplacement.recover(manifestFile, backupManifestFile);
+    }
+
+    /**
+     * Create the pool of a datastore which wasn't given one. Threads are only started when needed, and exit when
+     * idle, so a datastore which is never closed doesn't keep them.
+     *
+     * @param parallelism Maximum number of threads.
+     * @return The pool.
+     */
+    private static ExecutorService newExecutor(int parallelism)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, IDLE_THREAD_TIMEOUT_SECONDS,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("password-shard-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Get the directory holding the shards.
+     *
+     * @return The directory holding the shards. Never {@code null}.
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Get the current number of shards.
+     *
+     * @return The current number of shards, or {@code 0} if the vault hasn't been loaded or stored yet.
+     */
+    public synchronized int getShardCount()
+    {
+        return shards == null ? 0 : shards.length;
+    }
+
+    /**
+     * Shut down the thread pool, if it was created by this datastore. Loads and stores still work afterwards, one
+     * shard at a time on the calling thread. Does not wait for a running load or store.
+     */
+    @Override
+    public void close()
+    {
+        if (ownsExecutor)
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public synchronized EncryptedVault load() throws IOException
+    {
+        shards = null;
+        int shardCount = readManifest();
+        if (shardCount == 0)
+        {
+            return null;
+        }
+
+        final FileBasedEncryptedPasswordDatastore[] loading = new FileBasedEncryptedPasswordDatastore[shardCount];
+        List<Callable<EncryptedVault>> reads = Lists.newArrayListWithCapacity(shardCount);
+        for (int i = 0; i < shardCount; i++)
+        {
+            File shardFile = shardFile(generation, i);
+            if (!shardFile.isFile())
+            {
+                throw new IOException("Missing shard " + shardFile);
+            }
+            loading[i] = shardDatastore(shardFile);
+            final int index = i;
+            reads.add(new Callable<EncryptedVault>()
+            {
+                @Override
+                public EncryptedVault call() throws IOException
+                {
+                    return loading[index].load();
+                }
+            });
+        }
+
+        VaultHeader header = null;
+        List<EncryptedEntry> entries = Lists.newArrayList();
+        for (EncryptedVault shard : runAll(reads))
+        {
+            if (shard == null)
+            {
+                throw new IOException("Empty shard in " + directory);
+            }
+            if (header != null && !header.equals(shard.getHeader()))
+            {
+                throw new IOException("Shards in " + directory + " have different headers.");
+            }
+            header = shard.getHeader();
+            entries.addAll(shard.getEntries());
+        }
+
+        deleteOtherGenerations();
+        shards = loading;
+        return new EncryptedVault(header, entries);
+    }
+
+    @Override
+    public synchronized void store(EncryptedVault vault, VaultChanges changes) throws IOException
+    {
+        Preconditions.checkNotNull(vault, "vault cannot be null.");
+        Preconditions.checkNotNull(changes, "changes cannot be null.");
+
+        int shardCount = shards == null ? initialShardCount : shards.length;
+        while ((long) shardCount * maxShardEntries < vault.getEntries().size() && shardCount < (1 << 30))
+        {
+            shardCount *= 2;
+        }
+
+        if (changes.isFullRewrite() || shards == null || shardCount != shards.length)
+        {
+            writeGeneration(vault, shardCount);
+        }
+        else
+        {
+            writeChangedShards(vault, changes);
+        }
+    }
+
+    /**
+     * Write the provided vault as a new generation of shards, and switch the manifest over to it.
+     *
+     * @param vault Complete vault to write.
+     * @param shardCount Number of shards to write.
+     *
+     * @throws IOException if there is a problem writing the shards or manifest.
+     */
+    private void writeGeneration(EncryptedVault vault, int shardCount) throws IOException
+    {
+        int previousShardCount = getShardCount();
+        // Nothing may change the current shards in place until the new generation is complete.
+        shards = null;
+        if (generation < 0)
+        {
+            readManifest();
+        }
+        int newGeneration = generation + 1;
+        BitSet allShards = new BitSet(shardCount);
+        allShards.set(0, shardCount);
+        FileBasedEncryptedPasswordDatastore[] newShards = new FileBasedEncryptedPasswordDatastore[shardCount];
+        for (int i = 0; i < shardCount; i++)
+        {
+            File shardFile = shardFile(newGeneration, i);
+            if (!shardFile.isFile() && !shardFile.createNewFile())
+            {
+                throw new IOException("Unable to create shard " + shardFile);
+            }
+            newShards[i] = shardDatastore(shardFile);
+        }
+        writeShards(vault, newShards, allShards);
+
+        writeManifest(newGeneration, shardCount);
+        generation = newGeneration;
+        shards = newShards;
+        deleteOtherGenerations();
+        if (previousShardCount != 0 && previousShardCount != shardCount)
+        {
+            LOGGER.info("Resharded " + vault.getEntries().size() + " entries from " + previousShardCount + " to " +
+                shardCount + " shards.");
+        }
+    }
+
+    /**
+     * Rewrite only the shards holding the provided changes.
+     *
+     * @param vault Complete vault.
+     * @param changes Entries changed since the previous store.
+     *
+     * @throws IOException if there is a problem writing a shard.
+     */
+    private void writeChangedShards(EncryptedVault vault, VaultChanges changes) throws IOException
+    {
+        BitSet changedShards = new BitSet(shards.length);
+        for (EncryptedEntry entry : changes.getUpdatedEntries())
+        {
+            changedShards.set(shardOf(entry.getEncryptedApplication(), shards.length));
+        }
+        for (byte[] removedApplication : changes.getRemovedApplications())
+        {
+            changedShards.set(shardOf(removedApplication, shards.length));
+        }
+
+        FileBasedEncryptedPasswordDatastore[] currentShards = shards;
+        // A shard which failed part way through is left as it was, but the next store must rewrite everything.
+        shards = null;
+        writeShards(vault, currentShards, changedShards);
+        shards = currentShards;
+    }
+
+    /**
+     * Write the entries of the provided vault belonging to the selected shards.
+     *
+     * @param vault Complete vault.
+     * @param targets Datastores of every shard.
+     * @param selected Indexes of the shards to write.
+     *
+     * @throws IOException if there is a problem writing a shard.
+     */
+    private void writeShards(EncryptedVault vault, final FileBasedEncryptedPasswordDatastore[] targets,
+                             BitSet selected) throws IOException
+    {
+        if (selected.isEmpty())
+        {
+            return;
+        }
+
+        List<List<EncryptedEntry>> entriesByShard = Lists.newArrayListWithCapacity(targets.length);
+        for (int i = 0; i < targets.length; i++)
+        {
+            entriesByShard.add(selected.get(i) ? Lists.<EncryptedEntry>newArrayList() : null);
+        }
+        for (EncryptedEntry entry : vault.getEntries())
+        {
+            List<EncryptedEntry> shardEntries = entriesByShard.get(shardOf(entry.getEncryptedApplication(),
+                targets.length));
+            if (shardEntries != null)
+            {
+                shardEntries.add(entry);
+            }
+        }
+
+        List<Callable<Void>> writes = Lists.newArrayListWithCapacity(selected.cardinality());
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1))
+        {
+            final FileBasedEncryptedPasswordDatastore target = targets[i];
+            final EncryptedVault shard = new EncryptedVault(vault.getHeader(), entriesByShard.get(i));
+            writes.add(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws IOException
+                {
+                    target.store(shard, VaultChanges.fullRewrite());
+                    return null;
+                }
+            });
+        }
+        runAll(writes);
+    }
+
+    /**
+     * Run the provided tasks on {@link #executor}, split into at most {@link #parallelism} batches which each run
+     * their tasks in turn, returning once all are done. A single task, or every task once the pool has been shut
+     * down, runs on the calling thread.
+     *
+     * @param tasks Tasks to run.
+     * @param <T> Type of the task results.
+     * @return The results of the tasks, in the same order.
+     *
+     * @throws IOException if any task fails; the first failure is propagated.
+     */
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException
+    {
+        if (tasks.size() <= 1 || parallelism == 1 || executor.isShutdown())
+        {
+            return runInline(tasks);
+        }
+
+        int batchSize = (tasks.size() + parallelism - 1) / parallelism;
+        List<Callable<List<T>>> batches = Lists.newArrayList();
+        for (final List<Callable<T>> batch : Lists.partition(tasks, batchSize))
+        {
+            batches.add(new Callable<List<T>>()
+            {
+                @Override
+                public List<T> call() throws IOException
+                {
+                    return runInline(batch);
+                }
+            });
+        }
+
+        try
+        {
+            List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+            for (Future<List<T>> future : executor.invokeAll(batches))
+            {
+                results.addAll(future.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for shards.", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            else if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        catch (RejectedExecutionException e)
+        {
+            throw new IOException("Shard pool shut down while reading or writing shards.", e);
+        }
+    }
+
+    /**
+     * Run the provided tasks one after another on the calling thread.
+     *
+     * @param tasks Tasks to run.
+     * @param <T> Type of the task results.
+     * @return The results of the tasks, in the same order.
+     *
+     * @throws IOException if a task fails.
+     */
+    private static <T> List<T> runInline(List<Callable<T>> tasks) throws IOException
+    {
+        List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+        for (Callable<T> task : tasks)
+        {
+            try
+            {
+                results.add(task.call());
+            }
+            catch (IOException | RuntimeException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw new IOException(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Read the manifest into {@link #generation}.
+     *
+     * @return The number of shards of the current generation, or {@code 0} if nothing has been stored yet.
+     *
+     * @throws IOException if there is a problem reading the manifest, or it is corrupt.
+     */
+    private int readManifest() throws IOException
+    {
+        if (!manifestFile.exists())
+        {
+            generation = 0;
+            return 0;
+        }
+
+        DataInputStream in = new DataInputStream(new FileInputStream(manifestFile));
+        try
+        {
+            int magic = in.readInt();
+            int manifestGeneration = in.readInt();
+            int shardCount = in.readInt();
+            if (magic != MAGIC || manifestGeneration < 0 || shardCount <= 0 || Integer.bitCount(shardCount) != 1)
+            {
+                throw new IOException("Corrupt shard manifest " + manifestFile);
+            }
+            generation = manifestGeneration;
+            return shardCount;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Replace the manifest with one listing the provided generation.
+     *
+     * @param newGeneration Generation of shards to list.
+     * @param shardCount Number of shards of {@code newGeneration}.
+     *
+     * @throws IOException if there is a problem writing or renaming the manifest.
+     */
+    private void writeManifest(int newGeneration, int shardCount) throws IOException
+    {
+        long startNanos = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+        DataOutputStream manifest = new DataOutputStream(bytes);
+        manifest.writeInt(MAGIC);
+        manifest.writeInt(newGeneration);
+        manifest.writeInt(shardCount);
+        FileOutputStream out = new FileOutputStream(tempManifestFile);
+        try
+        {
+            bytes.writeTo(out);
+            if (durability != Durability.NONE)
+            {
+                out.getChannel().force(true);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        FileReplacement.replace(tempManifestFile, manifestFile, backupManifestFile, durability != Durability.NONE);
+        metricsListener.recordTime(PasswordMetricsListener.Timer.FILE_WRITE, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Delete shard files which don't belong to the current generation, left behind by earlier generations or by
+     * rewrites which never finished.
+     */
+    private void deleteOtherGenerations()
+    {
+        String currentPrefix = SHARD_PREFIX + generation + "-";
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (name.startsWith(SHARD_PREFIX) && !name.startsWith(currentPrefix) && !file.delete())
+            {
+                LOGGER.warn("Unable to delete old shard " + file);
+            }
+        }
+    }
+
+    /**
+     * Get the file of a shard.
+     *
+     * @param shardGeneration Generation of the shard.
+     * @param index Index of the shard.
+     * @return The file of the shard.
+     */
+    private File shardFile(int shardGeneration, int index)
+    {
+        return new File(directory, SHARD_PREFIX + shardGeneration + "-" + index + SHARD_SUFFIX);
+    }
+
+    /**
+     * Create the datastore of an existing shard file.
+     *
+     * @param shardFile Shard file.
+     * @return The datastore of {@code shardFile}.
+     */
+    private FileBasedEncryptedPasswordDatastore shardDatastore(File shardFile)
+    {
+        return new FileBasedEncryptedPasswordDatastore(shardFile, durability,
+            FileBasedEncryptedPasswordDatastore.DEFAULT_READ_MODE, metricsListener);
+    }
+
+    /**
+     * Get the shard holding an application.
+     *
+     * @param encryptedApplication Encrypted application name.
+     * @param shardCount Number of shards, a power of two.
+     * @return Index of the shard holding the application.
+     */
+    private static int shardOf(byte[] encryptedApplication, int shardCount)
+    {
+        // Doubling the shard count splits each shard in two, as the shard is taken from the low bits.
+        int hash = encryptedApplication.length >= Ints.BYTES ?
+            Ints.fromByteArray(encryptedApplication) : Arrays.hashCode(encryptedApplication);
+        return hash & (shardCount - 1);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of counters which many threads can add to at once without contending on a single memory location.
+ * <p>
+ * Each counter is split into one cell per stripe, and threads add to the stripe picked by their id, so threads on
+ * different processors usually update different cache lines. Reading a counter sums its cells. This is a smaller
+ * version of what Java 8's {@code LongAdder} does, which neither Java 7 nor older Android versions have.
+ */
+final class StripedCounters
+{
+    /** Longs between the cells of neighbouring stripes, so they never share a cache line (or an adjacent pair). */
+    private static final int PADDING = 16;
+
+    /** Most stripes to use, however many processors there are. */
+    private static final int MAX_STRIPES = 64;
+
+    /** Number of counters. */
+    private final int size;
+
+    /** Distance between one stripe's cells and the next's. */
+    private final int stride;
+
+    /** Mask selecting a stripe from a thread id; one less than the number of stripes, which is a power of two. */
+    private final int stripeMask;
+
+    /** Every stripe's cells, {@link #stride} apart. */
+    private final AtomicLongArray cells;
+
+    /**
+     * Create a new {@link StripedCounters}, with a stripe for each available processor.
+     *
+     * @param size Number of counters. Must be positive.
+     *
+     * @throws IllegalArgumentException if {@code size} is not positive.
+     */
+    StripedCounters(int size)
+    {
+        Preconditions.checkArgument(size > 0, "size must be positive.");
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, processors * 2 - 1)));
+        this.size = size;
+        this.stride = size + PADDING;
+        this.stripeMask = stripes - 1;
+        this.cells = new AtomicLongArray(stripes * stride);
+    }
+
+    /**
+     * Add to a counter.
+     *
+     * @param index Index of the counter. Must be non-negative and less than the number of counters.
+     * @param delta Amount to add.
+     */
+    void add(int index, long delta)
+    {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        cells.addAndGet(stripe * stride + index, delta);
+    }
+
+    /**
+     * Get the total of a counter. Not atomic with respect to concurrent additions, which may or may not be
+     * included.
+     *
+     * @param index Index of the counter. Must be non-negative and less than the number of counters.
+     * @return The total of every addition to the counter.
+     *
+     * @throws IndexOutOfBoundsException if {@code index} is out of range.
+     */
+    long sum(int index)
+    {
+        Preconditions.checkElementIndex(index, size);
+
+        long sum = 0;
+        for (int cell = index; cell < cells.length(); cell += stride)
+        {
+            sum += cells.get(cell);
+        }
+        return sum;
+    }
+}
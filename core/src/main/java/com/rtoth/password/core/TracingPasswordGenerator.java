@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import java.util.List;
+
+/**
+ * Generator which traces every call of another generator as a {@link PasswordTracer.Operation#GENERATE} span.
+ */
+final class TracingPasswordGenerator implements RandomPasswordGenerator
+{
+    /** Generator doing the work. */
+    private final RandomPasswordGenerator delegate;
+
+    /** Tracer receiving the spans. */
+    private final PasswordTracer tracer;
+
+    /**
+     * Create a new {@link TracingPasswordGenerator}.
+     *
+     * @param delegate Generator doing the work.
+     * @param tracer Tracer receiving the spans.
+     */
+    private TracingPasswordGenerator(RandomPasswordGenerator delegate, PasswordTracer tracer)
+    {
+        this.delegate = delegate;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Trace the provided generator, unless there is nothing to trace to.
+     *
+     * @param generator Generator to trace.
+     * @param tracer Tracer receiving the spans.
+     * @return A generator tracing {@code generator}, or {@code generator} itself if {@code tracer} is
+     *         {@link PasswordTracer#NONE}.
+     */
+    static RandomPasswordGenerator trace(RandomPasswordGenerator generator, PasswordTracer tracer)
+    {
+        return tracer == PasswordTracer.NONE ? generator : new TracingPasswordGenerator(generator, tracer);
+    }
+
+    @Override
+    public String generatePassword()
+    {
+        PasswordTracer.Span span = tracer.begin(PasswordTracer.Operation.GENERATE);
+        String password = null;
+        try
+        {
+            password = delegate.generatePassword();
+            return password;
+        }
+        finally
+        {
+            span.end(password == null ? 0 : 1, password == null ? 0 : password.length(), password != null);
+        }
+    }
+
+    @Override
+    public List<String> generatePasswords(int count)
+    {
+        PasswordTracer.Span span = tracer.begin(PasswordTracer.Operation.GENERATE);
+        List<String> passwords = null;
+        try
+        {
+            passwords = delegate.generatePasswords(count);
+            return passwords;
+        }
+        finally
+        {
+            // Only add up the lengths if something is recording them.
+            if (span != PasswordTracer.Span.NONE)
+            {
+                long length = 0;
+                if (passwords != null)
+                {
+                    for (String password : passwords)
+                    {
+                        length += password.length();
+                    }
+                }
+                span.end(passwords == null ? 0 : passwords.size(), length, passwords != null);
+            }
+        }
+    }
+}
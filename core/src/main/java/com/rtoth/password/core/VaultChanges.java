@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Entries changed since the previous store to an {@link EncryptedPasswordDatastore}.
+ * <p>
+ * Datastores which rewrite everything on each store can ignore this entirely. Datastores which only write what
+ * changed must write the complete vault instead whenever {@link #isFullRewrite()} is {@code true}.
+ */
+public final class VaultChanges
+{
+    /** Changes requiring the complete vault to be rewritten. */
+    private static final VaultChanges FULL_REWRITE =
+        new VaultChanges(true, ImmutableList.<EncryptedEntry>of(), ImmutableList.<byte[]>of());
+
+    /** Whether the complete vault must be rewritten. */
+    private final boolean fullRewrite;
+
+    /** Entries added or changed. */
+    private final List<EncryptedEntry> updatedEntries;
+
+    /** Encrypted application names of removed entries. */
+    private final List<byte[]> removedApplications;
+
+    /**
+     * Create a new {@link VaultChanges}.
+     *
+     * @param fullRewrite Whether the complete vault must be rewritten.
+     * @param updatedEntries Entries added or changed.
+     * @param removedApplications Encrypted application names of removed entries.
+     */
+    private VaultChanges(boolean fullRewrite, List<EncryptedEntry> updatedEntries, List<byte[]> removedApplications)
+    {
+        this.fullRewrite = fullRewrite;
+        this.updatedEntries = updatedEntries;
+        this.removedApplications = removedApplications;
+    }
+
+    /**
+     * Get changes requiring the complete vault to be rewritten, for example because the {@link VaultHeader}
+     * changed.
+     *
+     * @return Changes requiring the complete vault to be rewritten. Never {@code null}.
+     */
+    public static VaultChanges fullRewrite()
+    {
+        return FULL_REWRITE;
+    }
+
+    /**
+     * Get changes consisting of the provided entries only.
+     *
+     * @param updatedEntries Entries added or changed. Cannot be {@code null}.
+     * @param removedApplications Encrypted application names of removed entries. Cannot be {@code null}.
+     * @return The changes. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code updatedEntries} or {@code removedApplications} is {@code null}.
+     */
+    public static VaultChanges of(List<EncryptedEntry> updatedEntries, List<byte[]> removedApplications)
+    {
+        return new VaultChanges(false,
+            ImmutableList.copyOf(Preconditions.checkNotNull(updatedEntries, "updatedEntries cannot be null.")),
+            ImmutableList.copyOf(
+                Preconditions.checkNotNull(removedApplications, "removedApplications cannot be null.")));
+    }
+
+    /**
+     * Get whether the complete vault must be rewritten.
+     *
+     * @return {@code true} if the complete vault must be rewritten, {@code false} if only the entries listed here
+     *         changed.
+     */
+    public boolean isFullRewrite()
+    {
+        return fullRewrite;
+    }
+
+    /**
+     * Get the entries added or changed. Always empty for a full rewrite.
+     *
+     * @return An immutable list of the entries added or changed. Never {@code null}.
+     */
+    public List<EncryptedEntry> getUpdatedEntries()
+    {
+        return updatedEntries;
+    }
+
+    /**
+     * Get the encrypted application names of the removed entries. Always empty for a full rewrite.
+     *
+     * @return An immutable list of the encrypted application names of the removed entries. Never {@code null}.
+     */
+    public List<byte[]> getRemovedApplications()
+    {
+        return removedApplications;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Per-vault key derivation parameters.
+ * <p>
+ * Every vault carries exactly one header, so the (expensive) master key derivation only has to happen once when
+ * the vault is unlocked rather than once per encrypted value.
+ */
+public final class VaultHeader
+{
+    /** Version of the original format, where every value was encrypted with its own salt. */
+    public static final int LEGACY_VERSION = 1;
+
+    /** Current vault format version. */
+    public static final int CURRENT_VERSION = 2;
+
+    /** Key derivation function used for new vaults. */
+    public static final String DEFAULT_KDF = "PBKDF2WithHmacSHA1";
+
+    /** Key derivation iterations used for new vaults. */
+    public static final int DEFAULT_ITERATIONS = 65536;
+
+    /** Size of the random salt used for new vaults, in bytes. */
+    public static final int SALT_BYTES = 16;
+
+    /**
+     * Header of a legacy vault, which has no key derivation parameters of its own. Entries of such a vault hold
+     * the UTF-8 bytes of the original per-value encrypted strings.
+     */
+    public static final VaultHeader LEGACY = new VaultHeader();
+
+    /** Format version of the vault. */
+    private final int version;
+
+    /** Name of the key derivation function. */
+    private final String kdf;
+
+    /** Number of key derivation iterations. */
+    private final int iterations;
+
+    /** Key derivation salt. */
+    private final byte[] salt;
+
+    /** Value derived from the master key, used to check the master password before decrypting anything. */
+    private final byte[] keyCheck;
+
+    /**
+     * Create a new {@link VaultHeader}.
+     *
+     * @param version Format version of the vault. Must be {@link #CURRENT_VERSION}.
+     * @param kdf Name of the key derivation function. Cannot be {@code null}.
+     * @param iterations Number of key derivation iterations. Must be positive.
+     * @param salt Key derivation salt. Cannot be {@code null} or empty.
+     * @param keyCheck Key check value. Cannot be {@code null} or empty.
+     *
+     * @throws IllegalArgumentException if any of the arguments are invalid.
+     * @throws NullPointerException if {@code kdf}, {@code salt}, or {@code keyCheck} is {@code null}.
+     */
+    public VaultHeader(int version, String kdf, int iterations, byte[] salt, byte[] keyCheck)
+    {
+        // A newer version may mean anything; decoding it as this one could corrupt it on the next save.
+        Preconditions.checkArgument(version == CURRENT_VERSION, "Unsupported vault version: " + version);
+        Preconditions.checkNotNull(kdf, "kdf cannot be null.");
+        Preconditions.checkArgument(iterations > 0, "iterations must be positive.");
+        Preconditions.checkNotNull(salt, "salt cannot be null.");
+        Preconditions.checkArgument(salt.length > 0, "salt cannot be empty.");
+        Preconditions.checkNotNull(keyCheck, "keyCheck cannot be null.");
+        Preconditions.checkArgument(keyCheck.length > 0, "keyCheck cannot be empty.");
+
+        this.version = version;
+        this.kdf = kdf;
+        this.iterations = iterations;
+        this.salt = salt.clone();
+        this.keyCheck = keyCheck.clone();
+    }
+
+    /**
+     * Create the {@link #LEGACY} header.
+     */
+    private VaultHeader()
+    {
+        this.version = LEGACY_VERSION;
+        this.kdf = "";
+        this.iterations = 0;
+        this.salt = new byte[0];
+        this.keyCheck = new byte[0];
+    }
+
+    /**
+     * Get whether this is the header of a legacy vault.
+     *
+     * @return {@code true} if this is the header of a legacy vault, {@code false} otherwise.
+     */
+    public boolean isLegacy()
+    {
+        return version == LEGACY_VERSION;
+    }
+
+    /**
+     * Get the format version of the vault.
+     *
+     * @return The format version of the vault.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Get the name of the key derivation function.
+     *
+     * @return The name of the key derivation function. Never {@code null}.
+     */
+    public String getKdf()
+    {
+        return kdf;
+    }
+
+    /**
+     * Get the number of key derivation iterations.
+     *
+     * @return The number of key derivation iterations.
+     */
+    public int getIterations()
+    {
+        return iterations;
+    }
+
+    /**
+     * Get the key derivation salt.
+     *
+     * @return A copy of the key derivation salt. Never {@code null}.
+     */
+    public byte[] getSalt()
+    {
+        return salt.clone();
+    }
+
+    /**
+     * Get the key check value.
+     *
+     * @return A copy of the key check value. Never {@code null}.
+     */
+    public byte[] getKeyCheck()
+    {
+        return keyCheck.clone();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof VaultHeader))
+        {
+            return false;
+        }
+        VaultHeader other = (VaultHeader) o;
+        return version == other.version &&
+            iterations == other.iterations &&
+            kdf.equals(other.kdf) &&
+            Arrays.equals(salt, other.salt) &&
+            Arrays.equals(keyCheck, other.keyCheck);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(salt);
+    }
+}
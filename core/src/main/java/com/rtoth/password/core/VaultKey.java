@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Session key derived once from the master password and a {@link VaultHeader}, used to encrypt and decrypt
+ * individual vault values without repeating the key derivation.
+ * <p>
+ * Values are encrypted with AES-CBC and authenticated with a truncated HMAC-SHA256 (encrypt-then-MAC). Application
+ * names use a synthetic IV derived from the name itself, so the same name always encrypts to the same ciphertext
+ * under a given key. Passwords use a random IV, and their MAC also covers the encrypted application name of their
+ * entry, so a password moved to another entry fails authentication.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class VaultKey
+{
+    /** Cipher used for values. */
+    private static final String CIPHER = "AES/CBC/PKCS5Padding";
+
+    /** MAC used for authentication and subkey derivation. */
+    private static final String MAC = "HmacSHA256";
+
+    /** Size of the AES key, IV, and truncated MAC, in bytes. */
+    private static final int BLOCK_BYTES = 16;
+
+    /** Size of the key produced by the key derivation function, in bits. */
+    private static final int MASTER_KEY_BITS = 160;
+
+    /** Shared source of salts and IVs. */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** Header describing how this key was derived. */
+    private final VaultHeader header;
+
+    /** AES encryption key. */
+    private final SecretKeySpec encryptionKey;
+
+    /** HMAC authentication key. */
+    private final SecretKeySpec authenticationKey;
+
+    /** HMAC key used to derive synthetic IVs for application names. */
+    private final SecretKeySpec syntheticIvKey;
+
+    /**
+     * Create a new {@link VaultKey}.
+     *
+     * @param header Header describing how the key was derived.
+     * @param masterKey Raw key derivation output.
+     */
+    private VaultKey(VaultHeader header, byte[] masterKey)
+    {
+        this.header = header;
+        this.encryptionKey = new SecretKeySpec(
+            Arrays.copyOf(subkey(masterKey, "encryption"), BLOCK_BYTES), "AES");
+        this.authenticationKey = new SecretKeySpec(subkey(masterKey, "authentication"), MAC);
+        this.syntheticIvKey = new SecretKeySpec(subkey(masterKey, "synthetic-iv"), MAC);
+    }
+
+    /**
+     * Create a brand new key, with a fresh random salt, for the provided master password.
+     *
+     * @param masterPassword Plaintext master password. Cannot be {@code null}.
+     * @return A new key. Never {@code null}.
+     *
+     * @throws NullPointerException if {@code masterPassword} is {@code null}.
+     */
+    static VaultKey generate(String masterPassword)
+    {
+        Preconditions.checkNotNull(masterPassword, "masterPassword cannot be null.");
+
+        byte[] salt = new byte[VaultHeader.SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] masterKey = deriveMasterKey(
+            masterPassword, VaultHeader.DEFAULT_KDF, VaultHeader.DEFAULT_ITERATIONS, salt);
+        VaultHeader header = new VaultHeader(VaultHeader.CURRENT_VERSION, VaultHeader.DEFAULT_KDF,
+            VaultHeader.DEFAULT_ITERATIONS, salt, keyCheck(masterKey));
+        return new VaultKey(header, masterKey);
+    }
+
+    /**
+     * Derive the key for an existing vault.
+     *
+     * @param masterPassword Plaintext master password. Cannot be {@code null}.
+     * @param header Header of the existing vault. Cannot be {@code null}.
+     * @return The key for the vault. Never {@code null}.
+     *
+     * @throws EncryptionOperationNotPossibleException if {@code masterPassword} is not correct for the vault.
+     * @throws NullPointerException if {@code masterPassword} or {@code header} is {@code null}.
+     */
+    static VaultKey derive(String masterPassword, VaultHeader header)
+        throws EncryptionOperationNotPossibleException
+    {
+        Preconditions.checkNotNull(masterPassword, "masterPassword cannot be null.");
+        Preconditions.checkNotNull(header, "header cannot be null.");
+
+        byte[] masterKey = deriveMasterKey(masterPassword, header.getKdf(), header.getIterations(), header.getSalt());
+        if (!MessageDigest.isEqual(keyCheck(masterKey), header.getKeyCheck()))
+        {
+            throw new EncryptionOperationNotPossibleException("Incorrect master password.");
+        }
+        return new VaultKey(header, masterKey);
+    }
+
+    /**
+     * Get the header describing how this key was derived.
+     *
+     * @return The header describing how this key was derived. Never {@code null}.
+     */
+    VaultHeader getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * Encrypt an application name. The result is deterministic for a given name and key.
+     *
+     * @param application Plaintext application name. Cannot be {@code null}.
+     * @return The encrypted application name. Never {@code null}.
+     */
+    byte[] encryptApplication(String application)
+    {
+        byte[] plaintext = application.getBytes(Charsets.UTF_8);
+        return encrypt(plaintext, Arrays.copyOf(mac(syntheticIvKey, plaintext), BLOCK_BYTES), null);
+    }
+
+    /**
+     * Encrypt a password using a random IV, binding it to the entry of the provided application.
+     *
+     * @param password Plaintext password. Cannot be {@code null}.
+     * @param encryptedApplication Encrypted application name of the password's entry, as returned by
+     *                             {@link #encryptApplication(String)}. Cannot be {@code null}.
+     * @return The encrypted password. Never {@code null}.
+     */
+    byte[] encryptPassword(String password, byte[] encryptedApplication)
+    {
+        byte[] iv = new byte[BLOCK_BYTES];
+        RANDOM.nextBytes(iv);
+        return encrypt(password.getBytes(Charsets.UTF_8), iv, encryptedApplication);
+    }
+
+    /**
+     * Decrypt an application name previously produced by {@link #encryptApplication(String)}.
+     *
+     * @param ciphertext Encrypted application name. Cannot be {@code null}.
+     * @return The plaintext application name. Never {@code null}.
+     *
+     * @throws EncryptionOperationNotPossibleException if {@code ciphertext} was not produced by this key or has
+     *         been tampered with.
+     */
+    String decryptApplication(byte[] ciphertext) throws EncryptionOperationNotPossibleException
+    {
+        return decrypt(ciphertext, null);
+    }
+
+    /**
+     * Decrypt a password previously produced by {@link #encryptPassword(String, byte[])}.
+     *
+     * @param ciphertext Encrypted password. Cannot be {@code null}.
+     * @param encryptedApplication Encrypted application name of the password's entry. Cannot be {@code null}.
+     * @return The plaintext password. Never {@code null}.
+     *
+     * @throws EncryptionOperationNotPossibleException if {@code ciphertext} was not produced by this key for the
+     *         entry of {@code encryptedApplication}, or has been tampered with.
+     */
+    String decryptPassword(byte[] ciphertext, byte[] encryptedApplication)
+        throws EncryptionOperationNotPossibleException
+    {
+        return decrypt(ciphertext, Preconditions.checkNotNull(encryptedApplication));
+    }
+
+    /**
+     * Authenticate and decrypt a value.
+     *
+     * @param ciphertext Encrypted value.
+     * @param associatedData Data the value's MAC also covers, or {@code null} if none.
+     * @return The plaintext value.
+     *
+     * @throws EncryptionOperationNotPossibleException if authentication or decryption fails.
+     */
+    private String decrypt(byte[] ciphertext, byte[] associatedData) throws EncryptionOperationNotPossibleException
+    {
+        if (ciphertext.length < BLOCK_BYTES * 3)
+        {
+            throw new EncryptionOperationNotPossibleException("Ciphertext is too short.");
+        }
+
+        int macOffset = ciphertext.length - BLOCK_BYTES;
+        byte[] expectedMac = Arrays.copyOf(authenticate(ciphertext, macOffset, associatedData), BLOCK_BYTES);
+        if (!MessageDigest.isEqual(expectedMac, Arrays.copyOfRange(ciphertext, macOffset, ciphertext.length)))
+        {
+            throw new EncryptionOperationNotPossibleException("Ciphertext failed authentication.");
+        }
+
+        try
+        {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(ciphertext, 0, BLOCK_BYTES));
+            return new String(
+                cipher.doFinal(ciphertext, BLOCK_BYTES, macOffset - BLOCK_BYTES), Charsets.UTF_8);
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new EncryptionOperationNotPossibleException(e);
+        }
+    }
+
+    /**
+     * Encrypt and authenticate the provided plaintext.
+     *
+     * @param plaintext Plaintext to encrypt.
+     * @param iv IV to use.
+     * @param associatedData Data the MAC should also cover, or {@code null} if none.
+     * @return IV, ciphertext, and truncated MAC, concatenated.
+     */
+    private byte[] encrypt(byte[] plaintext, byte[] iv, byte[] associatedData)
+    {
+        try
+        {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+            int ciphertextLength = cipher.getOutputSize(plaintext.length);
+            byte[] result = new byte[BLOCK_BYTES + ciphertextLength + BLOCK_BYTES];
+            System.arraycopy(iv, 0, result, 0, BLOCK_BYTES);
+            int written = cipher.doFinal(plaintext, 0, plaintext.length, result, BLOCK_BYTES);
+            if (written != ciphertextLength)
+            {
+                result = Arrays.copyOf(result, BLOCK_BYTES + written + BLOCK_BYTES);
+            }
+            int macOffset = result.length - BLOCK_BYTES;
+            System.arraycopy(authenticate(result, macOffset, associatedData), 0, result, macOffset, BLOCK_BYTES);
+            return result;
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new EncryptionOperationNotPossibleException(e);
+        }
+    }
+
+    /**
+     * Compute the MAC of the first {@code length} bytes of {@code data}, preceded by any associated data and its
+     * length.
+     *
+     * @param data Data to authenticate.
+     * @param length Number of bytes to authenticate.
+     * @param associatedData Other data to authenticate, or {@code null} if none.
+     * @return The full (untruncated) MAC.
+     */
+    private byte[] authenticate(byte[] data, int length, byte[] associatedData)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance(MAC);
+            mac.init(authenticationKey);
+            if (associatedData != null)
+            {
+                mac.update(Ints.toByteArray(associatedData.length));
+                mac.update(associatedData);
+            }
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new EncryptionOperationNotPossibleException(e);
+        }
+    }
+
+    /**
+     * Run the key derivation function.
+     *
+     * @param masterPassword Plaintext master password.
+     * @param kdf Name of the key derivation function.
+     * @param iterations Number of iterations.
+     * @param salt Salt to use.
+     * @return The raw derived key.
+     */
+    private static byte[] deriveMasterKey(String masterPassword, String kdf, int iterations, byte[] salt)
+    {
+        char[] passwordChars = masterPassword.toCharArray();
+        PBEKeySpec keySpec = new PBEKeySpec(passwordChars, salt, iterations, MASTER_KEY_BITS);
+        try
+        {
+            return SecretKeyFactory.getInstance(kdf).generateSecret(keySpec).getEncoded();
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new EncryptionOperationNotPossibleException(e);
+        }
+        finally
+        {
+            keySpec.clearPassword();
+            Arrays.fill(passwordChars, '\0');
+        }
+    }
+
+    /**
+     * Derive the key check value stored in the header from the raw master key.
+     *
+     * @param masterKey Raw derived key.
+     * @return The key check value.
+     */
+    private static byte[] keyCheck(byte[] masterKey)
+    {
+        return Arrays.copyOf(subkey(masterKey, "key-check"), BLOCK_BYTES);
+    }
+
+    /**
+     * Derive a purpose-specific subkey from the raw master key.
+     *
+     * @param masterKey Raw derived key.
+     * @param purpose Purpose of the subkey.
+     * @return The subkey.
+     */
+    private static byte[] subkey(byte[] masterKey, String purpose)
+    {
+        return mac(new SecretKeySpec(masterKey, MAC), purpose.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Compute an HMAC.
+     *
+     * @param key Key to use.
+     * @param data Data to authenticate.
+     * @return The MAC.
+     */
+    private static byte[] mac(SecretKeySpec key, byte[] data)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance(MAC);
+            mac.init(key);
+            return mac.doFinal(data);
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new EncryptionOperationNotPossibleException(e);
+        }
+    }
+}
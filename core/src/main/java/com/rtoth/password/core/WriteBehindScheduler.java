@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces save requests into as few saves as possible.
+ * <p>
+ * A save runs once no new request has arrived for the save delay, or once the oldest unsaved request is as old as
+ * the maximum save delay, whichever comes first. Every request made before a save starts is covered by that save.
+ * At most one save runs at a time.
+ * <p>
+ * A failed save is retried, waiting twice as long after each consecutive failure, up to a limit, until one
+ * succeeds, the executor is shut down, or {@link #stop()} is called. Its requests stay unsaved meanwhile, so new
+ * requests and {@link #flush()} retry straight away.
+ */
+final class WriteBehindScheduler
+{
+    /** Logger for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindScheduler.class);
+
+    /** Delay before retrying after the first failed save, in nanoseconds. */
+    private static final long MIN_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Longest delay before retrying a failed save, in nanoseconds. */
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /** Executor on which saves are run. */
+    private final ScheduledExecutorService executorService;
+
+    /** Performs a single save. */
+    private final Callable<Void> saveTask;
+
+    /** Quiet period after the latest request before saving, in nanoseconds. */
+    private final long saveDelayNanos;
+
+    /** Maximum time between the oldest unsaved request and saving, in nanoseconds. */
+    private final long maxSaveDelayNanos;
+
+    /** Completes when the next save finishes, or {@code null} if nothing needs saving. */
+    private SettableFuture<Void> pendingSave;
+
+    /** Completes when the save currently running finishes, or {@code null} if no save is running. */
+    private SettableFuture<Void> runningSave;
+
+    /** Completed future of the latest save to finish, or {@code null} if no save has finished. */
+    private SettableFuture<Void> lastSave;
+
+    /** Scheduled run of {@link FlushTask}, or {@code null} if none is scheduled. */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /** {@link System#nanoTime()} of the oldest unsaved request. */
+    private long firstRequestNanos;
+
+    /** {@link System#nanoTime()} at which the pending save should run. */
+    private long deadlineNanos;
+
+    /** Delay before retrying if the next save fails, in nanoseconds. */
+    private long retryDelayNanos = MIN_RETRY_DELAY_NANOS;
+
+    /** Why the latest save failed, if {@link #pendingSave} is only its retry; {@code null} otherwise. */
+    private Exception retryFailure;
+
+    /** Whether failed saves are no longer retried. */
+    private boolean stopped = false;
+
+    /**
+     * Create a new {@link WriteBehindScheduler}.
+     *
+     * @param executorService Executor on which saves are run. Cannot be {@code null}.
+     * @param saveTask Performs a single save. Cannot be {@code null}.
+     * @param saveDelayNanos Quiet period after the latest request before saving. Must be non-negative.
+     * @param maxSaveDelayNanos Maximum time between the oldest unsaved request and saving. Must be
+     *                          &ge; {@code saveDelayNanos}.
+     *
+     * @throws IllegalArgumentException if either delay is out of range.
+     * @throws NullPointerException if {@code executorService} or {@code saveTask} is {@code null}.
+     */
+    WriteBehindScheduler(ScheduledExecutorService executorService, Callable<Void> saveTask,
+                         long saveDelayNanos, long maxSaveDelayNanos)
+    {
+        this.executorService = Preconditions.checkNotNull(executorService, "executorService cannot be null.");
+        this.saveTask = Preconditions.checkNotNull(saveTask, "saveTask cannot be null.");
+        Preconditions.checkArgument(saveDelayNanos >= 0, "saveDelayNanos must be non-negative.");
+        Preconditions.checkArgument(maxSaveDelayNanos >= saveDelayNanos,
+            "maxSaveDelayNanos must be >= saveDelayNanos.");
+        this.saveDelayNanos = saveDelayNanos;
+        this.maxSaveDelayNanos = maxSaveDelayNanos;
+    }
+
+    /**
+     * Request a save, which will be merged with any other requests made before it runs.
+     *
+     * @return A future which completes when a save covering this request has finished. Never {@code null}.
+     */
+    synchronized ListenableFuture<Void> requestSave()
+    {
+        long now = System.nanoTime();
+        if (pendingSave == null)
+        {
+            pendingSave = SettableFuture.create();
+            firstRequestNanos = now;
+        }
+        retryFailure = null;
+        deadlineNanos = Math.min(now + saveDelayNanos, firstRequestNanos + maxSaveDelayNanos);
+        if (scheduledFlush == null)
+        {
+            schedule(deadlineNanos - now);
+        }
+        return pendingSave;
+    }
+
+    /**
+     * Save any unsaved requests as soon as possible.
+     *
+     * @return A future which completes when every request made so far has been saved. Never {@code null}.
+     */
+    synchronized ListenableFuture<Void> flush()
+    {
+        if (pendingSave != null)
+        {
+            retryFailure = null;
+            deadlineNanos = System.nanoTime();
+            if (scheduledFlush != null)
+            {
+                scheduledFlush.cancel(false);
+            }
+            schedule(0);
+            return pendingSave;
+        }
+        else if (runningSave != null)
+        {
+            return runningSave;
+        }
+        return Futures.immediateFuture(null);
+    }
+
+    /**
+     * Wait for every request made so far to be saved, without saving any sooner than usual.
+     *
+     * @return A future which completes when every request made so far has been saved, or fails with the cause if
+     *         the latest save covering them fails. Never {@code null}.
+     */
+    synchronized ListenableFuture<Void> whenSaved()
+    {
+        if (pendingSave != null)
+        {
+            return pendingSave;
+        }
+        else if (runningSave != null)
+        {
+            return runningSave;
+        }
+        return lastSave != null ? lastSave : Futures.<Void>immediateFuture(null);
+    }
+
+    /**
+     * Stop retrying failed saves. A retry which is waiting out its delay is cancelled, and its future fails with the
+     * cause of the failed save; saves which were requested or flushed still run. Does nothing if already stopped.
+     */
+    synchronized void stop()
+    {
+        stopped = true;
+        if (retryFailure != null)
+        {
+            if (scheduledFlush != null)
+            {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            pendingSave.setException(retryFailure);
+            pendingSave = null;
+            retryFailure = null;
+        }
+    }
+
+    /**
+     * Keep the requests of a failed save unsaved, and retry them once the retry delay has passed unless something
+     * retries them sooner. Callers must hold this object's monitor.
+     *
+     * @param failure Why the save failed.
+     */
+    private void retryAfterFailure(Exception failure)
+    {
+        if (stopped)
+        {
+            LOGGER.error("Error storing passwords; not retrying, as saving has stopped.", failure);
+            return;
+        }
+
+        long now = System.nanoTime();
+        LOGGER.warn("Error storing passwords, retrying in " + TimeUnit.NANOSECONDS.toMillis(retryDelayNanos) +
+            " ms.", failure);
+        if (pendingSave == null)
+        {
+            pendingSave = SettableFuture.create();
+            firstRequestNanos = now;
+            deadlineNanos = now + retryDelayNanos;
+            retryFailure = failure;
+        }
+        retryDelayNanos = Math.min(retryDelayNanos * 2, MAX_RETRY_DELAY_NANOS);
+    }
+
+    /**
+     * Schedule a {@link FlushTask}. Callers must hold this object's monitor.
+     *
+     * @param delayNanos Delay before running the task.
+     */
+    private void schedule(long delayNanos)
+    {
+        try
+        {
+            scheduledFlush =
+                executorService.schedule(new FlushTask(), Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // The executor was shut down, so nothing can save the pending requests any more.
+            scheduledFlush = null;
+            if (pendingSave != null)
+            {
+                pendingSave.setException(e);
+                pendingSave = null;
+                retryFailure = null;
+            }
+        }
+    }
+
+    /**
+     * Runs the pending save once its deadline has passed.
+     */
+    private final class FlushTask implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            SettableFuture<Void> save;
+            synchronized (WriteBehindScheduler.this)
+            {
+                if (pendingSave == null || runningSave != null)
+                {
+                    // Nothing to do, or the running save will reschedule once it's done.
+                    scheduledFlush = null;
+                    return;
+                }
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos > 0)
+                {
+                    // More requests arrived since this was scheduled; wait out the new deadline.
+                    schedule(remainingNanos);
+                    return;
+                }
+
+                save = pendingSave;
+                pendingSave = null;
+                retryFailure = null;
+                runningSave = save;
+                scheduledFlush = null;
+            }
+
+            Exception failure = null;
+            try
+            {
+                saveTask.call();
+                save.set(null);
+            }
+            catch (Exception e)
+            {
+                failure = e;
+                save.setException(e);
+            }
+            finally
+            {
+                synchronized (WriteBehindScheduler.this)
+                {
+                    runningSave = null;
+                    lastSave = save;
+                    if (failure == null)
+                    {
+                        retryDelayNanos = MIN_RETRY_DELAY_NANOS;
+                    }
+                    else
+                    {
+                        retryAfterFailure(failure);
+                    }
+                    // Once stopped, a pending save can only be one that was requested or flushed, not a retry.
+                    if (pendingSave != null && scheduledFlush == null && !(stopped && retryFailure != null))
+                    {
+                        schedule(deadlineNanos - System.nanoTime());
+                    }
+                }
+            }
+        }
+    }
+}
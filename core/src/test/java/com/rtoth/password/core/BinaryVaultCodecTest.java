@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static com.rtoth.password.core.TestVaults.contents;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link BinaryVaultCodec}.
+ */
+public class BinaryVaultCodecTest
+{
+    @Test
+    public void vaultRoundTripsThroughChannel() throws Exception
+    {
+        // Larger than the streaming buffer, with a field that doesn't fit in it, so both refills and growth happen.
+        ImmutableList.Builder<EncryptedEntry> entries = ImmutableList.builder();
+        for (int i = 0; i < 5000; i++)
+        {
+            entries.add(TestVaults.entry("application-" + i, "password-" + i));
+        }
+        entries.add(TestVaults.entry("large", Strings.repeat("x", 100 * 1024)));
+        EncryptedVault vault = new EncryptedVault(TestVaults.HEADER, entries.build());
+
+        EncryptedVault read = BinaryVaultCodec.read(
+            Channels.newChannel(new ByteArrayInputStream(withoutMagic(encode(vault)))));
+
+        assertHeaderEquals(vault.getHeader(), read.getHeader());
+        assertEquals(contents(vault), contents(read));
+    }
+
+    @Test
+    public void vaultRoundTripsThroughBuffer() throws Exception
+    {
+        EncryptedVault vault = TestVaults.vault("a", "1", "b", "2");
+
+        EncryptedVault read = BinaryVaultCodec.read(ByteBuffer.wrap(withoutMagic(encode(vault))));
+
+        assertHeaderEquals(vault.getHeader(), read.getHeader());
+        assertEquals(contents(vault), contents(read));
+    }
+
+    @Test
+    public void readRejectsTruncatedVault() throws Exception
+    {
+        byte[] encoded = withoutMagic(encode(TestVaults.vault("a", "1", "b", "2")));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+
+        try
+        {
+            BinaryVaultCodec.read(Channels.newChannel(new ByteArrayInputStream(truncated)));
+            fail("Truncated vault should have been rejected.");
+        }
+        catch (EOFException e)
+        {
+            // Expected
+        }
+        try
+        {
+            BinaryVaultCodec.read(ByteBuffer.wrap(truncated));
+            fail("Truncated vault should have been rejected.");
+        }
+        catch (EOFException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void loadRejectsTruncatedVaultFile() throws Exception
+    {
+        File passwordFile = TestVaults.tempFile();
+        new FileBasedEncryptedPasswordDatastore(passwordFile).store(TestVaults.vault("a", "1", "b", "2"),
+            VaultChanges.fullRewrite());
+        byte[] encoded = Files.toByteArray(passwordFile);
+        Files.write(Arrays.copyOf(encoded, encoded.length - 3), passwordFile);
+
+        for (ReadMode readMode : ReadMode.values())
+        {
+            try
+            {
+                new FileBasedEncryptedPasswordDatastore(passwordFile, Durability.NONE, readMode).load();
+                fail("Truncated vault file should have been rejected in " + readMode + " mode.");
+            }
+            catch (EOFException e)
+            {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void readRejectsUnknownFormatVersion() throws Exception
+    {
+        byte[] encoded = withoutMagic(encode(TestVaults.vault("a", "1")));
+        encoded[0]++;
+
+        try
+        {
+            BinaryVaultCodec.read(ByteBuffer.wrap(encoded));
+            fail("Unknown format version should have been rejected.");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Encode a vault.
+     *
+     * @param vault Vault to encode.
+     * @return The encoded vault, starting with the magic number.
+     *
+     * @throws IOException if the vault could not be encoded.
+     */
+    private static byte[] encode(EncryptedVault vault) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryVaultCodec.write(vault, Channels.newChannel(out));
+        byte[] encoded = out.toByteArray();
+        assertEquals(BinaryVaultCodec.MAGIC, ByteBuffer.wrap(encoded).getInt());
+        return encoded;
+    }
+
+    /**
+     * Strip the magic number, which callers of {@link BinaryVaultCodec} read themselves to detect the format.
+     *
+     * @param encoded Encoded vault, starting with the magic number.
+     * @return The encoded vault, starting just after the magic number.
+     */
+    private static byte[] withoutMagic(byte[] encoded)
+    {
+        return Arrays.copyOfRange(encoded, 4, encoded.length);
+    }
+
+    /**
+     * Assert that two vault headers are equal.
+     *
+     * @param expected Expected header.
+     * @param actual Actual header.
+     */
+    private static void assertHeaderEquals(VaultHeader expected, VaultHeader actual)
+    {
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getKdf(), actual.getKdf());
+        assertEquals(expected.getIterations(), actual.getIterations());
+        assertArrayEquals(expected.getSalt(), actual.getSalt());
+        assertArrayEquals(expected.getKeyCheck(), actual.getKeyCheck());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Tests for {@link CsvPasswordRecordReader}.
+ */
+public class CsvPasswordRecordReaderTest
+{
+    @Test
+    public void readHandlesQuotedFields() throws Exception
+    {
+        String csv = "Title,Password,Notes\n"
+            + "\"Bank, savings\",\"say \"\"hi\"\"\",\n"
+            + "plain,secret,\"unused, \"\"quoted\"\"\"\n";
+
+        assertEquals(ImmutableList.of(
+            ImmutableList.of("Bank, savings", "say \"hi\""),
+            ImmutableList.of("plain", "secret")), readAll(csv));
+    }
+
+    @Test
+    public void readHandlesEmbeddedLineBreaks() throws Exception
+    {
+        String csv = "name,password\r\n"
+            + "\"two\nlines\",\"carriage\r\nreturn\"\r\n"
+            + "\r\n"
+            + "last,row";
+
+        assertEquals(ImmutableList.of(
+            ImmutableList.of("two\nlines", "carriage\r\nreturn"),
+            ImmutableList.of("last", "row")), readAll(csv));
+    }
+
+    @Test
+    public void readPrefersApplicationColumn() throws Exception
+    {
+        String csv = "url,name,application,password\n"
+            + "https://example.com,Example,example-app,pw\n";
+
+        assertEquals(ImmutableList.of(ImmutableList.of("example-app", "pw")), readAll(csv));
+    }
+
+    @Test
+    public void readSkipsRowsWithoutApplicationOrPassword() throws Exception
+    {
+        String csv = "name,password\n"
+            + ",orphan\n"
+            + "empty,\n"
+            + "short\n"
+            + "kept,pw\n";
+
+        assertEquals(ImmutableList.of(ImmutableList.of("kept", "pw")), readAll(csv));
+    }
+
+    @Test
+    public void readRejectsUnterminatedQuote() throws Exception
+    {
+        try
+        {
+            readAll("name,password\nopen,\"never closed\n");
+            fail("Unterminated quote should have been rejected.");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void readRejectsHeaderWithoutPassword() throws Exception
+    {
+        try
+        {
+            readAll("name,secret\na,b\n");
+            fail("Header without a password column should have been rejected.");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Read every record of some CSV.
+     *
+     * @param csv CSV to read.
+     * @return The application name and password of each record, in order.
+     *
+     * @throws IOException if the CSV could not be read.
+     */
+    private static List<List<String>> readAll(String csv) throws IOException
+    {
+        CsvPasswordRecordReader reader = new CsvPasswordRecordReader(new StringReader(csv));
+        List<List<String>> records = Lists.newArrayList();
+        PasswordRecord record;
+        while ((record = reader.next()) != null)
+        {
+            records.add(ImmutableList.of(record.getApplicationName(), record.getPassword()));
+        }
+        return records;
+    }
+}
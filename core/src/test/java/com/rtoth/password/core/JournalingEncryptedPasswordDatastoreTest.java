@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static com.rtoth.password.core.TestVaults.changes;
+import static com.rtoth.password.core.TestVaults.contents;
+import static com.rtoth.password.core.TestVaults.entry;
+import static com.rtoth.password.core.TestVaults.vault;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests for {@link JournalingEncryptedPasswordDatastore}.
+ */
+public class JournalingEncryptedPasswordDatastoreTest
+{
+    @Test
+    public void loadReplaysAppendedChanges() throws Exception
+    {
+        File snapshotFile = TestVaults.tempFile();
+        File journalFile = new File(snapshotFile.getPath() + JournalingEncryptedPasswordDatastore.JOURNAL_SUFFIX);
+        journalFile.deleteOnExit();
+        JournalingEncryptedPasswordDatastore datastore = datastore(snapshotFile);
+        datastore.store(vault("a", "1", "b", "2"), VaultChanges.fullRewrite());
+        datastore.store(vault("a", "1", "b", "3", "c", "4"),
+            changes(ImmutableList.of(entry("b", "3"), entry("c", "4"))));
+        datastore.store(vault("b", "3", "c", "4"), changes(ImmutableList.<EncryptedEntry>of(), "a"));
+
+        // The changes went to the journal, not the snapshot.
+        assertEquals(contents("a", "1", "b", "2"),
+            contents(new FileBasedEncryptedPasswordDatastore(snapshotFile).load()));
+        assertTrue(journalFile.length() > 0);
+        assertEquals(contents("b", "3", "c", "4"), contents(datastore(snapshotFile).load()));
+    }
+
+    @Test
+    public void loadDiscardsTornLastRecord() throws Exception
+    {
+        File snapshotFile = TestVaults.tempFile();
+        File journalFile = new File(snapshotFile.getPath() + JournalingEncryptedPasswordDatastore.JOURNAL_SUFFIX);
+        journalFile.deleteOnExit();
+        JournalingEncryptedPasswordDatastore datastore = datastore(snapshotFile);
+        datastore.store(vault("a", "1"), VaultChanges.fullRewrite());
+        datastore.store(vault("a", "2"), changes(ImmutableList.of(entry("a", "2"))));
+        datastore.store(vault("a", "3"), changes(ImmutableList.of(entry("a", "3"))));
+        truncate(journalFile, 3);
+
+        JournalingEncryptedPasswordDatastore reopened = datastore(snapshotFile);
+        assertEquals(contents("a", "2"), contents(reopened.load()));
+
+        // Appending after a torn tail overwrites it.
+        reopened.store(vault("a", "2", "b", "4"), changes(ImmutableList.of(entry("b", "4"))));
+        assertEquals(contents("a", "2", "b", "4"), contents(datastore(snapshotFile).load()));
+    }
+
+    @Test
+    public void loadIgnoresJournalOfAnotherSnapshot() throws Exception
+    {
+        File snapshotFile = TestVaults.tempFile();
+        File journalFile = new File(snapshotFile.getPath() + JournalingEncryptedPasswordDatastore.JOURNAL_SUFFIX);
+        journalFile.deleteOnExit();
+        JournalingEncryptedPasswordDatastore datastore = datastore(snapshotFile);
+        datastore.store(vault("a", "1"), VaultChanges.fullRewrite());
+        datastore.store(vault("a", "2"), changes(ImmutableList.of(entry("a", "2"))));
+        byte[] oldJournal = Files.toByteArray(journalFile);
+
+        // A compaction which crashed after writing the snapshot, but before starting the new journal.
+        datastore.store(vault("b", "3"), VaultChanges.fullRewrite());
+        Files.write(oldJournal, journalFile);
+
+        assertEquals(contents("b", "3"), contents(datastore(snapshotFile).load()));
+    }
+
+    @Test
+    public void storeCompactsSnapshotWithoutFingerprint() throws Exception
+    {
+        File snapshotFile = TestVaults.tempFile();
+        new FileBasedEncryptedPasswordDatastore(snapshotFile).store(vault("a", "1"), VaultChanges.fullRewrite());
+
+        JournalingEncryptedPasswordDatastore datastore = datastore(snapshotFile);
+        assertEquals(contents("a", "1"), contents(datastore.load()));
+        datastore.store(vault("a", "1", "b", "2"), changes(ImmutableList.of(entry("b", "2"))));
+
+        assertEquals(contents("a", "1", "b", "2"),
+            contents(new FileBasedEncryptedPasswordDatastore(snapshotFile).load()));
+        assertEquals(contents("a", "1", "b", "2"), contents(datastore(snapshotFile).load()));
+    }
+
+    /**
+     * Create a datastore which never compacts on its own.
+     *
+     * @param snapshotFile Snapshot file.
+     * @return The datastore.
+     */
+    private static JournalingEncryptedPasswordDatastore datastore(File snapshotFile)
+    {
+        return new JournalingEncryptedPasswordDatastore(snapshotFile,
+            new File(snapshotFile.getPath() + JournalingEncryptedPasswordDatastore.JOURNAL_SUFFIX), Long.MAX_VALUE,
+            Durability.NONE);
+    }
+
+    /**
+     * Cut bytes off the end of a file.
+     *
+     * @param file File to truncate.
+     * @param bytes Number of bytes to cut off.
+     *
+     * @throws IOException if the file could not be truncated.
+     */
+    private static void truncate(File file, int bytes) throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try
+        {
+            randomAccessFile.setLength(randomAccessFile.length() - bytes);
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Tests for {@link JsonPasswordRecordReader}.
+ */
+public class JsonPasswordRecordReaderTest
+{
+    @Test
+    public void readUsesDefaultLayout() throws Exception
+    {
+        String json = "[{\"name\": \"a\", \"password\": \"1\"}, {\"title\": \"b\", \"password\": \"2\"}]";
+
+        assertEquals(ImmutableList.of(
+            ImmutableList.of("a", "1"),
+            ImmutableList.of("b", "2")), readAll(json, JsonImportLayout.defaults()));
+    }
+
+    @Test
+    public void readFollowsNestedPaths() throws Exception
+    {
+        String json = "{\"version\": 2, \"vault\": {\"meta\": {\"tags\": [1, {\"x\": []}]}, \"items\": ["
+            + "{\"id\": 7, \"login\": {\"uris\": [\"https://a\"], \"password\": \"p\\\"1\"},"
+            + " \"site\": {\"name\": \"a\"}},"
+            + "{\"label\": \"fallback\", \"login\": {\"password\": \"caf\\u00e9\"}, \"site\": {}},"
+            + "{\"site\": {\"name\": \"no password\"}, \"login\": {\"password\": null}},"
+            + "{\"site\": {\"name\": 5}, \"login\": {\"password\": \"non-string name\"}}"
+            + "]}}";
+        JsonImportLayout layout = JsonImportLayout.builder()
+            .rootPath("vault.items")
+            .applicationPaths("site.name", "label")
+            .passwordPath("login.password")
+            .build();
+
+        assertEquals(ImmutableList.of(
+            ImmutableList.of("a", "p\"1"),
+            ImmutableList.of("fallback", "caf\u00e9")), readAll(json, layout));
+    }
+
+    @Test
+    public void readRejectsMissingRootPath() throws Exception
+    {
+        JsonImportLayout layout = JsonImportLayout.builder().rootPath("vault.items").build();
+        try
+        {
+            readAll("{\"vault\": {\"other\": []}}", layout);
+            fail("Missing root path should have been rejected.");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void readRejectsTopLevelObjectWithoutRootPath() throws Exception
+    {
+        try
+        {
+            readAll("{\"items\": []}", JsonImportLayout.defaults());
+            fail("Top-level object should have been rejected without a root path.");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Read every record of some JSON.
+     *
+     * @param json JSON to read.
+     * @param layout Where the entries, application names and passwords are.
+     * @return The application name and password of each record, in order.
+     *
+     * @throws IOException if the JSON could not be read.
+     */
+    private static List<List<String>> readAll(String json, JsonImportLayout layout) throws IOException
+    {
+        JsonPasswordRecordReader reader = new JsonPasswordRecordReader(new StringReader(json), layout);
+        List<List<String>> records = Lists.newArrayList();
+        PasswordRecord record;
+        while ((record = reader.next()) != null)
+        {
+            records.add(ImmutableList.of(record.getApplicationName(), record.getPassword()));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that closing a {@link PasswordManager} never loses changes whose saves failed.
+ */
+public class PasswordManagerCloseTest
+{
+    /** Master password of the test vaults. */
+    private static final String MASTER_PASSWORD = "master-password";
+
+    @Test
+    public void closeSavesChangesAfterFailedSave() throws Exception
+    {
+        FlakyDatastore datastore = new FlakyDatastore(1);
+        PasswordManager passwordManager = new PasswordManager(datastore, MASTER_PASSWORD, options());
+        passwordManager.generatePassword("application");
+        try
+        {
+            passwordManager.flush().get();
+            fail("The first save should fail.");
+        }
+        catch (ExecutionException e)
+        {
+            // Expected
+        }
+        assertTrue(passwordManager.getUnsavedChangeCount() > 0);
+
+        // No change follows the failure, so nothing but a retry or close() saves it.
+        passwordManager.close();
+
+        assertEquals(1, datastore.stored.getEntries().size());
+        PasswordManager reopened = new PasswordManager(datastore, MASTER_PASSWORD, options());
+        assertTrue(reopened.hasPassword("application"));
+        reopened.close();
+    }
+
+    @Test
+    public void closeThrowsWhenChangesCannotBeSaved() throws Exception
+    {
+        FlakyDatastore datastore = new FlakyDatastore(Integer.MAX_VALUE);
+        PasswordManager passwordManager = new PasswordManager(datastore, MASTER_PASSWORD, options());
+        passwordManager.generatePassword("application");
+        try
+        {
+            passwordManager.close();
+            fail("close() should report that the changes were not saved.");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void closeStopsRetriesOnSharedExecutor() throws Exception
+    {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        try
+        {
+            FlakyDatastore datastore = new FlakyDatastore(Integer.MAX_VALUE);
+            PasswordManager passwordManager = new PasswordManager(datastore, MASTER_PASSWORD,
+                PasswordManagerOptions.builder()
+                    .saveDelay(1, TimeUnit.HOURS)
+                    .maxSaveDelay(1, TimeUnit.HOURS)
+                    .persistenceExecutor(executor)
+                    .build());
+            passwordManager.generatePassword("application");
+            try
+            {
+                passwordManager.close();
+                fail("close() should report that the changes were not saved.");
+            }
+            catch (IOException e)
+            {
+                // Expected
+            }
+
+            // The executor has one thread, so this runs once the failed save has finished.
+            executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    return null;
+                }
+            }).get();
+            assertEquals(0, executor.getQueue().size());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get options which only save when flushed or closed.
+     *
+     * @return The options.
+     */
+    private static PasswordManagerOptions options()
+    {
+        return PasswordManagerOptions.builder()
+            .saveDelay(1, TimeUnit.HOURS)
+            .maxSaveDelay(1, TimeUnit.HOURS)
+            .build();
+    }
+
+    /**
+     * In-memory datastore whose first stores fail.
+     */
+    private static final class FlakyDatastore implements EncryptedPasswordDatastore
+    {
+        /** Number of stores left to fail. */
+        private int failuresLeft;
+
+        /** Vault most recently stored, or {@code null} if none has been. */
+        private volatile EncryptedVault stored;
+
+        /**
+         * Create a new {@link FlakyDatastore}.
+         *
+         * @param failures Number of stores to fail before succeeding.
+         */
+        private FlakyDatastore(int failures)
+        {
+            this.failuresLeft = failures;
+        }
+
+        @Override
+        public EncryptedVault load()
+        {
+            return stored;
+        }
+
+        @Override
+        public synchronized void store(EncryptedVault vault, VaultChanges changes) throws IOException
+        {
+            if (failuresLeft > 0)
+            {
+                failuresLeft--;
+                throw new IOException("Simulated failure.");
+            }
+            stored = vault;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link PasswordPipeline}.
+ */
+public class PasswordPipelineTest
+{
+    @Test
+    public void runPassesItemsInOrder() throws Exception
+    {
+        final StringBuilder consumed = new StringBuilder();
+        int count = PasswordPipeline.run(new CountingSource(5000), new Function<Integer, String>()
+            {
+                @Override
+                public String apply(Integer item)
+                {
+                    return item % 2 == 0 ? item + "," : null;
+                }
+            },
+            new PasswordPipeline.Sink<String>()
+            {
+                @Override
+                public void accept(String item)
+                {
+                    consumed.append(item);
+                }
+            }, 4);
+
+        assertEquals(2500, count);
+        assertTrue(consumed.toString().startsWith("0,2,4,6,"));
+        assertTrue(consumed.toString().endsWith(",4996,4998,"));
+    }
+
+    @Test
+    public void runStopsReaderWhenSinkFailsWithQueueFull() throws Exception
+    {
+        final CountingSource source = new CountingSource(Integer.MAX_VALUE);
+        try
+        {
+            PasswordPipeline.run(source, Functions.<Integer>identity(), new PasswordPipeline.Sink<Integer>()
+            {
+                @Override
+                public void accept(Integer item) throws IOException
+                {
+                    // Wait for the reader to fill the queue and block on the next item.
+                    while (source.produced.get() <= PasswordPipeline.MAX_IN_FLIGHT + 1)
+                    {
+                        Thread.yield();
+                    }
+                    try
+                    {
+                        Thread.sleep(100);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IOException("Simulated failure.");
+                }
+            }, 2);
+            fail("The sink's failure should be propagated.");
+        }
+        catch (IOException e)
+        {
+            assertEquals("Simulated failure.", e.getMessage());
+        }
+
+        source.thread.join(5000);
+        assertTrue(!source.thread.isAlive());
+    }
+
+    /**
+     * Source of consecutive integers, which remembers the thread it is read on.
+     */
+    private static final class CountingSource implements PasswordPipeline.Source<Integer>
+    {
+        /** Number of items to produce. */
+        private final int size;
+
+        /** Number of items produced so far. */
+        private final AtomicInteger produced = new AtomicInteger();
+
+        /** Thread the source is read on, or {@code null} if it hasn't been read. */
+        private volatile Thread thread;
+
+        /**
+         * Create a new {@link CountingSource}.
+         *
+         * @param size Number of items to produce.
+         */
+        private CountingSource(int size)
+        {
+            this.size = size;
+        }
+
+        @Override
+        public Integer next()
+        {
+            thread = Thread.currentThread();
+            int item = produced.get();
+            if (item >= size)
+            {
+                return null;
+            }
+            produced.incrementAndGet();
+            return item;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static com.rtoth.password.core.TestVaults.changes;
+import static com.rtoth.password.core.TestVaults.contents;
+import static com.rtoth.password.core.TestVaults.entry;
+import static com.rtoth.password.core.TestVaults.vault;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for {@link ShardedEncryptedPasswordDatastore}.
+ */
+public class ShardedEncryptedPasswordDatastoreTest
+{
+    @Test
+    public void storeAndLoadAcrossGenerations() throws Exception
+    {
+        File directory = TestVaults.tempDirectory();
+        try
+        {
+            ShardedEncryptedPasswordDatastore datastore = datastore(directory, 4);
+            assertNull(datastore.load());
+
+            datastore.store(vault("a", "1", "b", "2", "c", "3"), VaultChanges.fullRewrite());
+            Set<String> firstGeneration = shardFiles(directory);
+            assertEquals(4, firstGeneration.size());
+            datastore.store(vault("a", "1", "b", "4", "c", "3", "d", "5"),
+                changes(ImmutableList.of(entry("b", "4"), entry("d", "5"))));
+            datastore.store(vault("b", "4", "c", "3", "d", "5"), changes(ImmutableList.<EncryptedEntry>of(), "a"));
+            // Changes are written to the shards of the current generation.
+            assertEquals(firstGeneration, shardFiles(directory));
+            datastore.close();
+
+            ShardedEncryptedPasswordDatastore reopened = datastore(directory, 4);
+            assertEquals(contents("b", "4", "c", "3", "d", "5"), contents(reopened.load()));
+
+            // A full rewrite writes a new generation and deletes the old one.
+            reopened.store(vault("e", "6"), VaultChanges.fullRewrite());
+            Set<String> secondGeneration = shardFiles(directory);
+            assertEquals(4, secondGeneration.size());
+            assertTrue(Sets.intersection(firstGeneration, secondGeneration).isEmpty());
+            reopened.close();
+
+            ShardedEncryptedPasswordDatastore reopenedAgain = datastore(directory, 4);
+            assertEquals(contents("e", "6"), contents(reopenedAgain.load()));
+            reopenedAgain.close();
+        }
+        finally
+        {
+            TestVaults.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void storeReshardsWhenVaultGrows() throws Exception
+    {
+        File directory = TestVaults.tempDirectory();
+        try
+        {
+            ShardedEncryptedPasswordDatastore datastore = datastore(directory, 2);
+            datastore.store(vault("a", "1", "b", "2", "c", "3"), VaultChanges.fullRewrite());
+            assertEquals(2, datastore.getShardCount());
+
+            List<String> applicationsAndPasswords = Lists.newArrayList("a", "1", "b", "2", "c", "3");
+            ImmutableList.Builder<EncryptedEntry> added = ImmutableList.builder();
+            for (int i = 3; i < 10; i++)
+            {
+                applicationsAndPasswords.add(i + "-application");
+                applicationsAndPasswords.add("password-" + i);
+                added.add(entry(i + "-application", "password-" + i));
+            }
+            EncryptedVault grown = vault(applicationsAndPasswords.toArray(new String[applicationsAndPasswords.size()]));
+            datastore.store(grown, changes(added.build()));
+
+            // Ten entries at two per shard need eight shards.
+            assertEquals(8, datastore.getShardCount());
+            assertEquals(8, shardFiles(directory).size());
+            datastore.close();
+
+            ShardedEncryptedPasswordDatastore reopened = datastore(directory, 2);
+            assertEquals(contents(grown), contents(reopened.load()));
+            assertEquals(8, reopened.getShardCount());
+            reopened.close();
+        }
+        finally
+        {
+            TestVaults.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void loadDeletesUnfinishedGenerations() throws Exception
+    {
+        File directory = TestVaults.tempDirectory();
+        try
+        {
+            ShardedEncryptedPasswordDatastore datastore = datastore(directory, 2);
+            datastore.store(vault("a", "1"), VaultChanges.fullRewrite());
+            datastore.close();
+            File leftover = new File(directory, "shard-99-0.vault");
+            assertTrue(leftover.createNewFile());
+
+            ShardedEncryptedPasswordDatastore reopened = datastore(directory, 2);
+            assertEquals(contents("a", "1"), contents(reopened.load()));
+            assertFalse(leftover.exists());
+            reopened.close();
+        }
+        finally
+        {
+            TestVaults.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Create a datastore which reshards past two entries per shard.
+     *
+     * @param directory Directory holding the shards.
+     * @param initialShardCount Number of shards of a new vault.
+     * @return The datastore.
+     */
+    private static ShardedEncryptedPasswordDatastore datastore(File directory, int initialShardCount)
+    {
+        return new ShardedEncryptedPasswordDatastore(directory, initialShardCount, 2, Durability.NONE, 2,
+            PasswordMetricsListener.NONE);
+    }
+
+    /**
+     * Get the names of the shard files in a directory.
+     *
+     * @param directory Directory holding the shards.
+     * @return The names of the shard files.
+     */
+    private static Set<String> shardFiles(File directory)
+    {
+        Set<String> names = Sets.newTreeSet();
+        for (String name : directory.list())
+        {
+            if (!name.equals(ShardedEncryptedPasswordDatastore.MANIFEST_NAME))
+            {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+}
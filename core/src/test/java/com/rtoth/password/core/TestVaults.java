@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds vaults for datastore tests. Entries hold the UTF-8 bytes of their application name and password rather
+ * than real ciphertexts, since datastores never look inside them.
+ */
+final class TestVaults
+{
+    /** Header of every test vault. */
+    static final VaultHeader HEADER = new VaultHeader(VaultHeader.CURRENT_VERSION, VaultHeader.DEFAULT_KDF, 1,
+        new byte[] {1, 2, 3, 4}, new byte[] {5, 6, 7, 8});
+
+    private TestVaults()
+    {
+        // Static utility class
+    }
+
+    /**
+     * Create a vault from alternating application names and passwords.
+     *
+     * @param applicationsAndPasswords Application names and passwords, alternating.
+     * @return The vault.
+     */
+    static EncryptedVault vault(String... applicationsAndPasswords)
+    {
+        ImmutableList.Builder<EncryptedEntry> entries = ImmutableList.builder();
+        for (int i = 0; i < applicationsAndPasswords.length; i += 2)
+        {
+            entries.add(entry(applicationsAndPasswords[i], applicationsAndPasswords[i + 1]));
+        }
+        return new EncryptedVault(HEADER, entries.build());
+    }
+
+    /**
+     * Create an entry.
+     *
+     * @param application Application name.
+     * @param password Password.
+     * @return The entry.
+     */
+    static EncryptedEntry entry(String application, String password)
+    {
+        return new EncryptedEntry(application.getBytes(Charsets.UTF_8), password.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Get the "encrypted" form of an application name.
+     *
+     * @param application Application name.
+     * @return The application name's bytes.
+     */
+    static byte[] application(String application)
+    {
+        return application.getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * Get the passwords of a vault by application name.
+     *
+     * @param vault Vault built from {@link #entry(String, String)}s.
+     * @return The passwords by application name.
+     */
+    static Map<String, String> contents(EncryptedVault vault)
+    {
+        Map<String, String> contents = Maps.newTreeMap();
+        for (EncryptedEntry entry : vault.getEntries())
+        {
+            contents.put(new String(entry.getEncryptedApplication(), Charsets.UTF_8),
+                new String(entry.getEncryptedPassword(), Charsets.UTF_8));
+        }
+        return contents;
+    }
+
+    /**
+     * Create the contents expected of a vault.
+     *
+     * @param applicationsAndPasswords Application names and passwords, alternating.
+     * @return The passwords by application name.
+     */
+    static Map<String, String> contents(String... applicationsAndPasswords)
+    {
+        return contents(vault(applicationsAndPasswords));
+    }
+
+    /**
+     * Create the changes made by a store.
+     *
+     * @param updated Entries added or changed.
+     * @param removedApplications Names of the applications removed.
+     * @return The changes.
+     */
+    static VaultChanges changes(List<EncryptedEntry> updated, String... removedApplications)
+    {
+        ImmutableList.Builder<byte[]> removed = ImmutableList.builder();
+        for (String application : removedApplications)
+        {
+            removed.add(application(application));
+        }
+        return VaultChanges.of(updated, removed.build());
+    }
+
+    /**
+     * Create an empty temporary directory. Callers must delete it with {@link #deleteDirectory(File)}.
+     *
+     * @return The directory.
+     */
+    static File tempDirectory()
+    {
+        return Files.createTempDir();
+    }
+
+    /**
+     * Delete a directory and the files in it.
+     *
+     * @param directory Directory to delete.
+     */
+    static void deleteDirectory(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Create an empty temporary file, deleted when the JVM exits.
+     *
+     * @return The file.
+     *
+     * @throws IOException if the file could not be created.
+     */
+    static File tempFile() throws IOException
+    {
+        File file = File.createTempFile("password-hero-test", ".vault");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.junit.Test;
+
+/**
+ * Tests for {@link VaultKey} and {@link VaultHeader}.
+ */
+public class VaultKeyTest
+{
+    /** Master password of the test keys. */
+    private static final String MASTER_PASSWORD = "master-password";
+
+    @Test
+    public void valuesRoundTrip()
+    {
+        VaultKey key = VaultKey.generate(MASTER_PASSWORD);
+        byte[] application = key.encryptApplication("application");
+        byte[] password = key.encryptPassword("p\u00e4ssword", application);
+
+        VaultKey derived = VaultKey.derive(MASTER_PASSWORD, key.getHeader());
+        assertEquals("application", derived.decryptApplication(application));
+        assertEquals("p\u00e4ssword", derived.decryptPassword(password, application));
+    }
+
+    @Test
+    public void applicationsEncryptDeterministically()
+    {
+        VaultKey key = VaultKey.generate(MASTER_PASSWORD);
+        assertArrayEquals(key.encryptApplication("application"), key.encryptApplication("application"));
+    }
+
+    @Test
+    public void deriveRejectsWrongMasterPassword()
+    {
+        VaultKey key = VaultKey.generate(MASTER_PASSWORD);
+        try
+        {
+            VaultKey.derive("wrong-password", key.getHeader());
+            fail("The wrong master password should be rejected.");
+        }
+        catch (EncryptionOperationNotPossibleException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void decryptRejectsTamperedCiphertext()
+    {
+        VaultKey key = VaultKey.generate(MASTER_PASSWORD);
+        byte[] application = key.encryptApplication("application");
+        byte[] password = key.encryptPassword("password", application);
+        for (int i = 0; i < password.length; i++)
+        {
+            byte[] tampered = password.clone();
+            tampered[i] ^= 1;
+            try
+            {
+                key.decryptPassword(tampered, application);
+                fail("Tampering with byte " + i + " should be detected.");
+            }
+            catch (EncryptionOperationNotPossibleException e)
+            {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void decryptRejectsPasswordOfAnotherEntry()
+    {
+        VaultKey key = VaultKey.generate(MASTER_PASSWORD);
+        byte[] first = key.encryptApplication("first");
+        byte[] second = key.encryptApplication("second");
+        byte[] firstPassword = key.encryptPassword("password", first);
+        try
+        {
+            key.decryptPassword(firstPassword, second);
+            fail("A password moved to another entry should be rejected.");
+        }
+        catch (EncryptionOperationNotPossibleException e)
+        {
+            // Expected
+        }
+        try
+        {
+            key.decryptApplication(firstPassword);
+            fail("A password should not decrypt as an application name.");
+        }
+        catch (EncryptionOperationNotPossibleException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void decryptRejectsOtherKey()
+    {
+        VaultKey key = VaultKey.generate(MASTER_PASSWORD);
+        VaultKey otherKey = VaultKey.generate(MASTER_PASSWORD);
+        try
+        {
+            otherKey.decryptApplication(key.encryptApplication("application"));
+            fail("A value encrypted with another key should be rejected.");
+        }
+        catch (EncryptionOperationNotPossibleException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void headerRejectsOtherVersions()
+    {
+        VaultHeader header = VaultKey.generate(MASTER_PASSWORD).getHeader();
+        for (int version : new int[] {VaultHeader.LEGACY_VERSION, VaultHeader.CURRENT_VERSION + 1})
+        {
+            try
+            {
+                new VaultHeader(version, header.getKdf(), header.getIterations(), header.getSalt(),
+                    header.getKeyCheck());
+                fail("Version " + version + " should be rejected.");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2016 Robert Toth
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.rtoth.password.standalone.jfr;
+
+import com.rtoth.password.core.PasswordTracer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records password manager operations as Java Flight Recorder events, so slow unlocks and saves can be lined up
+ * with garbage collection and I/O in a recording.
+ * <p>
+ * The events are disabled by default, and nothing is allocated unless a recording enables them, for example with
+ * {@code jcmd <pid> JFR.start settings=profile} and a {@code .jfc} file enabling the {@code com.rtoth.password}
+ * events. Requires a JVM with the {@code jdk.jfr} API: Java 11 or later, or Java 8 update 262 or later.
+ */
+public final class JfrPasswordTracer implements PasswordTracer
+{
+    /** Type of {@link UnlockEvent}. */
+    private static final EventType UNLOCK_TYPE = EventType.getEventType(UnlockEvent.class);
+
+    /** Type of {@link SaveEvent}. */
+    private static final EventType SAVE_TYPE = EventType.getEventType(SaveEvent.class);
+
+    /** Type of {@link ChangeMasterPasswordEvent}. */
+    private static final EventType CHANGE_MASTER_PASSWORD_TYPE =
+        EventType.getEventType(ChangeMasterPasswordEvent.class);
+
+    /** Type of {@link GenerateEvent}. */
+    private static final EventType GENERATE_TYPE = EventType.getEventType(GenerateEvent.class);
+
+    @Override
+    public Span begin(Operation operation)
+    {
+        OperationEvent event;
+        switch (operation)
+        {
+            case UNLOCK:
+                event = UNLOCK_TYPE.isEnabled() ? new UnlockEvent() : null;
+                break;
+            case SAVE:
+                event = SAVE_TYPE.isEnabled() ? new SaveEvent() : null;
+                break;
+            case CHANGE_MASTER_PASSWORD:
+                event = CHANGE_MASTER_PASSWORD_TYPE.isEnabled() ? new ChangeMasterPasswordEvent() : null;
+                break;
+            case GENERATE:
+                event = GENERATE_TYPE.isEnabled() ? new GenerateEvent() : null;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+
+        if (event == null)
+        {
+            return Span.NONE;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Event of a single operation, which is its own span. Flight Recorder ignores fields of superclasses, so each
+     * event declares its own.
+     */
+    @Category("Password Hero")
+    @Enabled(false)
+    @StackTrace(false)
+    private abstract static class OperationEvent extends Event implements Span
+    {
+    }
+
+    /**
+     * Opening a password manager: reading, deriving the key, and decrypting.
+     */
+    @Name("com.rtoth.password.Unlock")
+    @Label("Vault Unlock")
+    @Description("Opening a password manager: reading, deriving the key, and decrypting")
+    private static final class UnlockEvent extends OperationEvent
+    {
+        /** Number of entries worked on. */
+        @Label("Entries")
+        private int entryCount;
+
+        /** Number of encrypted bytes worked on. */
+        @Label("Encrypted Size")
+        @DataAmount
+        private long encryptedSize;
+
+        /** Whether the operation succeeded. */
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        @Override
+        public void end(int entryCount, long size, boolean succeeded)
+        {
+            this.entryCount = entryCount;
+            this.encryptedSize = size;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+
+    /**
+     * Saving the vault to the datastore.
+     */
+    @Name("com.rtoth.password.Save")
+    @Label("Vault Save")
+    @Description("Saving the vault to its datastore")
+    private static final class SaveEvent extends OperationEvent
+    {
+        /** Number of entries worked on. */
+        @Label("Entries")
+        private int entryCount;
+
+        /** Number of encrypted bytes worked on. */
+        @Label("Encrypted Size")
+        @DataAmount
+        private long encryptedSize;
+
+        /** Whether the operation succeeded. */
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        @Override
+        public void end(int entryCount, long size, boolean succeeded)
+        {
+            this.entryCount = entryCount;
+            this.encryptedSize = size;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+
+    /**
+     * Changing the master password, which re-encrypts every entry.
+     */
+    @Name("com.rtoth.password.ChangeMasterPassword")
+    @Label("Master Password Change")
+    @Description("Changing the master password, which re-encrypts every entry")
+    private static final class ChangeMasterPasswordEvent extends OperationEvent
+    {
+        /** Number of entries worked on. */
+        @Label("Entries")
+        private int entryCount;
+
+        /** Number of encrypted bytes worked on. */
+        @Label("Encrypted Size")
+        @DataAmount
+        private long encryptedSize;
+
+        /** Whether the operation succeeded. */
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        @Override
+        public void end(int entryCount, long size, boolean succeeded)
+        {
+            this.entryCount = entryCount;
+            this.encryptedSize = size;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+
+    /**
+     * Generating one or more random passwords.
+     */
+    @Name("com.rtoth.password.Generate")
+    @Label("Password Generation")
+    @Description("Generating one or more random passwords")
+    private static final class GenerateEvent extends OperationEvent
+    {
+        /** Number of passwords generated. */
+        @Label("Passwords")
+        private int passwordCount;
+
+        /** Total number of characters generated. */
+        @Label("Characters")
+        private long characterCount;
+
+        /** Whether generation succeeded. */
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        @Override
+        public void end(int entryCount, long size, boolean succeeded)
+        {
+            this.passwordCount = entryCount;
+            this.characterCount = size;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -22,7 +22,11 @@
 package com.rtoth.password.standalone.ui;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.rtoth.password.core.PasswordManager;
+import com.rtoth.password.core.PasswordManagerOptions;
+import com.rtoth.password.core.PasswordTracer;
 
 import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 
@@ -34,6 +38,7 @@ import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -72,8 +77,18 @@ public class ApplicationController extends Application
     /** Static location of the passwords file in the user's home directory. */
     private static final String FILE_SUFFIX = ".password-hero" + File.separator + "encrypted.gpg";
 
+    /** Maximum number of applications to list while searching. */
+    private static final int MAX_SEARCH_RESULTS = 100;
+
+    /** Flight Recorder tracer, built from the {@code jfr} source set when the building JDK has {@code jdk.jfr}. */
+    private static final String JFR_TRACER_CLASS = "com.rtoth.password.standalone.jfr.JfrPasswordTracer";
+
+    /** Applications currently listed: all of them, or those matching {@link #searchField}. */
     private final ObservableList<String> allApplications = FXCollections.observableArrayList();
 
+    /** Filters the listed applications. */
+    private final TextField searchField = new TextField();
+
     /** Manages all password-related operations. */
     private PasswordManager passwordManager;
 
@@ -100,8 +115,9 @@ public class ApplicationController extends Application
             {
                 try
                 {
-                    passwordManager = new PasswordManager(passwordFile.get(), masterPassword.get());
-                    allApplications.addAll(passwordManager.getAvailableApplications());
+                    passwordManager = new PasswordManager(passwordFile.get(), masterPassword.get(),
+                        PasswordManagerOptions.builder().tracer(createTracer()).build());
+                    refreshApplications();
 
                     Font.loadFont(
                         ApplicationController.class.getResource("/fonts/fontawesome-webfont.ttf").toExternalForm(),
@@ -114,13 +130,17 @@ public class ApplicationController extends Application
                     root.setPrefHeight(MIN_APPLICATION_HEIGHT);
                     root.setMinHeight(MIN_APPLICATION_HEIGHT);
 
+                    searchField.setPromptText("Search applications");
+                    searchField.textProperty().addListener((observable, oldValue, newValue) -> refreshApplications());
+
                     final ListView<String> applicationPasswords = new ListView<>(allApplications);
                     applicationPasswords.setCellFactory(param -> new ApplicationPasswordCell());
 
-                    AnchorPane.setTopAnchor(applicationPasswords, 0.0);
-                    AnchorPane.setLeftAnchor(applicationPasswords, 0.0);
-                    AnchorPane.setRightAnchor(applicationPasswords, 0.0);
-                    root.getChildren().add(applicationPasswords);
+                    VBox applicationsVBox = new VBox(searchField, applicationPasswords);
+                    AnchorPane.setTopAnchor(applicationsVBox, 0.0);
+                    AnchorPane.setLeftAnchor(applicationsVBox, 0.0);
+                    AnchorPane.setRightAnchor(applicationsVBox, 0.0);
+                    root.getChildren().add(applicationsVBox);
 
                     Button addNewApplication = new Button("Add New Application");
                     addNewApplication.setOnAction(event ->
@@ -136,7 +156,7 @@ public class ApplicationController extends Application
                             if (!passwordManager.hasPassword(newApplication.get()))
                             {
                                 passwordManager.generatePassword(newApplication.get());
-                                allApplications.add(newApplication.get());
+                                refreshApplications();
                                 showApplicationPassword(newApplication.get());
                             }
                             else
@@ -160,7 +180,24 @@ public class ApplicationController extends Application
                         Optional<String> newMasterPassword = newPasswordDialog.showAndWait();
                         if (newMasterPassword.isPresent())
                         {
-                            passwordManager.changeMasterPassword(newMasterPassword.get());
+                            // Re-encrypting every password takes a while, so keep it off the UI thread.
+                            Futures.addCallback(passwordManager.changeMasterPasswordAsync(newMasterPassword.get()),
+                                new FutureCallback<Void>()
+                                {
+                                    @Override
+                                    public void onSuccess(Void result)
+                                    {
+                                        // Nothing to do
+                                    }
+
+                                    @Override
+                                    public void onFailure(Throwable t)
+                                    {
+                                        Alert alert = new Alert(Alert.AlertType.ERROR,
+                                            "Unable to save new master password: " + t.getMessage(), ButtonType.OK);
+                                        alert.showAndWait();
+                                    }
+                                }, Platform::runLater);
                         }
                     });
 
@@ -177,8 +214,6 @@ public class ApplicationController extends Application
                     primaryStage.setMinWidth(MIN_APPLICATION_WIDTH);
                     primaryStage.setMinHeight(MIN_APPLICATION_HEIGHT);
                     primaryStage.show();
-
-                    // FIXME: Why does the application not shut down properly?
                 }
                 catch (EncryptionOperationNotPossibleException e)
                 {
@@ -194,6 +229,37 @@ public class ApplicationController extends Application
         }
     }
 
+    @Override
+    public void stop() throws Exception
+    {
+        // Saves any unsaved changes and stops the save thread, which would otherwise keep the JVM running.
+        if (passwordManager != null)
+        {
+            passwordManager.close();
+        }
+    }
+
+    /**
+     * Create a tracer recording password manager operations with Java Flight Recorder, if this JVM has it.
+     * <p>
+     * The tracer is loaded by name, as it is only built when the building JDK has the {@code jdk.jfr} API.
+     *
+     * @return A Flight Recorder tracer, or {@link PasswordTracer#NONE} if this JVM has no {@code jdk.jfr} API or
+     *         the tracer wasn't built.
+     */
+    private static PasswordTracer createTracer()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return (PasswordTracer) Class.forName(JFR_TRACER_CLASS).newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return PasswordTracer.NONE;
+        }
+    }
+
     /**
      * Get the location of the password file for the current user.
      * @return An {@link Optional} containing the expected password file location for the current user, or
@@ -263,6 +329,17 @@ public class ApplicationController extends Application
         return masterPassword;
     }
 
+    /**
+     * List the applications matching the current contents of the {@link #searchField}, or every application if it
+     * is empty.
+     */
+    private void refreshApplications()
+    {
+        String query = searchField.getText().trim();
+        allApplications.setAll(query.isEmpty() ? passwordManager.getAvailableApplications() :
+            passwordManager.searchApplications(query, MAX_SEARCH_RESULTS));
+    }
+
     /**
      * Show the current plaintext password for the provided application.
      *
@@ -368,7 +445,7 @@ public class ApplicationController extends Application
                     if (result.isPresent() && result.get().equals(ButtonType.YES))
                     {
                         passwordManager.deletePassword(item);
-                        allApplications.remove(item);
+                        refreshApplications();
                     }
                 });
 